@@ -0,0 +1,1005 @@
+package org.lndroid.framework;
+
+import android.util.Log;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lndroid.framework.common.AutoValueClass;
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IListResultView;
+import org.lndroid.framework.common.IListResultViewProvider;
+import org.lndroid.framework.common.PluginData;
+import org.lndroid.framework.common.Transient;
+
+// Compact binary codecs for @AutoValueClass types, a drop-in
+// replacement for DefaultIpcCodecProvider on the IPC path (both
+// sides of the connection must use the same provider).
+//
+// Schema of every type is derived once from it's AutoValue properties
+// (sorted by name) plus non-transient fields of the abstract class
+// (i.e. PluginMessage.ipcData_), the format is:
+// - int/long: zigzag varints
+// - boolean: single byte
+// - String: varint length + UTF-8 bytes
+// - byte[]: varint length + raw bytes
+// - ImmutableList/ImmutableMap: varint size + items
+// - object: presence bitmap for all reference-typed fields
+//   (those that might be @Nullable), followed by present fields
+// Types w/o schema (plain classes, Object) are embedded as
+// length-prefixed Gson json.
+//
+// List results can also be read lazily (see getListResultView),
+// as all values are self-delimiting items can be skipped w/o
+// being decoded.
+public class BinaryIpcCodecProvider implements ICodecProvider, IListResultViewProvider {
+
+    private static final String TAG = "BinaryIpcCodecProvider";
+
+    // first byte of every encoded value, lets us detect
+    // payloads written by some other codec
+    private static final byte FORMAT_VERSION = (byte)0xB1;
+
+    private final DefaultIpcCodecProvider gsonProvider_ = new DefaultIpcCodecProvider();
+
+    // same as in DefaultIpcCodecProvider: known codecs are created
+    // in constructor, others on demand by any thread
+    private final Map<Type, ICodec> knownCodecs_ = new IdentityHashMap<>();
+    private final ConcurrentHashMap<Type, ICodec> codecs_ = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, Node> nodes_ = new ConcurrentHashMap<>();
+
+    public BinaryIpcCodecProvider() {
+        knownCodecs_.put(PluginData.PluginMessage.class, createCodec(PluginData.PluginMessage.class));
+        for (Type type: DefaultPlugins.DATA_TYPES)
+            knownCodecs_.put(type, createCodec(type));
+    }
+
+    static class Output {
+        private byte[] buf_ = new byte[256];
+        private int pos_;
+
+        private void ensure(int n) {
+            if (pos_ + n > buf_.length)
+                buf_ = Arrays.copyOf(buf_, Math.max(buf_.length * 2, pos_ + n));
+        }
+
+        int reserve(int n) {
+            ensure(n);
+            final int p = pos_;
+            Arrays.fill(buf_, p, p + n, (byte)0);
+            pos_ += n;
+            return p;
+        }
+
+        void setBit(int at, int bit) {
+            buf_[at + (bit >> 3)] |= (1 << (bit & 7));
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf_[pos_++] = (byte)b;
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf_[pos_++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf_[pos_++] = (byte)v;
+        }
+
+        void writeZigZag(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void writeFixed64(long v) {
+            ensure(8);
+            for (int i = 0; i < 8; i++, v >>>= 8)
+                buf_[pos_++] = (byte)v;
+        }
+
+        void writeBytes(byte[] b) {
+            writeVarLong(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf_, pos_, b.length);
+            pos_ += b.length;
+        }
+
+        void writeString(String s) {
+            final int len = s.length();
+
+            // fast path for ascii strings (hex, ids etc)
+            int utf8 = len;
+            for (int i = 0; i < len; i++) {
+                final char c = s.charAt(i);
+                if (c >= 0x80) {
+                    utf8 = -1;
+                    break;
+                }
+            }
+
+            if (utf8 < 0) {
+                writeBytes(s.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            writeVarLong(len);
+            ensure(len);
+            for (int i = 0; i < len; i++)
+                buf_[pos_++] = (byte)s.charAt(i);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf_, pos_);
+        }
+    }
+
+    static class Input {
+        private byte[] buf_;
+        private int pos_;
+
+        Input(byte[] buf) {
+            buf_ = buf;
+        }
+
+        Input(byte[] buf, int pos) {
+            buf_ = buf;
+            pos_ = pos;
+        }
+
+        int position() {
+            return pos_;
+        }
+
+        boolean isBitSet(int at, int bit) {
+            return (buf_[at + (bit >> 3)] & (1 << (bit & 7))) != 0;
+        }
+
+        int skip(int n) {
+            if (pos_ + n > buf_.length)
+                throw new IllegalArgumentException("Truncated input");
+            final int p = pos_;
+            pos_ += n;
+            return p;
+        }
+
+        int readByte() {
+            return buf_[skip(1)];
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                v |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readZigZag() {
+            final long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readFixed64() {
+            final int p = skip(8);
+            long v = 0;
+            for (int i = 7; i >= 0; i--)
+                v = (v << 8) | (buf_[p + i] & 0xFF);
+            return v;
+        }
+
+        int readLength() {
+            final long len = readVarLong();
+            if (len < 0 || len > buf_.length - pos_)
+                throw new IllegalArgumentException("Bad length");
+            return (int)len;
+        }
+
+        byte[] readBytes() {
+            final int len = readLength();
+            return Arrays.copyOfRange(buf_, skip(len), pos_);
+        }
+
+        String readString() {
+            final int len = readLength();
+            return new String(buf_, skip(len), len, StandardCharsets.UTF_8);
+        }
+
+        boolean atEnd() {
+            return pos_ == buf_.length;
+        }
+    }
+
+    abstract static class Node {
+        abstract void write(Output out, Object v) throws ReflectiveOperationException;
+
+        abstract Object read(Input in) throws ReflectiveOperationException;
+
+        // move past the value w/o decoding it
+        void skip(Input in) throws ReflectiveOperationException {
+            read(in);
+        }
+    }
+
+    static class IntNode extends Node {
+        private Class<?> cls_;
+
+        IntNode(Class<?> cls) {
+            cls_ = cls;
+        }
+
+        @Override
+        void write(Output out, Object v) {
+            if (v instanceof Character)
+                out.writeZigZag((Character)v);
+            else
+                out.writeZigZag(((Number)v).longValue());
+        }
+
+        @Override
+        Object read(Input in) {
+            final long v = in.readZigZag();
+            if (cls_ == long.class || cls_ == Long.class)
+                return v;
+            if (cls_ == int.class || cls_ == Integer.class)
+                return (int)v;
+            if (cls_ == short.class || cls_ == Short.class)
+                return (short)v;
+            if (cls_ == byte.class || cls_ == Byte.class)
+                return (byte)v;
+            return (char)v;
+        }
+
+        @Override
+        void skip(Input in) {
+            in.readVarLong();
+        }
+    }
+
+    static class FloatNode extends Node {
+        private boolean double_;
+
+        FloatNode(Class<?> cls) {
+            double_ = cls == double.class || cls == Double.class;
+        }
+
+        @Override
+        void write(Output out, Object v) {
+            out.writeFixed64(Double.doubleToRawLongBits(((Number)v).doubleValue()));
+        }
+
+        @Override
+        Object read(Input in) {
+            final double v = Double.longBitsToDouble(in.readFixed64());
+            if (double_)
+                return v;
+            return (float)v;
+        }
+
+        @Override
+        void skip(Input in) {
+            in.skip(8);
+        }
+    }
+
+    static class BooleanNode extends Node {
+        @Override
+        void write(Output out, Object v) {
+            out.writeByte((Boolean)v ? 1 : 0);
+        }
+
+        @Override
+        Object read(Input in) {
+            return in.readByte() != 0;
+        }
+
+        @Override
+        void skip(Input in) {
+            in.skip(1);
+        }
+    }
+
+    static class StringNode extends Node {
+        @Override
+        void write(Output out, Object v) {
+            out.writeString((String)v);
+        }
+
+        @Override
+        Object read(Input in) {
+            return in.readString();
+        }
+
+        @Override
+        void skip(Input in) {
+            in.skip(in.readLength());
+        }
+    }
+
+    static class BytesNode extends Node {
+        @Override
+        void write(Output out, Object v) {
+            out.writeBytes((byte[])v);
+        }
+
+        @Override
+        Object read(Input in) {
+            return in.readBytes();
+        }
+
+        @Override
+        void skip(Input in) {
+            in.skip(in.readLength());
+        }
+    }
+
+    class ListNode extends Node {
+        private Type itemType_;
+        // volatile as codecs are used by several threads
+        private volatile Node item_;
+
+        ListNode(Type itemType) {
+            itemType_ = itemType;
+        }
+
+        Node item() {
+            // resolved lazily to allow for recursive types
+            if (item_ == null)
+                item_ = getNode(itemType_);
+            return item_;
+        }
+
+        @Override
+        void write(Output out, Object v) throws ReflectiveOperationException {
+            final List<?> list = (List<?>)v;
+            final Node item = item();
+            out.writeVarLong(list.size());
+            for (int i = 0; i < list.size(); i++)
+                item.write(out, list.get(i));
+        }
+
+        @Override
+        Object read(Input in) throws ReflectiveOperationException {
+            final int size = in.readLength();
+            final Node item = item();
+            ImmutableList.Builder<Object> b = ImmutableList.builder();
+            for (int i = 0; i < size; i++)
+                b.add(item.read(in));
+            return b.build();
+        }
+
+        @Override
+        void skip(Input in) throws ReflectiveOperationException {
+            final int size = in.readLength();
+            final Node item = item();
+            for (int i = 0; i < size; i++)
+                item.skip(in);
+        }
+    }
+
+    class MapNode extends Node {
+        private Type keyType_;
+        private Type valueType_;
+        private Node key_;
+        private volatile Node value_;
+
+        MapNode(Type keyType, Type valueType) {
+            keyType_ = keyType;
+            valueType_ = valueType;
+        }
+
+        // value_ is written last and is volatile, so
+        // key_ is visible to any thread that sees value_
+        private void resolve() {
+            if (value_ == null) {
+                key_ = getNode(keyType_);
+                value_ = getNode(valueType_);
+            }
+        }
+
+        @Override
+        void write(Output out, Object v) throws ReflectiveOperationException {
+            resolve();
+            final Map<?, ?> map = (Map<?, ?>)v;
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> e: map.entrySet()) {
+                key_.write(out, e.getKey());
+                value_.write(out, e.getValue());
+            }
+        }
+
+        @Override
+        Object read(Input in) throws ReflectiveOperationException {
+            resolve();
+            final int size = in.readLength();
+            ImmutableMap.Builder<Object, Object> b = ImmutableMap.builder();
+            for (int i = 0; i < size; i++) {
+                Object k = key_.read(in);
+                b.put(k, value_.read(in));
+            }
+            return b.build();
+        }
+
+        @Override
+        void skip(Input in) throws ReflectiveOperationException {
+            resolve();
+            final int size = in.readLength();
+            for (int i = 0; i < size; i++) {
+                key_.skip(in);
+                value_.skip(in);
+            }
+        }
+    }
+
+    // types we can't describe with a schema are
+    // embedded as json produced by Gson
+    class GsonNode extends Node {
+        private ICodec<Object> codec_;
+
+        GsonNode(Type type) {
+            codec_ = gsonProvider_.get(type);
+        }
+
+        @Override
+        void write(Output out, Object v) {
+            out.writeBytes(codec_.encode(v));
+        }
+
+        @Override
+        Object read(Input in) {
+            return codec_.decode(in.readBytes());
+        }
+
+        @Override
+        void skip(Input in) {
+            in.skip(in.readLength());
+        }
+    }
+
+    static class Property {
+        String name;
+        Type type;
+        boolean primitive;
+        Node node;
+        // property getter or field
+        Method getter;
+        Field field;
+        // builder setter, null for fields
+        Method setter;
+    }
+
+    class ObjectNode extends Node {
+        private Class<?> cls_;
+        private Method builder_;
+        private Method build_;
+        private Property[] props_;
+        // nodes of props are published by this volatile flag
+        private volatile boolean resolved_;
+        private int refs_;
+
+        ObjectNode(Class<?> cls) throws ReflectiveOperationException {
+            cls_ = cls;
+            builder_ = cls.getMethod("builder");
+            builder_.setAccessible(true);
+            Class<?> builderClass = builder_.getReturnType();
+            build_ = builderClass.getMethod("build");
+            build_.setAccessible(true);
+
+            List<Property> props = new ArrayList<>();
+            TypeToken<?> token = TypeToken.of(cls);
+
+            // AutoValue properties: abstract no-arg getters,
+            // interfaces might declare the same one several times
+            Map<String, Method> getters = new HashMap<>();
+            for (Method m: cls.getMethods()) {
+                if (!Modifier.isAbstract(m.getModifiers())
+                        || Modifier.isStatic(m.getModifiers())
+                        || m.getParameterTypes().length != 0
+                        || m.getReturnType() == void.class
+                        || m.isBridge()
+                        || m.getName().equals("toBuilder"))
+                    continue;
+                if (!getters.containsKey(m.getName()))
+                    getters.put(m.getName(), m);
+            }
+
+            List<String> names = new ArrayList<>(getters.keySet());
+            Collections.sort(names);
+            for (String name: names) {
+                Method getter = getters.get(name);
+                TypeToken<?> type = token.resolveType(getter.getGenericReturnType());
+
+                Property p = new Property();
+                p.name = name;
+                p.getter = getter;
+                p.getter.setAccessible(true);
+                p.setter = findSetter(builderClass, name, type.getRawType());
+                p.type = type.getType();
+                p.primitive = getter.getReturnType().isPrimitive();
+                props.add(p);
+            }
+
+            // plain non-transient fields of the abstract class
+            // hierarchy, these are serialized by Gson too
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field f: c.getDeclaredFields()) {
+                    final int mod = f.getModifiers();
+                    if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()
+                            || f.getAnnotation(Transient.class) != null)
+                        continue;
+                    fields.add(f);
+                }
+            }
+            Collections.sort(fields, new Comparator<Field>() {
+                @Override
+                public int compare(Field a, Field b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+            for (Field f: fields) {
+                Property p = new Property();
+                p.name = f.getName();
+                p.field = f;
+                p.field.setAccessible(true);
+                p.type = f.getGenericType();
+                p.primitive = f.getType().isPrimitive();
+                props.add(p);
+            }
+
+            props_ = props.toArray(new Property[0]);
+            for (Property p: props_) {
+                if (!p.primitive)
+                    refs_++;
+            }
+        }
+
+        // property nodes are resolved on first use
+        // to allow for recursive types
+        private Property[] props() {
+            if (!resolved_) {
+                for (Property p: props_)
+                    p.node = getNode(p.type);
+                resolved_ = true;
+            }
+            return props_;
+        }
+
+        private Method findSetter(Class<?> builderClass, String name, Class<?> type) throws NoSuchMethodException {
+            final String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (Method m: builderClass.getMethods()) {
+                if (m.getName().equals(setterName)
+                        && m.getParameterTypes().length == 1
+                        && m.getParameterTypes()[0].isAssignableFrom(type)) {
+                    m.setAccessible(true);
+                    return m;
+                }
+            }
+            throw new NoSuchMethodException("No builder setter for "+cls_.getName()+"."+name);
+        }
+
+        private Object get(Property p, Object v) throws ReflectiveOperationException {
+            return p.getter != null ? p.getter.invoke(v) : p.field.get(v);
+        }
+
+        @Override
+        void write(Output out, Object v) throws ReflectiveOperationException {
+            final int bitmap = out.reserve((refs_ + 7) / 8);
+            int ref = 0;
+            for (Property p: props()) {
+                final Object pv = get(p, v);
+                if (!p.primitive) {
+                    final int bit = ref++;
+                    if (pv == null)
+                        continue;
+                    out.setBit(bitmap, bit);
+                }
+                p.node.write(out, pv);
+            }
+        }
+
+        @Override
+        Object read(Input in) throws ReflectiveOperationException {
+            final int bitmap = in.skip((refs_ + 7) / 8);
+            final Object b = builder_.invoke(null);
+
+            // read props and fields, set fields after build
+            Object[] fieldValues = null;
+            final Property[] props = props();
+            int ref = 0;
+            for (int i = 0; i < props.length; i++) {
+                Property p = props[i];
+
+                Object pv = null;
+                if (p.primitive || in.isBitSet(bitmap, ref++))
+                    pv = p.node.read(in);
+
+                if (p.setter != null) {
+                    p.setter.invoke(b, pv);
+                } else if (pv != null) {
+                    if (fieldValues == null)
+                        fieldValues = new Object[props.length];
+                    fieldValues[i] = pv;
+                }
+            }
+
+            final Object v = build_.invoke(b);
+            if (fieldValues != null) {
+                for (int i = 0; i < props.length; i++) {
+                    if (fieldValues[i] != null)
+                        props[i].field.set(v, fieldValues[i]);
+                }
+            }
+            return v;
+        }
+
+        @Override
+        void skip(Input in) throws ReflectiveOperationException {
+            final int bitmap = in.skip((refs_ + 7) / 8);
+            int ref = 0;
+            for (Property p: props()) {
+                if (p.primitive || in.isBitSet(bitmap, ref++))
+                    p.node.skip(in);
+            }
+        }
+
+        // decode a single property, skipping the ones before it,
+        // null if property is not present
+        Object readProperty(Input in, String name) throws ReflectiveOperationException {
+            final int bitmap = in.skip((refs_ + 7) / 8);
+            int ref = 0;
+            for (Property p: props()) {
+                final boolean present = p.primitive || in.isBitSet(bitmap, ref++);
+                if (p.name.equals(name))
+                    return present ? p.node.read(in) : null;
+                if (present)
+                    p.node.skip(in);
+            }
+            throw new NoSuchFieldException("No property "+name+" in "+cls_.getName());
+        }
+    }
+
+    static class BinaryCodec<T> implements ICodec<T> {
+        private Type type_;
+        private Node node_;
+
+        BinaryCodec(Type type, Node node) {
+            type_ = type;
+            node_ = node;
+        }
+
+        @Override
+        public byte[] encode(T value) {
+            if (value == null)
+                return new byte[0];
+
+            Output out = new Output();
+            out.writeByte(FORMAT_VERSION);
+            try {
+                node_.write(out, value);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to encode "+type_, e);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public T decode(byte[] d) {
+            if (d == null || d.length == 0)
+                return null;
+
+            // data is sent by remote peers, so malformed
+            // input results in null, not exception
+            try {
+                Input in = new Input(d);
+                if (in.readByte() != FORMAT_VERSION)
+                    return null;
+
+                T v = (T)node_.read(in);
+                if (!in.atEnd())
+                    return null;
+                return v;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                Log.e(TAG, "failed to decode "+type_+": "+e);
+                return null;
+            }
+        }
+    }
+
+    // view over encoded ListResultTmpl: the page is scanned once
+    // to find item offsets, each item is decoded on first access
+    class ListResultView<Item> implements IListResultView<Item> {
+        private byte[] data_;
+        private int count_;
+        private int position_;
+        private long requestId_;
+        private boolean isUpdate_;
+        private ImmutableList<Integer> itemPositions_;
+        private ImmutableList<Long> removedIds_;
+        private String firstCursor_;
+        private String lastCursor_;
+        private Node item_;
+        private int[] offsets_;
+        private Object[] decoded_;
+        private List<Item> itemList_;
+
+        ListResultView(byte[] data, ObjectNode node) throws ReflectiveOperationException {
+            data_ = data;
+
+            Input in = new Input(data);
+            if (in.readByte() != FORMAT_VERSION)
+                throw new IllegalArgumentException("Unknown format");
+
+            final int bitmap = in.skip((node.refs_ + 7) / 8);
+            int ref = 0;
+            for (Property p: node.props()) {
+                final boolean present = p.primitive || in.isBitSet(bitmap, ref++);
+                if (!present)
+                    continue;
+
+                if (p.name.equals("count")) {
+                    count_ = ((Number)p.node.read(in)).intValue();
+                } else if (p.name.equals("position")) {
+                    position_ = ((Number)p.node.read(in)).intValue();
+                } else if (p.name.equals("requestId")) {
+                    requestId_ = ((Number)p.node.read(in)).longValue();
+                } else if (p.name.equals("isUpdate")) {
+                    isUpdate_ = (Boolean)p.node.read(in);
+                } else if (p.name.equals("itemPositions")) {
+                    itemPositions_ = (ImmutableList<Integer>)p.node.read(in);
+                } else if (p.name.equals("removedIds")) {
+                    removedIds_ = (ImmutableList<Long>)p.node.read(in);
+                } else if (p.name.equals("firstCursor")) {
+                    firstCursor_ = (String)p.node.read(in);
+                } else if (p.name.equals("lastCursor")) {
+                    lastCursor_ = (String)p.node.read(in);
+                } else if (p.name.equals("items") && p.node instanceof ListNode) {
+                    item_ = ((ListNode)p.node).item();
+                    offsets_ = new int[in.readLength()];
+                    for (int i = 0; i < offsets_.length; i++) {
+                        offsets_[i] = in.position();
+                        item_.skip(in);
+                    }
+                } else {
+                    p.node.skip(in);
+                }
+            }
+
+            if (!in.atEnd())
+                throw new IllegalArgumentException("Unexpected trailing data");
+
+            decoded_ = new Object[size()];
+        }
+
+        @Override
+        public ImmutableList<Item> items() {
+            if (offsets_ == null)
+                return null;
+            return ImmutableList.copyOf(itemList());
+        }
+
+        @Override
+        public int count() {
+            return count_;
+        }
+
+        @Override
+        public int position() {
+            return position_;
+        }
+
+        @Override
+        public long requestId() {
+            return requestId_;
+        }
+
+        @Override
+        public boolean isUpdate() {
+            return isUpdate_;
+        }
+
+        @Override
+        public ImmutableList<Integer> itemPositions() {
+            return itemPositions_;
+        }
+
+        @Override
+        public ImmutableList<Long> removedIds() {
+            return removedIds_;
+        }
+
+        @Override
+        public String firstCursor() {
+            return firstCursor_;
+        }
+
+        @Override
+        public String lastCursor() {
+            return lastCursor_;
+        }
+
+        @Override
+        public int size() {
+            return offsets_ != null ? offsets_.length : 0;
+        }
+
+        @Override
+        public long itemId(int index) {
+            if (decoded_[index] != null)
+                return ((WalletDataDecl.EntityBase)decoded_[index]).id();
+
+            if (!(item_ instanceof ObjectNode))
+                throw new RuntimeException("List items are not entities");
+
+            try {
+                Input in = new Input(data_, offsets_[index]);
+                return ((Number)((ObjectNode)item_).readProperty(in, "id")).longValue();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to decode list item id", e);
+            }
+        }
+
+        @Override
+        public Item item(int index) {
+            if (decoded_[index] == null) {
+                try {
+                    decoded_[index] = item_.read(new Input(data_, offsets_[index]));
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("Failed to decode list item", e);
+                }
+            }
+            return (Item)decoded_[index];
+        }
+
+        @Override
+        public List<Item> itemList() {
+            if (itemList_ == null) {
+                itemList_ = new AbstractList<Item>() {
+                    @Override
+                    public Item get(int index) {
+                        return item(index);
+                    }
+
+                    @Override
+                    public int size() {
+                        return ListResultView.this.size();
+                    }
+                };
+            }
+            return itemList_;
+        }
+    }
+
+    private static Class<?> getAutoValueClass(Class<?> cls) {
+        if (cls.getAnnotation(AutoValueClass.class) != null)
+            return cls;
+
+        // AutoValue_ class itself
+        Class<?> parent = cls.getSuperclass();
+        if (parent != null) {
+            AutoValueClass a = parent.getAnnotation(AutoValueClass.class);
+            if (a != null && a.className() == cls)
+                return parent;
+        }
+        return null;
+    }
+
+    private Node createNode(Type type) throws ReflectiveOperationException {
+        if (type instanceof Class) {
+            Class<?> cls = (Class<?>)type;
+            if (cls == long.class || cls == Long.class
+                    || cls == int.class || cls == Integer.class
+                    || cls == short.class || cls == Short.class
+                    || cls == byte.class || cls == Byte.class
+                    || cls == char.class || cls == Character.class)
+                return new IntNode(cls);
+            if (cls == double.class || cls == Double.class
+                    || cls == float.class || cls == Float.class)
+                return new FloatNode(cls);
+            if (cls == boolean.class || cls == Boolean.class)
+                return new BooleanNode();
+            if (cls == String.class)
+                return new StringNode();
+            if (cls == byte[].class)
+                return new BytesNode();
+
+            Class<?> avCls = getAutoValueClass(cls);
+            if (avCls != null)
+                return new ObjectNode(avCls);
+        } else if (type instanceof GenericArrayType) {
+            if (((GenericArrayType)type).getGenericComponentType() == byte.class)
+                return new BytesNode();
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType)type;
+            Type[] args = pt.getActualTypeArguments();
+            if (pt.getRawType() == ImmutableList.class)
+                return new ListNode(args[0]);
+            if (pt.getRawType() == ImmutableMap.class)
+                return new MapNode(args[0], args[1]);
+        }
+
+        return new GsonNode(type);
+    }
+
+    private Node getNode(Type type) {
+        Node n = nodes_.get(type);
+        if (n == null) {
+            try {
+                n = createNode(type);
+            } catch (ReflectiveOperationException e) {
+                Log.e(TAG, "no schema for "+type+": "+e);
+                n = new GsonNode(type);
+            }
+
+            // if other thread was faster, use it's node
+            Node prev = nodes_.putIfAbsent(type, n);
+            if (prev != null)
+                n = prev;
+        }
+        return n;
+    }
+
+    private ICodec createCodec(Type type) {
+        Node n = getNode(type);
+        // resolve the whole schema now
+        if (n instanceof ObjectNode)
+            ((ObjectNode)n).props();
+        return new BinaryCodec<>(type, n);
+    }
+
+    @Override
+    public <T> ICodec<T> get(Type type) {
+        ICodec<T> c = (ICodec<T>)knownCodecs_.get(type);
+        if (c != null)
+            return c;
+
+        c = (ICodec<T>)codecs_.get(type);
+        if (c == null) {
+            ICodec<T> nc = new BinaryCodec<>(type, getNode(type));
+            c = (ICodec<T>)codecs_.putIfAbsent(type, nc);
+            if (c == null)
+                c = nc;
+        }
+        return c;
+    }
+
+    @Override
+    public <Item> IListResultView<Item> getListResultView(Type type, byte[] data) {
+        final Node n = getNode(type);
+        if (!(n instanceof ObjectNode) || data == null || data.length == 0)
+            return null;
+
+        // same as decode, malformed input results in null
+        try {
+            return new ListResultView<>(data, (ObjectNode)n);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.e(TAG, "failed to read list "+type+": "+e);
+            return null;
+        }
+    }
+}
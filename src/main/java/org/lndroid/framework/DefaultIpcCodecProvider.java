@@ -6,146 +6,187 @@ import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.JsonReaderInternalAccess;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lndroid.framework.common.AutoValueClass;
+import org.lndroid.framework.common.DefaultPlugins;
 import org.lndroid.framework.common.Transient;
 import org.lndroid.framework.common.ICodec;
 import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.PluginData;
 
 class CustomizedTypeAdapterFactory implements TypeAdapterFactory {
 
-    private static final String CLASS_NAME_PROPERTY = "className_";
-
     public CustomizedTypeAdapterFactory() {
     }
 
+    // NOTE: we used to write class name as metadata to let reader
+    // choose the implementation class. Bad idea: letting clients specify
+    // a class that would be auto-instanciated on the server is a security
+    // hole! So adapters below are plain streaming adapters, no json
+    // trees are built on either read or write.
+
     @Override
     @SuppressWarnings("unchecked")
     public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
         Class<T> rawType = (Class<T>) type.getRawType();
 
+        // Immutable collections are built incrementally
+        if (rawType == ImmutableList.class)
+            return (TypeAdapter<T>) new ImmutableListAdapter<>(gson, typeArgument(type, 0));
+        if (rawType == ImmutableMap.class)
+            return (TypeAdapter<T>) new ImmutableMapAdapter<>(gson,
+                    typeArgument(type, 0), typeArgument(type, 1));
+
         AutoValueClass annotation = rawType.getAnnotation(AutoValueClass.class);
 
         // return adapter for AutoValue implementation if @AutoValueClass is present
         if (annotation != null)
-            return customizeMyClassAdapter(gson, TypeToken.get(annotation.className()));
+            return (TypeAdapter<T>) gson.getDelegateAdapter(this, TypeToken.get(annotation.className()));
         else
-            return customizeMyClassAdapter(gson, type);
+            return gson.getDelegateAdapter(this, type);
     }
 
-    private <T> void addMetadata(T source, JsonElement json) {
-        if (!json.isJsonObject())
-            return;
-
-        // Bad idea: letting clients specify a class that
-        // would be auto-instanciated on the server is a security hole!
-//        JsonObject self = json.getAsJsonObject();
-//        self.addProperty(CLASS_NAME_PROPERTY, source.getClass().getName());
+    private static Type typeArgument(TypeToken<?> type, int index) {
+        if (type.getType() instanceof ParameterizedType)
+            return ((ParameterizedType) type.getType()).getActualTypeArguments()[index];
+        return Object.class;
     }
 
-/*    private static <T> Class<?> getObjectClass(Class<T> cls, JsonElement json) throws IOException {
-        // T is the type expected by Gson, in case it's an Object or some other
-        // abstract type then we'd like to read the metadata and
-        // choose proper delegate, different than for T
-
-        if (!json.isJsonObject())
-            return null;
-
-        JsonObject self = json.getAsJsonObject();
-        JsonElement classNameElement = self.get(CLASS_NAME_PROPERTY);
-        if (classNameElement == null || !classNameElement.isJsonPrimitive())
-            return null;
-
-        String className = classNameElement.getAsJsonPrimitive().getAsString();
-        try {
-            return cls.getClassLoader().loadClass(className);
-        } catch(ClassNotFoundException e) {
-            throw new IOException(e);
-        }
+    // same as Gson's collection adapters, values declared as
+    // Object are written using their runtime type
+    @SuppressWarnings("unchecked")
+    private static <T> void writeValue(Gson gson, TypeAdapter<T> adapter, Type type,
+                                       JsonWriter out, T value) throws IOException {
+        if (value != null && type == Object.class)
+            adapter = (TypeAdapter<T>) gson.getAdapter(value.getClass());
+        adapter.write(out, value);
     }
 
- */
-
-    private <T> TypeAdapter<T> customizeMyClassAdapter(final Gson gson, final TypeToken<T> type) {
+    private static final class ImmutableListAdapter<E> extends TypeAdapter<ImmutableList<E>> {
+        private final Gson gson_;
+        private final Type itemType_;
+        private final TypeAdapter<E> itemAdapter_;
 
-        return new TypeAdapter<T>() {
-            @Override public void write(JsonWriter out, T value) throws IOException {
-                // when serializing, we use default adapter to serialize first,
-                // and then simply add our metadata like class name and version.
-
-                // serialize using default adapter
-                TypeAdapter<T> delegate = gson.getDelegateAdapter(CustomizedTypeAdapterFactory.this, type);
-                JsonElement tree = delegate.toJsonTree(value);
-
-                // add our metadata
-                addMetadata(value, tree);
+        @SuppressWarnings("unchecked")
+        ImmutableListAdapter(Gson gson, Type itemType) {
+            gson_ = gson;
+            itemType_ = itemType;
+            itemAdapter_ = (TypeAdapter<E>) gson.getAdapter(TypeToken.get(itemType));
+        }
 
-                // write
-                TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
-                elementAdapter.write(out, tree);
+        @Override
+        public void write(JsonWriter out, ImmutableList<E> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
             }
 
-            @Override public T read(JsonReader in) throws IOException {
-                // when reading, we have to read metadata first and then
-                // use it to choose proper delegate adapter
-
-                // parse the stream into json elements
-                TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
-                JsonElement tree = elementAdapter.read(in);
-
-//                Class<?> objectClass = getObjectClass(type.getClass(), tree);
+            out.beginArray();
+            for (int i = 0; i < value.size(); i++)
+                writeValue(gson_, itemAdapter_, itemType_, out, value.get(i));
+            out.endArray();
+        }
 
-                if (type.getRawType() == ImmutableList.class) {
+        @Override
+        public ImmutableList<E> read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
 
-                    // from https://stackoverflow.com/a/21805758
-                    final com.google.common.reflect.TypeToken<ImmutableList<?>> immutableListToken =
-                            (com.google.common.reflect.TypeToken<ImmutableList<?>>) com.google.common.reflect.TypeToken.of(type.getType());
-                    final com.google.common.reflect.TypeToken<? super ImmutableList<?>> listToken =
-                            immutableListToken.getSupertype(List.class);
-                    TypeAdapter<?> delegate = gson.getDelegateAdapter(CustomizedTypeAdapterFactory.this, TypeToken.get(listToken.getType()));
+            ImmutableList.Builder<E> b = ImmutableList.builder();
+            in.beginArray();
+            while (in.hasNext())
+                b.add(itemAdapter_.read(in));
+            in.endArray();
+            return b.build();
+        }
+    }
 
-                    // hope that objectClass is compatible
-                    // with T (which will hopefully be an Object)
-                    return (T) ImmutableList.copyOf((List<?>) delegate.fromJsonTree(tree));
-                } else if (type.getRawType() == ImmutableMap.class) {
+    private static final class ImmutableMapAdapter<K, V> extends TypeAdapter<ImmutableMap<K, V>> {
+        private final Gson gson_;
+        private final Type valueType_;
+        private final TypeAdapter<K> keyAdapter_;
+        private final TypeAdapter<V> valueAdapter_;
 
-                        final com.google.common.reflect.TypeToken<ImmutableMap<?,?>> immutableMapToken =
-                                (com.google.common.reflect.TypeToken<ImmutableMap<?,?>>)com.google.common.reflect.TypeToken.of(type.getType());
-                        final com.google.common.reflect.TypeToken<? super ImmutableMap<?,?>> mapToken =
-                                immutableMapToken.getSupertype(Map.class);
-                        TypeAdapter<?> delegate = gson.getDelegateAdapter(CustomizedTypeAdapterFactory.this, TypeToken.get(mapToken.getType()));
+        @SuppressWarnings("unchecked")
+        ImmutableMapAdapter(Gson gson, Type keyType, Type valueType) {
+            gson_ = gson;
+            valueType_ = valueType;
+            keyAdapter_ = (TypeAdapter<K>) gson.getAdapter(TypeToken.get(keyType));
+            valueAdapter_ = (TypeAdapter<V>) gson.getAdapter(TypeToken.get(valueType));
+        }
 
-                        // hope that objectClass is compatible
-                        // with T (which will hopefully be an Object)
-                        return (T)ImmutableMap.copyOf((Map<?,?>)delegate.fromJsonTree(tree));
+        // written as json object w/ stringified keys, just like
+        // Gson does w/o complex map key serialization
+        @Override
+        public void write(JsonWriter out, ImmutableMap<K, V> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
 
-                } else {
-//                Class<?> objectClass = getObjectClass(type.getClass(), tree);
+            out.beginObject();
+            for (Map.Entry<K, V> e : value.entrySet()) {
+                out.name(String.valueOf(e.getKey()));
+                writeValue(gson_, valueAdapter_, valueType_, out, e.getValue());
+            }
+            out.endObject();
+        }
 
-//                if (objectClass != null)
-//                    delegate = gson.getDelegateAdapter(CustomizedTypeAdapterFactory.this, TypeToken.get(objectClass));
-//                else
-                    TypeAdapter<?> delegate = gson.getDelegateAdapter(CustomizedTypeAdapterFactory.this, type);
+        // both object and array-of-pairs forms are accepted, as
+        // Gson's own map adapter does
+        @Override
+        public ImmutableMap<K, V> read(JsonReader in) throws IOException {
+            JsonToken peek = in.peek();
+            if (peek == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
 
-                    // hope that objectClass is compatible
-                    // with T (which will hopefully be an Object)
-                    return (T)delegate.fromJsonTree(tree);
+            ImmutableMap.Builder<K, V> b = ImmutableMap.builder();
+            if (peek == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    in.beginArray();
+                    K key = keyAdapter_.read(in);
+                    V value = valueAdapter_.read(in);
+                    b.put(key, value);
+                    in.endArray();
                 }
+                in.endArray();
+            } else {
+                in.beginObject();
+                while (in.hasNext()) {
+                    JsonReaderInternalAccess.INSTANCE.promoteNameToValue(in);
+                    K key = keyAdapter_.read(in);
+                    V value = valueAdapter_.read(in);
+                    b.put(key, value);
+                }
+                in.endObject();
             }
-        };
 
+            try {
+                return b.build();
+            } catch (IllegalArgumentException e) {
+                throw new JsonSyntaxException("duplicate key", e);
+            }
+        }
     }
 }
 
@@ -153,8 +194,15 @@ public class DefaultIpcCodecProvider implements ICodecProvider {
 
     private static final String TAG = "DefaultIpcCodecFactory";
 
-    private Gson gson_;
-    private Map<Type, ICodec> codecs_ = new HashMap<>();
+    private final Gson gson_;
+
+    // codecs for known types are created in constructor and the map
+    // is never modified after that, so it's read w/o any locking
+    private final Map<Type, ICodec> knownCodecs_ = new IdentityHashMap<>();
+
+    // codecs for other types are created on demand, possibly
+    // by several threads at once (use cases decode on bg threads)
+    private final ConcurrentHashMap<Type, ICodec> codecs_ = new ConcurrentHashMap<>();
 
     static class GsonCodec<T> implements ICodec<T> {
         private Type type_;
@@ -190,17 +238,37 @@ public class DefaultIpcCodecProvider implements ICodecProvider {
 
     public DefaultIpcCodecProvider() {
         gson_ = new GsonBuilder()
+                // generated adapters must go first to be preferred
+                // over reflective ones
+                .registerTypeAdapterFactory(WalletDataTypeAdapterFactory.create())
                 .registerTypeAdapterFactory(new CustomizedTypeAdapterFactory())
                 .setExclusionStrategies(new TransientExclusionStrategy())
                 .create();
+
+        knownCodecs_.put(PluginData.PluginMessage.class, createCodec(PluginData.PluginMessage.class));
+        for (Type type: DefaultPlugins.DATA_TYPES)
+            knownCodecs_.put(type, createCodec(type));
+    }
+
+    private ICodec createCodec(Type type) {
+        // make Gson build (and cache) the type adapter now
+        gson_.getAdapter(TypeToken.get(type));
+        return new GsonCodec<>(type, gson_);
     }
 
     @Override
     public <T> ICodec<T> get(Type type) {
-        ICodec<T> c = (ICodec<T>)codecs_.get(type);
+        ICodec<T> c = (ICodec<T>)knownCodecs_.get(type);
+        if (c != null)
+            return c;
+
+        c = (ICodec<T>)codecs_.get(type);
         if (c == null) {
-            c = new GsonCodec<>(type, gson_);
-            codecs_.put(type, c);
+            // if other thread was faster, use it's codec
+            ICodec<T> nc = new GsonCodec<>(type, gson_);
+            c = (ICodec<T>)codecs_.putIfAbsent(type, nc);
+            if (c == null)
+                c = nc;
         }
         return c;
     }
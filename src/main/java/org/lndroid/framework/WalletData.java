@@ -5,6 +5,8 @@ import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 
 import org.lndroid.framework.common.AutoValueClass;
 
@@ -29,11 +31,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<Error> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_Error.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.Error,
                 WalletDataBuilders.IBuilder<Error>,
                 WalletDataBuilders.ErrorBuilder<Builder> {
+            public abstract Error build();
         }
     }
 
@@ -53,11 +60,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<WalletState> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_WalletState.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.WalletState,
                 WalletDataBuilders.IBuilder<WalletState>,
                 WalletDataBuilders.WalletStateBuilder<Builder> {
+            public abstract WalletState build();
         }
     }
 
@@ -123,6 +135,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<UserIdentity> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_UserIdentity.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.UserIdentity,
@@ -168,11 +184,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AuthResponse> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AuthResponse.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AuthResponse,
                 WalletDataBuilders.IBuilder<AuthResponse>,
                 WalletDataBuilders.AuthResponseBuilder<Builder> {
+            public abstract AuthResponse build();
         }
     }
 
@@ -214,11 +235,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AuthRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AuthRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AuthRequest,
                 WalletDataBuilders.IBuilder<AuthRequest>,
                 WalletDataBuilders.AuthRequestBuilder<Builder> {
+            public abstract AuthRequest build();
         }
     }
 
@@ -276,6 +302,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<User> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_User.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<User>, WalletDataBuilders.UserBuilder<Builder> {
@@ -323,6 +353,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddUserRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddUserRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<AddUserRequest>, WalletDataBuilders.AddUserRequestBuilder<Builder> {
@@ -356,9 +390,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<NewAddressRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_NewAddressRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<NewAddressRequest>, WalletDataBuilders.NewAddressRequestBuilder<Builder> {
+            public abstract NewAddressRequest build();
         }
     }
 
@@ -376,9 +415,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<NewAddress> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_NewAddress.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<NewAddress>, WalletDataBuilders.NewAddressBuilder<Builder> {
+            public abstract NewAddress build();
         }
     }
 
@@ -386,6 +430,11 @@ public final class WalletData {
     @AutoValueClass(className = AutoValue_WalletData_GetRequestLong.class)
     public static abstract class GetRequestLong implements WalletDataDecl.GetRequestTmpl<Long> {
 
+        // concrete type of the templated property
+        @Override
+        @Nullable
+        public abstract Long id();
+
         public static Builder builder() {
             return new AutoValue_WalletData_GetRequestLong.Builder()
                     // defaults
@@ -395,9 +444,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<GetRequestLong> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_GetRequestLong.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<GetRequestLong>, WalletDataBuilders.GetRequestLongBuilder<Builder> {
+            public abstract GetRequestLong build();
         }
     }
 
@@ -405,6 +459,11 @@ public final class WalletData {
     @AutoValueClass(className = AutoValue_WalletData_GetRequestString.class)
     public static abstract class GetRequestString implements WalletDataDecl.GetRequestTmpl<String> {
 
+        // concrete type of the templated property
+        @Override
+        @Nullable
+        public abstract String id();
+
         public static Builder builder() {
             return new AutoValue_WalletData_GetRequestString.Builder()
                     // defaults
@@ -414,9 +473,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<GetRequestString> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_GetRequestString.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder
                 implements WalletDataBuilders.IBuilder<GetRequestString>, WalletDataBuilders.GetRequestStringBuilder<Builder> {
+            public abstract GetRequestString build();
         }
     }
 
@@ -433,11 +497,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<SubscribeRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_SubscribeRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.SubscribeRequest,
                 WalletDataBuilders.IBuilder<SubscribeRequest>,
                 WalletDataBuilders.SubscribeRequestBuilder<Builder> {
+            public abstract SubscribeRequest build();
         }
     }
 
@@ -463,16 +532,21 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<WalletBalance> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_WalletBalance.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.WalletBalance,
                 WalletDataBuilders.IBuilder<WalletBalance>,
                 WalletDataBuilders.WalletBalanceBuilder<Builder> {
+            public abstract WalletBalance build();
         }
     }
 
     @AutoValue
-    @AutoValueClass(className = AutoValue_WalletData_WalletBalance.class)
+    @AutoValueClass(className = AutoValue_WalletData_ChannelBalance.class)
     public static abstract class ChannelBalance implements WalletDataDecl.ChannelBalance {
 
         public static ChannelBalance create(
@@ -491,11 +565,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ChannelBalance> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ChannelBalance.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ChannelBalance,
                 WalletDataBuilders.IBuilder<ChannelBalance>,
                 WalletDataBuilders.ChannelBalanceBuilder<Builder> {
+            public abstract ChannelBalance build();
         }
     }
 
@@ -551,11 +630,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<WalletInfo> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_WalletInfo.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.WalletInfo,
                 WalletDataBuilders.IBuilder<WalletInfo>,
                 WalletDataBuilders.WalletInfoBuilder<Builder> {
+            public abstract WalletInfo build();
         }
     }
 
@@ -591,11 +675,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddInvoiceRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddInvoiceRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AddInvoiceRequest,
                 WalletDataBuilders.IBuilder<AddInvoiceRequest>,
                 WalletDataBuilders.AddInvoiceRequestBuilder<Builder> {
+            public abstract AddInvoiceRequest build();
         }
     }
 
@@ -623,16 +712,23 @@ public final class WalletData {
                     .setCount(0)
                     .setAfterId(0)
                     .setBeforeId(0)
-                    .setAroundId(0);
+                    .setAroundId(0)
+                    .setRequestId(0)
+                    .setAcceptUpdates(false);
         }
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListPage> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListPage.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ListPage,
                 WalletDataBuilders.IBuilder<ListPage>,
                 WalletDataBuilders.ListPageBuilder<Builder> {
+            public abstract ListPage build();
         }
     }
 
@@ -640,6 +736,11 @@ public final class WalletData {
     @AutoValueClass(className = AutoValue_WalletData_ListInvoicesResult.class)
     public static abstract class ListInvoicesResult implements WalletDataDecl.ListResultTmpl<Invoice> {
 
+        // concrete type of the templated property
+        @Override
+        @Nullable
+        public abstract ImmutableList<Invoice> items();
+
         public static ListInvoicesResult create(
                 ImmutableList<Invoice> items,
                 int count,
@@ -655,16 +756,24 @@ public final class WalletData {
         public static Builder builder() {
             return new AutoValue_WalletData_ListInvoicesResult.Builder()
                     .setCount(0)
-                    .setPosition(0);
+                    .setPosition(0)
+                    .setRequestId(0)
+                    .setIsUpdate(false);
         }
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListInvoicesResult> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListInvoicesResult.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ListResultTmpl<Invoice>,
                 WalletDataBuilders.IBuilder<ListInvoicesResult>,
                 WalletDataBuilders.ListResultTmplBuilder<Invoice, Builder> {
+            public abstract ListInvoicesResult build();
+            public abstract Builder setItems(ImmutableList<Invoice> items);
         }
     }
 
@@ -672,6 +781,11 @@ public final class WalletData {
     @AutoValueClass(className = AutoValue_WalletData_ListPaymentsResult.class)
     public static abstract class ListPaymentsResult implements WalletDataDecl.ListResultTmpl<Payment> {
 
+        // concrete type of the templated property
+        @Override
+        @Nullable
+        public abstract ImmutableList<Payment> items();
+
         public static ListPaymentsResult create(
                 ImmutableList<Payment> items,
                 int count,
@@ -687,16 +801,24 @@ public final class WalletData {
         public static Builder builder() {
             return new AutoValue_WalletData_ListPaymentsResult.Builder()
                     .setCount(0)
-                    .setPosition(0);
+                    .setPosition(0)
+                    .setRequestId(0)
+                    .setIsUpdate(false);
         }
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListPaymentsResult> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListPaymentsResult.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ListResultTmpl<Payment>,
                 WalletDataBuilders.IBuilder<ListPaymentsResult>,
                 WalletDataBuilders.ListResultTmplBuilder<Payment, Builder> {
+            public abstract ListPaymentsResult build();
+            public abstract Builder setItems(ImmutableList<Payment> items);
         }
     }
 
@@ -736,6 +858,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListInvoicesRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListInvoicesRequest.GsonTypeAdapter(gson);
+        }
+
         @Override
         public ListInvoicesRequest withPage(ListPage page) {
             return toBuilder().setPage(page).build();
@@ -746,6 +872,7 @@ public final class WalletData {
                 WalletDataDecl.ListInvoicesRequest,
                 WalletDataBuilders.IBuilder<ListInvoicesRequest>,
                 WalletDataBuilders.ListInvoicesRequestBuilder<Builder> {
+            public abstract ListInvoicesRequest build();
             public abstract Builder setPage(ListPage page);
         }
     }
@@ -773,6 +900,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListPaymentsRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListPaymentsRequest.GsonTypeAdapter(gson);
+        }
+
         public ListPaymentsRequest withPage(ListPage page) {
             return toBuilder().setPage(page).build();
         }
@@ -782,6 +913,7 @@ public final class WalletData {
                 WalletDataDecl.ListPaymentsRequest,
                 WalletDataBuilders.IBuilder<ListPaymentsRequest>,
                 WalletDataBuilders.ListPaymentsRequestBuilder<Builder> {
+            public abstract ListPaymentsRequest build();
             public abstract Builder setPage(ListPage page);
         }
     }
@@ -871,12 +1003,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<Invoice> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_Invoice.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.Invoice,
                 WalletDataBuilders.IBuilder<Invoice>,
                 WalletDataBuilders.InvoiceBuilder<Builder> {
+            public abstract Invoice build();
         }
     }
 
@@ -940,12 +1077,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<InvoiceHTLC> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_InvoiceHTLC.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.InvoiceHTLC,
                 WalletDataBuilders.IBuilder<InvoiceHTLC>,
                 WalletDataBuilders.InvoiceHTLCBuilder<Builder> {
+            public abstract InvoiceHTLC build();
         }
     }
 
@@ -996,12 +1138,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<HTLCAttempt> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_HTLCAttempt.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.HTLCAttempt,
                 WalletDataBuilders.IBuilder<HTLCAttempt>,
                 WalletDataBuilders.HTLCAttemptBuilder<Builder> {
+            public abstract HTLCAttempt build();
         }
     }
 
@@ -1177,12 +1324,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<Channel> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_Channel.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.Channel,
                 WalletDataBuilders.IBuilder<Channel>,
                 WalletDataBuilders.ChannelBuilder<Builder> {
+            public abstract Channel build();
         }
     }
 
@@ -1234,11 +1386,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<OpenChannelRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_OpenChannelRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.OpenChannelRequest,
                 WalletDataBuilders.IBuilder<OpenChannelRequest>,
                 WalletDataBuilders.OpenChannelRequestBuilder<Builder> {
+            public abstract OpenChannelRequest build();
         }
     }
 
@@ -1314,6 +1471,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<HopHint> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_HopHint.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -1321,6 +1482,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<HopHint>,
                 WalletDataBuilders.HopHintBuilder<Builder>
         {
+            public abstract HopHint build();
         }
     }
 
@@ -1349,6 +1511,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<RouteHint> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_RouteHint.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -1356,6 +1522,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<RouteHint>,
                 WalletDataBuilders.RouteHintBuilder<HopHint, Builder>
         {
+            public abstract RouteHint build();
         }
     }
 
@@ -1435,11 +1602,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<SendPaymentRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_SendPaymentRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.SendPaymentRequest<RouteHint>,
                 WalletDataBuilders.IBuilder<SendPaymentRequest>,
                 WalletDataBuilders.SendPaymentRequestBuilder<RouteHint, Builder> {
+            public abstract SendPaymentRequest build();
         }
     }
 
@@ -1567,12 +1739,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<Payment> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_Payment.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.Payment<SendPayment, HTLCAttempt, Invoice, InvoiceHTLC>,
                 WalletDataBuilders.IBuilder<Payment>,
                 WalletDataBuilders.PaymentBuilder<SendPayment, HTLCAttempt, Invoice, InvoiceHTLC, Builder> {
+            public abstract Payment build();
         }
     }
 
@@ -1702,12 +1879,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<SendPayment> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_SendPayment.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.SendPayment<RouteHint>,
                 WalletDataBuilders.IBuilder<SendPayment>,
                 WalletDataBuilders.SendPaymentBuilder<RouteHint, Builder> {
+            public abstract SendPayment build();
         }
     }
 
@@ -1766,6 +1948,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<Contact> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_Contact.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -1773,6 +1959,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<Contact>,
                 WalletDataBuilders.ContactBuilder<RouteHint, Builder>
         {
+            public abstract Contact build();
         }
     }
 
@@ -1800,11 +1987,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddContactRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddContactRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AddContactRequest,
                 WalletDataBuilders.IBuilder<AddContactRequest>,
                 WalletDataBuilders.AddContactRequestBuilder<Builder> {
+            public abstract AddContactRequest build();
         }
     }
 
@@ -1822,11 +2014,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddAppContactRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddAppContactRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AddAppContactRequest,
                 WalletDataBuilders.IBuilder<AddAppContactRequest>,
                 WalletDataBuilders.AddAppContactRequestBuilder<Builder> {
+            public abstract AddAppContactRequest build();
         }
     }
 
@@ -1847,6 +2044,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListContactsRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListContactsRequest.GsonTypeAdapter(gson);
+        }
+
         public ListContactsRequest withPage(ListPage page) {
             return toBuilder().setPage(page).build();
         }
@@ -1856,6 +2057,7 @@ public final class WalletData {
                 WalletDataDecl.ListContactsRequest,
                 WalletDataBuilders.IBuilder<ListContactsRequest>,
                 WalletDataBuilders.ListContactsRequestBuilder<Builder> {
+            public abstract ListContactsRequest build();
             public abstract Builder setPage(ListPage page);
         }
     }
@@ -1864,6 +2066,11 @@ public final class WalletData {
     @AutoValueClass(className = AutoValue_WalletData_ListContactsResult.class)
     public static abstract class ListContactsResult implements WalletDataDecl.ListResultTmpl<Contact> {
 
+        // concrete type of the templated property
+        @Override
+        @Nullable
+        public abstract ImmutableList<Contact> items();
+
         public static ListContactsResult create(
                 ImmutableList<Contact> items,
                 int count,
@@ -1879,16 +2086,24 @@ public final class WalletData {
         public static Builder builder() {
             return new AutoValue_WalletData_ListContactsResult.Builder()
                     .setCount(0)
-                    .setPosition(0);
+                    .setPosition(0)
+                    .setRequestId(0)
+                    .setIsUpdate(false);
         }
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListContactsResult> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListContactsResult.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ListResultTmpl<Contact>,
                 WalletDataBuilders.IBuilder<ListContactsResult>,
                 WalletDataBuilders.ListResultTmplBuilder<Contact, Builder> {
+            public abstract ListContactsResult build();
+            public abstract Builder setItems(ImmutableList<Contact> items);
         }
     }
 
@@ -1921,12 +2136,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ListContactsPrivilege> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ListContactsPrivilege.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.ListContactsPrivilege,
                 WalletDataBuilders.IBuilder<ListContactsPrivilege>,
                 WalletDataBuilders.ListContactsPrivilegeBuilder<Builder> {
+            public abstract ListContactsPrivilege build();
         }
     }
 
@@ -1962,12 +2182,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ContactPaymentsPrivilege> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ContactPaymentsPrivilege.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
                 WalletDataDecl.ContactPaymentsPrivilege,
                 WalletDataBuilders.IBuilder<ContactPaymentsPrivilege>,
                 WalletDataBuilders.ContactPaymentsPrivilegeBuilder<Builder> {
+            public abstract ContactPaymentsPrivilege build();
         }
     }
 
@@ -1995,11 +2220,16 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ConnectPeerRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ConnectPeerRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.ConnectPeerRequest,
                 WalletDataBuilders.IBuilder<ConnectPeerRequest>,
                 WalletDataBuilders.ConnectPeerRequestBuilder<Builder> {
+            public abstract ConnectPeerRequest build();
         }
     }
 
@@ -2018,9 +2248,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ConnectPeerResponse> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ConnectPeerResponse.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataBuilders.IBuilder<ConnectPeerResponse> {
+            public abstract ConnectPeerResponse build();
         }
     }
 
@@ -2039,9 +2274,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ShareContactRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ShareContactRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataBuilders.IBuilder<ShareContactRequest> {
+            public abstract ShareContactRequest build();
         }
     }
 
@@ -2060,9 +2300,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ShareContactResponse> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ShareContactResponse.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataBuilders.IBuilder<ShareContactResponse> {
+            public abstract ShareContactResponse build();
         }
     }
 
@@ -2081,9 +2326,14 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddContactInvoiceRequest> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddContactInvoiceRequest.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataBuilders.IBuilder<AddContactInvoiceRequest> {
+            public abstract AddContactInvoiceRequest build();
         }
     }
 
@@ -2106,12 +2356,17 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<AddContactInvoiceResponse> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_AddContactInvoiceResponse.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.AddContactInvoiceResponse,
                 WalletDataBuilders.IBuilder<AddContactInvoiceResponse>,
                 WalletDataBuilders.AddContactInvoiceResponseBuilder<Builder>
         {
+            public abstract AddContactInvoiceResponse build();
         }
     }
 
@@ -2162,6 +2417,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<RoutingPolicy> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_RoutingPolicy.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -2169,6 +2428,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<RoutingPolicy>,
                 WalletDataBuilders.RoutingPolicyBuilder<Builder>
         {
+            public abstract RoutingPolicy build();
         }
     }
 
@@ -2209,6 +2469,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<ChannelEdge> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_ChannelEdge.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -2216,6 +2480,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<ChannelEdge>,
                 WalletDataBuilders.ChannelEdgeBuilder<RoutingPolicy,Builder>
         {
+            public abstract ChannelEdge build();
         }
     }
 
@@ -2251,6 +2516,10 @@ public final class WalletData {
 
         public abstract Builder toBuilder();
 
+        public static TypeAdapter<LightningNode> typeAdapter(Gson gson) {
+            return new AutoValue_WalletData_LightningNode.GsonTypeAdapter(gson);
+        }
+
         @AutoValue.Builder
         public abstract static class Builder implements
                 WalletDataDecl.EntityBase,
@@ -2258,6 +2527,7 @@ public final class WalletData {
                 WalletDataBuilders.IBuilder<LightningNode>,
                 WalletDataBuilders.LightningNodeBuilder<Builder>
         {
+            public abstract LightningNode build();
         }
     }
 
@@ -127,6 +127,10 @@ public class WalletDataBuilders {
         Builder setAfterId(long afterId);
         Builder setBeforeId(long beforeId);
         Builder setAroundId(long aroundId);
+        Builder setRequestId(long requestId);
+        Builder setAcceptUpdates(boolean acceptUpdates);
+        Builder setAfterCursor(String afterCursor);
+        Builder setBeforeCursor(String beforeCursor);
     }
 
     interface ListInvoicesRequestBuilder<Builder> {
@@ -185,6 +189,12 @@ public class WalletDataBuilders {
         Builder setItems(ImmutableList<Data> items);
         Builder setCount(int count);
         Builder setPosition(int position);
+        Builder setRequestId(long requestId);
+        Builder setIsUpdate(boolean isUpdate);
+        Builder setItemPositions(ImmutableList<Integer> itemPositions);
+        Builder setRemovedIds(ImmutableList<Long> removedIds);
+        Builder setFirstCursor(String firstCursor);
+        Builder setLastCursor(String lastCursor);
     }
 
     interface ListContactsPrivilegeBuilder<Builder> {
@@ -222,6 +222,23 @@ public class WalletDataDecl {
         // in total, if aroundId not found - returns
         // count items from the start of the sample
         long aroundId();
+
+        // client-assigned id echoed back by the page
+        // reply to correlate it w/ the request, 0 if unset
+        long requestId();
+
+        // set on the first page if client can apply
+        // updates instead of TX_INVALIDATE
+        boolean acceptUpdates();
+
+        // keyset cursors (ListCursor) returned by the server
+        // w/ the previous page, if set - used instead of
+        // afterId/beforeId to seek the sorted set
+        @Nullable
+        String afterCursor();
+
+        @Nullable
+        String beforeCursor();
     }
 
     // base ListRequest for a generic implementation
@@ -338,6 +355,31 @@ public class WalletDataDecl {
         int count();
 
         int position();
+
+        // requestId of the ListPage this page replies to,
+        // 0 for the first page or if server doesn't echo it
+        long requestId();
+
+        // if set, this is not a page but a change of the data set
+        // sent to clients that acceptUpdates: position is the new
+        // position of the first loaded item, count is the new total,
+        // items are inserted or changed entities w/ their positions
+        // in itemPositions, removedIds - ids of removed entities
+        boolean isUpdate();
+
+        @Nullable
+        ImmutableList<Integer> itemPositions();
+
+        @Nullable
+        ImmutableList<Long> removedIds();
+
+        // keyset cursors of the first and last item of the page,
+        // null if server doesn't support them
+        @Nullable
+        String firstCursor();
+
+        @Nullable
+        String lastCursor();
     }
 
     public interface ListContactsPrivilege {
@@ -0,0 +1,19 @@
+package org.lndroid.framework;
+
+import com.google.gson.TypeAdapterFactory;
+import com.ryanharter.auto.value.gson.GsonTypeAdapterFactory;
+
+// Factory of the TypeAdapters generated by auto-value-gson for
+// every WalletData type having a static typeAdapter(Gson) method.
+// Generated adapters use AutoValue builders directly and need no
+// reflection, so they're cheap to create and to run.
+// NOTE: the extension only finds build() and setters declared
+// in the Builder itself and having concrete types, that's why some
+// of them are re-declared in WalletData builders.
+@GsonTypeAdapterFactory
+abstract class WalletDataTypeAdapterFactory implements TypeAdapterFactory {
+
+    static TypeAdapterFactory create() {
+        return new AutoValueGson_WalletDataTypeAdapterFactory();
+    }
+}
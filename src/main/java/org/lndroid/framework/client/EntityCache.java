@@ -0,0 +1,184 @@
+package org.lndroid.framework.client;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
+
+// in-memory LRU cache of entities received by get and list
+// use cases, keyed by entity type and id, bounded by estimated
+// byte size. Entries are refreshed by every reply that carries
+// the entity, and invalidated per entity or per type when server
+// signals TX_INVALIDATE. Use cases only cache entities that reached
+// their final state (see isFinal), as others are served w/o asking
+// the server and would be stale after it changes them. Thread-safe.
+public class EntityCache {
+
+    // used if the size of entity's payload is unknown,
+    // i.e. when client talks to an in-process server
+    private static final int DEFAULT_ENTITY_SIZE = 1024;
+
+    private static class Key {
+        final Type type;
+        final long id;
+
+        Key(Type type, long id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return id == k.id && type.equals(k.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + (int)(id ^ (id >>> 32));
+        }
+    }
+
+    private static class Entry {
+        final Object entity;
+        final int size;
+        // type generation the entry was put at
+        final long generation;
+
+        Entry(Object entity, int size, long generation) {
+            this.entity = entity;
+            this.size = size;
+            this.generation = generation;
+        }
+    }
+
+    private int maxSize_;
+    private int size_;
+    // access-ordered, eldest is least recently used
+    private LinkedHashMap<Key, Entry> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    // bumped on type invalidation to drop all
+    // entries of the type at once
+    private Map<Type, Long> generations_ = new HashMap<>();
+
+    // metrics
+    private long hits_;
+    private long misses_;
+    private long evictions_;
+
+    public EntityCache(int maxBytes) {
+        maxSize_ = maxBytes;
+    }
+
+    // entity won't be changed by server any more
+    public static boolean isFinal(Object entity) {
+        if (entity instanceof WalletData.Invoice) {
+            final int state = ((WalletData.Invoice)entity).state();
+            return state == WalletData.INVOICE_STATE_SETTLED
+                    || state == WalletData.INVOICE_STATE_CANCELED;
+        }
+        if (entity instanceof WalletData.Channel) {
+            final int state = ((WalletData.Channel)entity).state();
+            return state == WalletData.CHANNEL_STATE_CLOSED
+                    || state == WalletData.CHANNEL_STATE_FAILED
+                    || state == WalletData.CHANNEL_STATE_REJECTED;
+        }
+        if (entity instanceof WalletData.SendPayment) {
+            final int state = ((WalletData.SendPayment)entity).state();
+            return state == WalletData.SEND_PAYMENT_STATE_OK
+                    || state == WalletData.SEND_PAYMENT_STATE_FAILED;
+        }
+        return entity instanceof WalletData.Contact;
+    }
+
+    private void remove(Key key) {
+        Entry e = entries_.remove(key);
+        if (e != null)
+            size_ -= e.size;
+    }
+
+    private void trim() {
+        Iterator<Entry> i = entries_.values().iterator();
+        while (size_ > maxSize_ && i.hasNext()) {
+            size_ -= i.next().size;
+            i.remove();
+            evictions_++;
+        }
+    }
+
+    private long generation(Type type) {
+        Long g = generations_.get(type);
+        return g != null ? g : 0;
+    }
+
+    // returns cached entity or null
+    public synchronized <T> T get(Type type, long id) {
+        Key key = new Key(type, id);
+        Entry e = entries_.get(key);
+        if (e != null && e.generation != generation(type)) {
+            remove(key);
+            e = null;
+        }
+
+        if (e == null) {
+            misses_++;
+            return null;
+        }
+
+        hits_++;
+        return (T)e.entity;
+    }
+
+    // size - estimated size of entity in bytes, 0 if unknown
+    public synchronized void put(Type type, WalletDataDecl.EntityBase entity, int size) {
+        if (size <= 0)
+            size = DEFAULT_ENTITY_SIZE;
+        Key key = new Key(type, entity.id());
+        remove(key);
+        entries_.put(key, new Entry(entity, size, generation(type)));
+        size_ += size;
+        trim();
+    }
+
+    public synchronized void invalidate(Type type, long id) {
+        remove(new Key(type, id));
+    }
+
+    // drop all entities of the type
+    public synchronized void invalidate(Type type) {
+        generations_.put(type, generation(type) + 1);
+    }
+
+    public synchronized void clear() {
+        entries_.clear();
+        size_ = 0;
+        generations_.clear();
+    }
+
+    public synchronized long hits() {
+        return hits_;
+    }
+
+    public synchronized long misses() {
+        return misses_;
+    }
+
+    // evicted due to the size limit
+    public synchronized long evictions() {
+        return evictions_;
+    }
+
+    // estimated size of cached entities in bytes
+    public synchronized int size() {
+        return size_;
+    }
+
+    public int maxSize() {
+        return maxSize_;
+    }
+}
@@ -8,4 +8,10 @@ public interface IPluginClient {
 
     void connect(Context ctx);
 
+    // current client metrics
+    PluginClientStats getStats();
+
+    // cache shared by use cases of this client, null if disabled
+    EntityCache getEntityCache();
+
 }
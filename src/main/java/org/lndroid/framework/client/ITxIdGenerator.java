@@ -0,0 +1,7 @@
+package org.lndroid.framework.client;
+
+public interface ITxIdGenerator {
+    // returns a new id for a tx with the plugin,
+    // must be safe to call from any thread
+    String generate(String pluginId);
+}
@@ -0,0 +1,75 @@
+package org.lndroid.framework.client;
+
+// histogram of latencies w/ power-of-two buckets: bucket 0 counts
+// latencies under BASE_US microseconds, bucket i - under BASE_US << i,
+// the last one - everything above. Thread-safe.
+public class LatencyHistogram {
+
+    public static final int BASE_US = 125;
+    public static final int BUCKETS = 12;
+
+    private long[] counts_ = new long[BUCKETS];
+    private long count_;
+    private long totalUs_;
+    private long maxUs_;
+
+    public LatencyHistogram() {
+    }
+
+    private LatencyHistogram(LatencyHistogram h) {
+        counts_ = h.counts_.clone();
+        count_ = h.count_;
+        totalUs_ = h.totalUs_;
+        maxUs_ = h.maxUs_;
+    }
+
+    public synchronized void record(long nanos) {
+        final long us = Math.max(0, nanos / 1000);
+        int b = 0;
+        while (b < BUCKETS - 1 && us >= ((long)BASE_US << b))
+            b++;
+        counts_[b]++;
+        count_++;
+        totalUs_ += us;
+        maxUs_ = Math.max(maxUs_, us);
+    }
+
+    public synchronized LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    // upper bound of the bucket in microseconds,
+    // Long.MAX_VALUE for the last one
+    public static long bucketLimitUs(int bucket) {
+        return bucket < BUCKETS - 1 ? (long)BASE_US << bucket : Long.MAX_VALUE;
+    }
+
+    public synchronized long bucketCount(int bucket) {
+        return counts_[bucket];
+    }
+
+    public synchronized long count() {
+        return count_;
+    }
+
+    public synchronized long averageUs() {
+        return count_ > 0 ? totalUs_ / count_ : 0;
+    }
+
+    public synchronized long maxUs() {
+        return maxUs_;
+    }
+
+    // upper bound of the bucket w/ the percentile p (0-100),
+    // capped by the max value
+    public synchronized long percentileUs(double p) {
+        final long rank = (long)Math.ceil(count_ * p / 100);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts_[b];
+            if (seen >= rank && seen > 0)
+                return Math.min(bucketLimitUs(b), maxUs_);
+        }
+        return 0;
+    }
+}
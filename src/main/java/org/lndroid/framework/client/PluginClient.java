@@ -4,112 +4,457 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Binder;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.Pair;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Type;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.lndroid.framework.WalletData;
+import org.lndroid.framework.common.CompactPluginMessageCodec;
+import org.lndroid.framework.common.DefaultPlugins;
 import org.lndroid.framework.common.ICodec;
 import org.lndroid.framework.common.PluginData;
 import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IIpcSigner;
+import org.lndroid.framework.common.IpcSession;
 import org.lndroid.framework.common.PluginUtils;
 
 class PluginClient extends Handler implements IPluginClient {
 
     private static final String TAG = "PluginClient";
 
+    // max number of messages waiting to be decoded,
+    // if exceeded messages are decoded on our looper
+    private static final int DECODE_QUEUE_SIZE = 64;
+    private static final long DECODE_THREAD_KEEPALIVE_MS = 30000;
+
+    // rebind backoff after the service is gone
+    private static final long REBIND_MIN_DELAY_MS = 1000;
+    private static final long REBIND_MAX_DELAY_MS = 60000;
+
+    // resolution of local tx timeouts, and the grace period
+    // given to server to report TX_TIMEOUT itself
+    private static final long TIMER_TICK_MS = 250;
+    private static final long TIMEOUT_GRACE_MS = 1000;
+
+    private static final long SIGNER_THREAD_KEEPALIVE_MS = 30000;
+
     private Messenger self_;
     private Messenger server_;
     private WalletData.UserIdentity userId_;
     private boolean ipc_;
     private ICodecProvider ipcCodecProvider_;
     private ICodec<PluginData.PluginMessage> ipcPluginMessageCodec_;
+    // set if compact envelopes are enabled, used
+    // once server announces it decodes them
+    private CompactPluginMessageCodec compactCodec_;
+
+    // messages are authenticated by session MAC once the
+    // handshake w/ the connected server is complete
+    private boolean sessionEnabled_;
+    private KeyPair sessionKeyPair_;
+    private IpcSession session_;
+
+    // sessionless messages are signed by the signer on a worker
+    // thread, messages are sent in order as their signatures are
+    // ready, messages that queued up while signer was busy are
+    // signed as a single batch if batching is enabled
+    private IIpcSigner signer_;
+    private ThreadPoolExecutor signerThread_;
+    private LinkedList<SignJob> signJobs_ = new LinkedList<>();
+    private boolean signing_;
+    private long signatures_;
+    private long signedMessages_;
+    // time spent by signer, and delay added to sending
+    private LatencyHistogram signLatency_ = new LatencyHistogram();
+    private LatencyHistogram signDelay_ = new LatencyHistogram();
+
     private String servicePackageName_;
     private String serviceClassName_;
     private String servicePubkey_;
     private boolean bound_;
-    private Map<String, Plugin> plugins_ = new HashMap<>();
+    private TransactionRegistry transactions_ = new TransactionRegistry();
+    private ITxIdGenerator txIdGenerator_;
+    private EntityCache entityCache_;
 
     private ServiceConnection connection_;
-    private Queue<Pair<WeakReference<PluginTransaction>, Message>> queue_ = new LinkedList<>();
-
-
-    class Plugin {
-
-        private String pluginId_;
-        private PluginClient client_;
-        private Map<String, WeakReference<PluginTransaction>> transactions_ = new HashMap<>();
-
-        Plugin(String pluginId, PluginClient client) {
-            pluginId_ = pluginId;
-            client_ = client;
+    private Context context_;
+
+    // rebind w/ exponential backoff if service is lost, read
+    // transactions are restarted after reconnect, paged ones invalidated
+    private boolean autoReconnect_;
+    private long rebindDelay_ = REBIND_MIN_DELAY_MS;
+    private List<WeakReference<PluginTransaction>> resume_ = new ArrayList<>();
+    private Runnable rebind_ = new Runnable() {
+        @Override
+        public void run() {
+            rebind();
         }
-
-        PluginTransaction createTransaction(String txId, IPluginTransactionCallback cb) {
-            if (txId.isEmpty()) // FIXME use GUID?
-                txId = pluginId_ + "_"+new Long(System.currentTimeMillis()).toString();
-
-            PluginTransaction t = new PluginTransaction(pluginId_, userId_, txId, cb, client_);
-            transactions_.put(txId, new WeakReference<PluginTransaction>(t));
-
-            return t;
+    };
+    private PluginMessageQueue queue_;
+
+    // ipc messages are decoded by this pool if it's not null,
+    // and dispatched on our looper in the order of their arrival
+    private ThreadPoolExecutor decoder_;
+    private long nextDecodeSeq_;
+    private long nextDispatchSeq_;
+    private Map<Long, DecodedMessage> decoded_ = new HashMap<>();
+
+    // payloads of this size or larger are sent in shared memory
+    // if server has announced it accepts them, 0 to disable
+    private int shmThreshold_;
+    private int serverShmMaxSize_;
+
+    // payloads of this size or larger are deflated
+    // if server accepts that, 0 to disable
+    private int compressThreshold_;
+    private boolean serverCompression_;
+    private long compressedSent_;
+
+    // messages sent within one looper tick are
+    // collected here and sent as a single batch
+    private boolean batching_;
+    private List<PluginMessageQueue.Entry> batch_ = new ArrayList<>();
+    private Runnable flushBatch_ = new Runnable() {
+        @Override
+        public void run() {
+            flushBatch();
         }
-
-        PluginTransaction getTransaction(String txId) {
-            WeakReference<PluginTransaction> ref = transactions_.get(txId);
-            return ref != null ? ref.get() : null;
+    };
+
+    // local tx deadlines, single tick runnable is
+    // posted while there are pending timers
+    private TimerWheel timers_ = new TimerWheel(TIMER_TICK_MS);
+    private boolean timerTickPosted_;
+    private long timeouts_;
+    private Runnable timerTick_ = new Runnable() {
+        @Override
+        public void run() {
+            timerTickPosted_ = false;
+            timeouts_ += timers_.advance(SystemClock.uptimeMillis());
+            postTimerTick();
+        }
+    };
+
+    // outgoing messages in the order of sending, waiting
+    // for their signatures or for the ones ahead of them
+    static class SignJob {
+        List<PluginMessageQueue.Entry> entries;
+        Message message;
+        boolean needsSignature;
+        boolean submitted;
+        boolean ready;
+        boolean failed;
+        boolean cancelled;
+        long created = SystemClock.elapsedRealtimeNanos();
+
+        SignJob(List<PluginMessageQueue.Entry> entries, Message message) {
+            this.entries = entries;
+            this.message = message;
         }
+    }
+
+    static class DecodedMessage {
+        long seq;
+        PluginData.PluginMessage pm;
 
-        void releaseTransaction(String id) {
-            Log.i(TAG, "transaction released "+id);
-            transactions_.remove(id);
+        DecodedMessage(long seq, PluginData.PluginMessage pm) {
+            this.seq = seq;
+            this.pm = pm;
         }
     }
 
     public PluginClient(WalletData.UserIdentity userId, Messenger server, boolean ipc, ICodecProvider ipcCodecProvider,
-                        String servicePackageName, String serviceClassName, String servicePubkey) {
+                        String servicePackageName, String serviceClassName, String servicePubkey,
+                        int decodeThreads, int shmThreshold, int compressThreshold,
+                        boolean compactEnvelope, boolean session, IIpcSigner signer, boolean batching,
+                        int queueCapacity, boolean autoReconnect, ITxIdGenerator txIdGenerator,
+                        EntityCache entityCache) {
         userId_ = userId;
         self_ = new Messenger(this);
         server_ = server;
         ipc_ = ipc;
         ipcCodecProvider_ = ipcCodecProvider;
-        ipcPluginMessageCodec_ = ipcCodecProvider_.get(PluginData.PluginMessage.class);
+        if (compactEnvelope) {
+            compactCodec_ = new CompactPluginMessageCodec(ipcCodecProvider_);
+            ipcPluginMessageCodec_ = compactCodec_;
+        } else {
+            ipcPluginMessageCodec_ = ipcCodecProvider_.get(PluginData.PluginMessage.class);
+        }
         servicePackageName_ = servicePackageName;
         serviceClassName_ = serviceClassName;
         servicePubkey_ = servicePubkey;
+        shmThreshold_ = shmThreshold;
+        compressThreshold_ = compressThreshold;
+        sessionEnabled_ = session;
+        signer_ = signer;
+        if (signer_ != null) {
+            signerThread_ = new ThreadPoolExecutor(0, 1, SIGNER_THREAD_KEEPALIVE_MS,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+        batching_ = batching;
+        queue_ = new PluginMessageQueue(queueCapacity);
+        autoReconnect_ = autoReconnect;
+        txIdGenerator_ = txIdGenerator;
+        entityCache_ = entityCache;
 
         if (ipc_) {
             connection_ = createConnection();
+
+            if (decodeThreads > 0) {
+                decoder_ = new ThreadPoolExecutor(decodeThreads, decodeThreads,
+                        DECODE_THREAD_KEEPALIVE_MS, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(DECODE_QUEUE_SIZE));
+                decoder_.allowCoreThreadTimeOut(true);
+
+                // handles must be resolved in order of arrival
+                if (compactCodec_ != null)
+                    compactCodec_.setDeferHandles(true);
+            }
         }
     }
 
     private void sendQueuedMessages() {
         while(bound_) {
-            Pair<WeakReference<PluginTransaction>, Message> p = queue_.poll();
-            if (p == null)
+            PluginMessageQueue.Entry e = queue_.poll();
+            if (e == null)
                 break;
 
             // tx might be already gone
-            PluginTransaction tx = p.first.get();
+            PluginTransaction tx = e.tx.get();
             if (tx != null) {
-                final boolean ok = send(tx, p.second);
-                if (!ok) {
-                    tx.onIpcError();
+                e.message = encodeIpc(e.pm);
+                if (batching_) {
+                    addToBatch(e);
+                    continue;
+                }
+
+                if (!transmit(Collections.singletonList(e), e.message))
+                    break;
+            }
+        }
+    }
+
+    // entry is sent after reconnect, it's Bundle was made for the
+    // lost connection (session MAC, identity handles) and might
+    // have been stripped by a batch, so it's encoded again
+    private void requeue(PluginMessageQueue.Entry e) {
+        e.message = null;
+        enqueue(e);
+    }
+
+    private void enqueue(PluginMessageQueue.Entry e) {
+        PluginMessageQueue.Entry dropped = queue_.add(e);
+        if (dropped != null) {
+            Log.i(TAG, "queue full, dropped tx "+dropped.txId+" type "+dropped.type);
+            PluginTransaction tx = dropped.tx.get();
+            if (tx != null && tx.isActive())
+                tx.onIpcError();
+        }
+    }
+
+    private void addToBatch(PluginMessageQueue.Entry e) {
+        if (batch_.isEmpty())
+            post(flushBatch_);
+        batch_.add(e);
+    }
+
+    private void flushBatch() {
+        List<PluginMessageQueue.Entry> batch = batch_;
+        batch_ = new ArrayList<>();
+        if (batch.isEmpty())
+            return;
+
+        // disconnected since messages were added
+        if (!bound_) {
+            for (PluginMessageQueue.Entry e: batch) {
+                PluginUtils.releasePluginMessageIpc(e.message.peekData());
+                requeue(e);
+            }
+            return;
+        }
+
+        Message m;
+        if (batch.size() == 1) {
+            m = batch.get(0).message;
+        } else {
+            // batch strips the headers of it's bundles
+            List<Bundle> bundles = new ArrayList<>(batch.size());
+            for (PluginMessageQueue.Entry e: batch)
+                bundles.add(new Bundle(e.message.getData()));
+
+            m = this.obtainMessage(PluginData.MESSAGE_WHAT_IPC_BATCH);
+            m.setData(PluginUtils.encodePluginMessageBatchIpc(bundles));
+        }
+
+        Log.i(TAG, "sending batch of "+batch.size());
+        transmit(batch, m);
+    }
+
+    private void onSendError(List<PluginMessageQueue.Entry> entries) {
+        for (PluginMessageQueue.Entry e: entries) {
+            // tx might have several messages here
+            PluginTransaction tx = e.tx.get();
+            if (tx != null && tx.isActive())
+                tx.onIpcError();
+        }
+    }
+
+    private boolean sendNow(List<PluginMessageQueue.Entry> entries, Message m) {
+        final boolean ok = send(null, m);
+        if (!ok) {
+            onSendError(entries);
+        } else if (compactCodec_ != null) {
+            // server has seen identities sent in full
+            for (PluginMessageQueue.Entry e: entries)
+                compactCodec_.onSent(e.pm);
+        }
+        return ok;
+    }
+
+    // send now, or after signing, returns false if sending has failed
+    private boolean transmit(List<PluginMessageQueue.Entry> entries, Message m) {
+        if (signer_ == null)
+            return sendNow(entries, m);
+
+        SignJob job = new SignJob(entries, m);
+        job.needsSignature = PluginUtils.needsSignature(m.getData());
+        job.ready = !job.needsSignature;
+        signJobs_.add(job);
+        sendSigned();
+        signNext();
+        return true;
+    }
+
+    // send jobs from the head of the queue that are ready
+    private void sendSigned() {
+        while (!signJobs_.isEmpty() && signJobs_.peek().ready) {
+            SignJob job = signJobs_.poll();
+            if (job.failed) {
+                PluginUtils.releasePluginMessageIpc(job.message.peekData());
+                onSendError(job.entries);
+                continue;
+            }
+
+            if (job.needsSignature)
+                signDelay_.record(SystemClock.elapsedRealtimeNanos() - job.created);
+            sendNow(job.entries, job.message);
+        }
+    }
+
+    // waiting jobs that need signing, up to the first one that doesn't
+    private List<SignJob> nextToSign() {
+        List<SignJob> jobs = new ArrayList<>();
+        for (SignJob job: signJobs_) {
+            if (job.submitted || job.ready) {
+                if (!jobs.isEmpty())
                     break;
+                continue;
+            }
+            jobs.add(job);
+            if (!batching_)
+                break;
+        }
+        return jobs;
+    }
+
+    // merge jobs into a single batch
+    private SignJob mergeJobs(List<SignJob> jobs) {
+        List<PluginMessageQueue.Entry> entries = new ArrayList<>();
+        List<Bundle> bundles = new ArrayList<>();
+        for (SignJob job: jobs) {
+            entries.addAll(job.entries);
+            bundles.add(new Bundle(job.message.getData()));
+        }
+
+        Message m = this.obtainMessage(PluginData.MESSAGE_WHAT_IPC_BATCH);
+        m.setData(PluginUtils.encodePluginMessageBatchIpc(bundles));
+
+        SignJob merged = new SignJob(entries, m);
+        merged.needsSignature = true;
+        merged.created = jobs.get(0).created;
+        signJobs_.add(signJobs_.indexOf(jobs.get(0)), merged);
+        signJobs_.removeAll(jobs);
+        return merged;
+    }
+
+    private void signNext() {
+        if (signing_)
+            return;
+
+        List<SignJob> jobs = nextToSign();
+        if (jobs.isEmpty())
+            return;
+
+        final SignJob job = jobs.size() == 1 ? jobs.get(0) : mergeJobs(jobs);
+        job.submitted = true;
+        signing_ = true;
+
+        // bundle is only accessed by the signer thread until it's done
+        final Bundle b = job.message.getData();
+        signerThread_.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long start = SystemClock.elapsedRealtimeNanos();
+                byte[] signature = null;
+                try {
+                    signature = signer_.sign(PluginUtils.getSigningData(b));
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "signer failed: "+e);
                 }
+                signLatency_.record(SystemClock.elapsedRealtimeNanos() - start);
+
+                final byte[] result = signature;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onSigned(job, result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onSigned(SignJob job, byte[] signature) {
+        signing_ = false;
+        if (job.cancelled) {
+            // connection was lost, it's entries were handled
+            // then, and signer was the last to read the bundle
+            PluginUtils.releasePluginMessageIpc(job.message.peekData());
+        } else {
+            if (signature != null) {
+                PluginUtils.putSignature(job.message.getData(), signer_.pubkey(), signature);
+                signatures_++;
+                signedMessages_ += job.entries.size();
+            } else {
+                Log.e(TAG, "failed to sign "+job.entries.size()+" messages");
+                job.failed = true;
             }
+            job.ready = true;
+            sendSigned();
         }
+        signNext();
     }
 
     private ServiceConnection createConnection() {
@@ -124,6 +469,11 @@ class PluginClient extends Handler implements IPluginClient {
                 Log.i(TAG, "connected");
                 server_ = new Messenger(service);
                 bound_ = true;
+                rebindDelay_ = REBIND_MIN_DELAY_MS;
+                removeCallbacks(rebind_);
+                if (sessionEnabled_)
+                    startSession();
+                resumeTransactions();
                 sendQueuedMessages();
             }
             @Override
@@ -131,55 +481,289 @@ class PluginClient extends Handler implements IPluginClient {
                 server_ = null;
                 bound_ = false;
                 Log.i(TAG, "disconnected");
+                onConnectionLost();
+            }
+            @Override
+            public void onBindingDied(ComponentName name) {
+                // system won't reconnect this binding
+                Log.i(TAG, "binding died");
+                server_ = null;
+                bound_ = false;
+                onConnectionLost();
             }
         };
     }
 
+    // system usually restarts the service and reconnects by itself,
+    // we rebind if that doesn't happen in time
+    private void onConnectionLost() {
+        // new server instance knows nothing of our identity
+        // handles and might not support compact envelopes
+        if (compactCodec_ != null)
+            compactCodec_.reset();
+        session_ = null;
+        sessionKeyPair_ = null;
+
+        // unsent messages are sent after reconnect, like the ones
+        // of a batch flushed while disconnected, or their txs are
+        // failed if we won't reconnect, signer's result for the
+        // submitted job is ignored
+        final boolean reconnect = autoReconnect_ && context_ != null;
+        for (SignJob job: signJobs_) {
+            job.cancelled = true;
+            // signer is still reading the submitted one
+            if (!job.submitted || job.ready)
+                PluginUtils.releasePluginMessageIpc(job.message.peekData());
+            if (reconnect) {
+                for (PluginMessageQueue.Entry e: job.entries)
+                    requeue(e);
+            } else {
+                onSendError(job.entries);
+            }
+        }
+        signJobs_.clear();
+
+        if (!reconnect)
+            return;
+
+        // server state is lost, actions might have been executed
+        // or not - report the error, reads are safe to restart
+        List<PluginTransaction> txs = new ArrayList<>();
+        transactions_.getActive(txs);
+        for (PluginTransaction tx: txs) {
+            // not sent yet, will be sent after reconnect
+            if (queue_.hasStart(tx.id()))
+                continue;
+
+            if (PluginMessageQueue.isInteractive(tx.pluginId()))
+                tx.onIpcError();
+            else
+                resume_.add(new WeakReference<>(tx));
+        }
+
+        removeCallbacks(rebind_);
+        postDelayed(rebind_, rebindDelay_);
+    }
+
+    private void rebind() {
+        if (bound_)
+            return;
+
+        Log.i(TAG, "rebinding after "+rebindDelay_+"ms");
+        rebindDelay_ = Math.min(rebindDelay_ * 2, REBIND_MAX_DELAY_MS);
+        try {
+            context_.unbindService(connection_);
+        } catch (IllegalArgumentException e) {
+            // not bound
+        }
+
+        if (!context_.bindService(createIntent(), connection_, Context.BIND_AUTO_CREATE))
+            Log.e(TAG, "rebind failed");
+
+        // retry if connection isn't restored
+        postDelayed(rebind_, rebindDelay_);
+    }
+
+    private void resumeTransactions() {
+        List<WeakReference<PluginTransaction>> resume = resume_;
+        resume_ = new ArrayList<>();
+        for (WeakReference<PluginTransaction> ref: resume) {
+            PluginTransaction tx = ref.get();
+            // start might not have been sent yet
+            if (tx == null || !tx.isActive() || queue_.hasStart(tx.id()))
+                continue;
+
+            if (tx.isPaged()) {
+                Log.i(TAG, "invalidating tx "+tx.id());
+                tx.onInvalidate();
+            } else {
+                Log.i(TAG, "restarting tx "+tx.id());
+                tx.restart();
+            }
+        }
+    }
+
+    private void postTimerTick() {
+        if (!timerTickPosted_ && !timers_.isEmpty()) {
+            timerTickPosted_ = postDelayed(timerTick_, TIMER_TICK_MS);
+        }
+    }
+
+    void scheduleTimeout(TimerWheel.Node timer, long timeout) {
+        timers_.schedule(timer, SystemClock.uptimeMillis(), timeout + TIMEOUT_GRACE_MS);
+        postTimerTick();
+    }
+
+    void cancelTimeout(TimerWheel.Node timer) {
+        // tick isn't removed, it will stop by itself
+        // when it finds the wheel empty
+        timers_.cancel(timer);
+    }
+
     @Override
     public IPluginTransaction createTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
-        Plugin p = plugins_.get(pluginId);
-        if (p == null) {
-            p = new Plugin(pluginId, this);
-            plugins_.put(pluginId, p);
-        }
-        return p.createTransaction(txId, cb);
+        pluginId = transactions_.internPluginId(pluginId);
+        if (txId.isEmpty())
+            txId = txIdGenerator_.generate(pluginId);
+
+        PluginTransaction t = new PluginTransaction(pluginId, userId_, txId, cb, this);
+        transactions_.add(t);
+        return t;
     }
 
     public void releaseTransaction(IPluginTransaction tx) {
-        Plugin p = plugins_.get(tx.pluginId());
-        if (p == null)
-            throw new RuntimeException("Unknown plugin");
-        p.releaseTransaction(tx.id());
+        Log.i(TAG, "transaction released "+tx.id());
+        transactions_.remove(tx.pluginId(), tx.id());
     }
 
     public void handlePluginMessage(PluginData.PluginMessage pm) {
         Log.i(TAG, "received tx "+pm.txId()+" type "+pm.type()+" plugin "+pm.pluginId());
 
-        Plugin p = plugins_.get(pm.pluginId());
-        PluginTransaction tx = p.getTransaction(pm.txId());
+        PluginTransaction tx = transactions_.get(pm.pluginId(), pm.txId());
         if (tx != null) {
             tx.handleMessage(pm);
         } else {
             Log.i(TAG, "message for unknown tx "+pm.txId()+" plugin "+pm.pluginId()+" dropped");
-            p.releaseTransaction(pm.txId());
+            transactions_.remove(pm.pluginId(), pm.txId());
         }
     }
 
-    @Override
-    public void handleMessage(Message msg) {
-        PluginData.PluginMessage pm = (PluginData.PluginMessage) msg.obj;
-        if (ipc_) {
-            pm = PluginUtils.decodePluginMessageIpc(msg.getData(), ipcPluginMessageCodec_);
-            if (pm != null)
-                pm.assignCodecProvider(ipcCodecProvider_);
+    private PluginData.PluginMessage decodeIpc(Bundle b, IpcSession session) {
+        PluginData.PluginMessage pm = PluginUtils.decodePluginMessageIpc(b, ipcPluginMessageCodec_, session);
+        if (pm != null)
+            pm.assignCodecProvider(ipcCodecProvider_);
+        return pm;
+    }
+
+    // list pages are the expensive part of decoding, their data
+    // type is known by plugin id so it's decoded by the decoder
+    // thread too, and use cases find it memoized by getData. Lazy
+    // list views (see ListData.setLazyDecoding) get the decoded page.
+    private static void decodeIpcData(PluginData.PluginMessage pm) {
+        if (pm == null || pm.dataSize() == 0
+                || !PluginData.MESSAGE_TYPE_REPLY.equals(pm.type()))
+            return;
+
+        final Type type = DefaultPlugins.LIST_REPLY_TYPES.get(pm.pluginId());
+        if (type == null)
+            return;
+
+        pm.assignDataType(type);
+        try {
+            pm.getData();
+        } catch (IOException e) {
+            // use case will get the same error
+            Log.e(TAG, "failed to decode list page: "+e);
         }
+    }
 
+    private void dispatch(PluginData.PluginMessage pm) {
         if (pm != null)
             handlePluginMessage(pm);
         else
             Log.i(TAG, "empty plugin client message received");
     }
 
+    // called on our looper, dispatches all messages that
+    // are now in order, keeps the rest until their turn
+    private void onDecoded(DecodedMessage dm) {
+        decoded_.put(dm.seq, dm);
+        while (true) {
+            DecodedMessage next = decoded_.remove(nextDispatchSeq_);
+            if (next == null)
+                break;
+
+            nextDispatchSeq_++;
+            if (compactCodec_ != null && next.pm != null)
+                next.pm = compactCodec_.resolve(next.pm);
+            dispatch(next.pm);
+        }
+    }
+
+    private void decodeAsync(final Bundle b, final IpcSession session) {
+        final long seq = nextDecodeSeq_++;
+        try {
+            decoder_.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final PluginData.PluginMessage pm = decodeIpc(b, session);
+                    decodeIpcData(pm);
+                    final DecodedMessage dm = new DecodedMessage(seq, pm);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onDecoded(dm);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // decoder is overloaded
+            onDecoded(new DecodedMessage(seq, decodeIpc(b, session)));
+        }
+    }
+
+    private void handleIpc(Bundle b) {
+        if (decoder_ != null) {
+            // bundle is only accessed by the decoder thread after this
+            decodeAsync(b, session_);
+        } else {
+            dispatch(decodeIpc(b, session_));
+        }
+    }
+
+    // new session per connection, messages are sent w/o
+    // MAC until server replies, legacy servers never do
+    private void startSession() {
+        session_ = null;
+        sessionKeyPair_ = IpcSession.generateKeyPair();
+
+        Message m = this.obtainMessage(PluginData.MESSAGE_WHAT_IPC_HELLO);
+        m.setData(IpcSession.createHello(sessionKeyPair_));
+        send(null, m);
+    }
+
+    private void onHelloReply(Bundle b) {
+        if (sessionKeyPair_ == null || b == null) {
+            Log.i(TAG, "unexpected hello reply");
+            return;
+        }
+
+        session_ = IpcSession.acceptHelloReply(b, sessionKeyPair_, servicePubkey_);
+        sessionKeyPair_ = null;
+        if (session_ != null)
+            Log.i(TAG, "session established");
+        else
+            Log.e(TAG, "session handshake failed");
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        if (!ipc_) {
+            dispatch((PluginData.PluginMessage) msg.obj);
+            return;
+        }
+
+        if (msg.what == PluginData.MESSAGE_WHAT_IPC_HELLO) {
+            onHelloReply(msg.getData());
+            return;
+        }
+
+        if (shmThreshold_ > 0)
+            serverShmMaxSize_ = PluginUtils.getSharedMemoryMaxSize(msg.getData());
+        if (compressThreshold_ > 0)
+            serverCompression_ = PluginUtils.isCompressionAccepted(msg.getData());
+        if (compactCodec_ != null)
+            compactCodec_.setPeerAccepts(PluginUtils.isCompactEnvelopeAccepted(msg.getData()));
+
+        if (msg.what == PluginData.MESSAGE_WHAT_IPC_BATCH) {
+            for (Bundle b: PluginUtils.decodePluginMessageBatchIpc(msg.getData()))
+                handleIpc(b);
+        } else {
+            handleIpc(msg.getData());
+        }
+    }
+
     public boolean send(PluginTransaction tx, Message m) {
         try {
             m.replyTo = self_;
@@ -189,6 +773,12 @@ class PluginClient extends Handler implements IPluginClient {
             // inform client, caller should try to restore the tx
             Log.e(TAG, "send failed: "+e);
             return false;
+        } finally {
+            // remote server has it's own copy of shared memory
+            // by now, in-process server reads the same Bundle
+            // and releases it itself
+            if (ipc_ && server_ != null && !(server_.getBinder() instanceof Binder))
+                PluginUtils.releasePluginMessageIpc(m.peekData());
         }
     }
 
@@ -197,20 +787,33 @@ class PluginClient extends Handler implements IPluginClient {
         send(tx, m);
     }
 
-    private void sendIpc(PluginTransaction tx, PluginData.PluginMessage msg) {
-        Bundle b = PluginUtils.encodePluginMessageIpc(msg, ipcCodecProvider_, ipcPluginMessageCodec_);
+    private Message encodeIpc(PluginData.PluginMessage msg) {
+        Bundle b = PluginUtils.encodePluginMessageIpc(msg, ipcCodecProvider_, ipcPluginMessageCodec_,
+                shmThreshold_, serverShmMaxSize_, compressThreshold_, serverCompression_, session_);
+        if (b.getBoolean(PluginData.IPC_DEFLATED, false))
+            compressedSent_++;
 
         // prepare message with the bundle
         Message m = this.obtainMessage(PluginData.MESSAGE_WHAT_IPC_TX);
         m.setData(b);
+        return m;
+    }
 
-        if (bound_) {
-            // send message over IPC
-            final boolean ok = send(tx, m);
-            if (!ok)
-                tx.onIpcError();
+    private void sendIpc(PluginTransaction tx, PluginData.PluginMessage msg) {
+        PluginMessageQueue.Entry e = new PluginMessageQueue.Entry(tx, msg);
+        if (!bound_) {
+            // encoded once connected
+            enqueue(e);
+            return;
+        }
+
+        e.message = encodeIpc(msg);
+        if (batching_) {
+            // sent on next looper tick along w/ others
+            addToBatch(e);
         } else {
-            queue_.add(Pair.create(new WeakReference<>(tx), m));
+            // send message over IPC
+            transmit(Collections.singletonList(e), e.message);
         }
     }
 
@@ -223,11 +826,52 @@ class PluginClient extends Handler implements IPluginClient {
     }
 
     @Override
-    public void connect(Context ctx) {
+    public PluginClientStats getStats() {
+        PluginClientStats s = new PluginClientStats();
+        s.queueSize = queue_.size();
+        s.queueMaxSize = queue_.maxSize();
+        s.queueDropped = queue_.dropped();
+        s.transactions = transactions_.size();
+        s.transactionPlugins = transactions_.plugins();
+        s.transactionsSwept = transactions_.swept();
+        s.transactionsReleased = transactions_.released();
+        s.timers = timers_.size();
+        s.timeouts = timeouts_;
+        s.compressedSent = compressedSent_;
+        s.session = session_ != null;
+        if (session_ != null) {
+            s.sessionRejected = session_.rejected();
+            s.sessionReplayed = session_.replayed();
+        }
+        s.signatures = signatures_;
+        s.signedMessages = signedMessages_;
+        s.signLatency = signLatency_.copy();
+        s.signDelay = signDelay_.copy();
+        if (entityCache_ != null) {
+            s.cacheHits = entityCache_.hits();
+            s.cacheMisses = entityCache_.misses();
+            s.cacheEvictions = entityCache_.evictions();
+            s.cacheSize = entityCache_.size();
+        }
+        return s;
+    }
+
+    @Override
+    public EntityCache getEntityCache() {
+        return entityCache_;
+    }
+
+    private Intent createIntent() {
         ComponentName comp = new ComponentName(servicePackageName_, serviceClassName_);
         Intent intent = new Intent();
         intent.setComponent(comp);
-        final boolean ok = ctx.bindService(intent, connection_, Context.BIND_AUTO_CREATE);
+        return intent;
+    }
+
+    @Override
+    public void connect(Context ctx) {
+        context_ = ctx.getApplicationContext();
+        final boolean ok = ctx.bindService(createIntent(), connection_, Context.BIND_AUTO_CREATE);
         if (!ok)
             throw new RuntimeException("No permission to bind to wallet service, or service not found");
     }
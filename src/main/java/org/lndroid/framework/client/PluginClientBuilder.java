@@ -4,9 +4,13 @@ import android.os.Messenger;
 
 import org.lndroid.framework.WalletData;
 import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IIpcSigner;
+import org.lndroid.framework.common.IpcSession;
 
 public class PluginClientBuilder {
 
+    private static final int DEFAULT_IPC_QUEUE_CAPACITY = 256;
+
     private Messenger server_;
     private boolean ipc_;
     private ICodecProvider ipcCodecProvider_;
@@ -14,6 +18,18 @@ public class PluginClientBuilder {
     private String servicePackageName_;
     private String serviceClassName_;
     private String servicePubkey_;
+    private int ipcDecodeThreads_;
+    private int ipcSharedMemoryThreshold_;
+    private int ipcCompressionThreshold_;
+    private boolean ipcCompactEnvelope_;
+    private boolean ipcSession_;
+    private IIpcSigner ipcSigner_;
+    private boolean ipcBatching_;
+    private int ipcQueueCapacity_ = DEFAULT_IPC_QUEUE_CAPACITY;
+    private boolean ipcAutoReconnect_ = true;
+    private ITxIdGenerator txIdGenerator_;
+    private boolean singleFlight_;
+    private int entityCacheSize_;
 
     public PluginClientBuilder setServer(Messenger server) {
         server_ = server;
@@ -55,6 +71,92 @@ public class PluginClientBuilder {
         return this;
     }
 
+    // decode ipc messages on a pool of this many threads
+    // instead of the client's looper, 0 (default) to disable
+    public PluginClientBuilder setIpcDecodeThreads(int threads) {
+        ipcDecodeThreads_ = threads;
+        return this;
+    }
+
+    // send ipc payloads of this size or larger in shared memory
+    // (if supported by both sides, Android 8.1+), 0 (default) to disable
+    public PluginClientBuilder setIpcSharedMemoryThreshold(int bytes) {
+        ipcSharedMemoryThreshold_ = bytes;
+        return this;
+    }
+
+    // deflate ipc message data of this size or larger (if
+    // server accepts compressed data), 0 (default) to disable
+    public PluginClientBuilder setIpcCompressionThreshold(int bytes) {
+        ipcCompressionThreshold_ = bytes;
+        return this;
+    }
+
+    // encode message envelopes w/ CompactPluginMessageCodec
+    // once server announces it supports that, disabled by default
+    public PluginClientBuilder setIpcCompactEnvelope(boolean compactEnvelope) {
+        ipcCompactEnvelope_ = compactEnvelope;
+        return this;
+    }
+
+    // establish a session w/ the server on bind, to authenticate
+    // messages w/ HMAC keyed by the handshake, server must sign the
+    // handshake by the key of servicePubkey, disabled by default
+    public PluginClientBuilder setIpcSession(boolean session) {
+        ipcSession_ = session;
+        return this;
+    }
+
+    // sign messages not covered by a session on a worker thread,
+    // messages queued while signer is busy get a single signature
+    // if batching is enabled, null (default) to not sign
+    public PluginClientBuilder setIpcSigner(IIpcSigner signer) {
+        ipcSigner_ = signer;
+        return this;
+    }
+
+    // send messages produced within one looper tick as a single
+    // MESSAGE_WHAT_IPC_BATCH, server must support batches
+    public PluginClientBuilder setIpcBatching(boolean batching) {
+        ipcBatching_ = batching;
+        return this;
+    }
+
+    // max number of messages queued until service is connected,
+    // on overflow oldest background reads are dropped
+    public PluginClientBuilder setIpcQueueCapacity(int capacity) {
+        ipcQueueCapacity_ = capacity;
+        return this;
+    }
+
+    // rebind if service is lost and restart read transactions
+    // after reconnect, enabled by default
+    public PluginClientBuilder setIpcAutoReconnect(boolean autoReconnect) {
+        ipcAutoReconnect_ = autoReconnect;
+        return this;
+    }
+
+    // generates ids of txs created w/o explicit id,
+    // TxIdGenerator is used by default
+    public PluginClientBuilder setTxIdGenerator(ITxIdGenerator txIdGenerator) {
+        txIdGenerator_ = txIdGenerator;
+        return this;
+    }
+
+    // identical concurrent no-auth get requests share a single
+    // tx and it's replies, disabled by default
+    public PluginClientBuilder setSingleFlight(boolean singleFlight) {
+        singleFlight_ = singleFlight;
+        return this;
+    }
+
+    // cache entities received by get and list use cases,
+    // up to this many bytes, 0 (default) to disable
+    public PluginClientBuilder setEntityCacheSize(int bytes) {
+        entityCacheSize_ = bytes;
+        return this;
+    }
+
     public IPluginClient build() {
         if (!ipc_ && server_ == null)
             throw new RuntimeException("Plugin server not specified");
@@ -67,9 +169,28 @@ public class PluginClientBuilder {
                 throw new RuntimeException("Plugin client service package name not specified");
             if (servicePubkey_ == null)
                 throw new RuntimeException("Plugin client service pubkey not specified");
+            if (ipcSession_ && !IpcSession.isValidIdentityPubkey(servicePubkey_))
+                throw new RuntimeException("Plugin client service pubkey must be a hex X.509 EC P-256 key");
         }
+        if (ipcDecodeThreads_ < 0)
+            throw new RuntimeException("Plugin client decode threads must not be negative");
+        if (ipcSharedMemoryThreshold_ < 0)
+            throw new RuntimeException("Plugin client shared memory threshold must not be negative");
+        if (ipcCompressionThreshold_ < 0)
+            throw new RuntimeException("Plugin client compression threshold must not be negative");
+        if (ipcQueueCapacity_ <= 0)
+            throw new RuntimeException("Plugin client queue capacity must be positive");
+        if (entityCacheSize_ < 0)
+            throw new RuntimeException("Plugin client entity cache size must not be negative");
 
-        return new PluginClient(userId_, server_, ipc_, ipcCodecProvider_,
-                servicePackageName_, serviceClassName_, servicePubkey_);
+        IPluginClient client = new PluginClient(userId_, server_, ipc_, ipcCodecProvider_,
+                servicePackageName_, serviceClassName_, servicePubkey_, ipcDecodeThreads_,
+                ipcSharedMemoryThreshold_, ipcCompressionThreshold_, ipcCompactEnvelope_,
+                ipcSession_, ipcSigner_, ipcBatching_, ipcQueueCapacity_,
+                ipcAutoReconnect_, txIdGenerator_ != null ? txIdGenerator_ : new TxIdGenerator(),
+                entityCacheSize_ > 0 ? new EntityCache(entityCacheSize_) : null);
+        if (singleFlight_)
+            client = new SingleFlightPluginClient(client);
+        return client;
     }
 }
@@ -0,0 +1,49 @@
+package org.lndroid.framework.client;
+
+// snapshot of PluginClient internals, for monitoring
+public class PluginClientStats {
+    // messages waiting for the service connection
+    public int queueSize;
+    // max queue size since the client was created
+    public int queueMaxSize;
+    // queued messages dropped: overflow, stopped or collected tx
+    public long queueDropped;
+    // registered transactions
+    public int transactions;
+    // plugins that transactions were created for
+    public int transactionPlugins;
+    // entries purged after their tx was garbage collected
+    public long transactionsSwept;
+    // entries removed by tx destroy
+    public long transactionsReleased;
+    // txs waiting for their local timeout
+    public int timers;
+    // txs failed w/ TX_TIMEOUT by the client
+    public long timeouts;
+    // ipc payloads sent deflated
+    public long compressedSent;
+    // session handshake w/ the server is complete
+    public boolean session;
+    // received messages w/ bad session MAC
+    public long sessionRejected;
+    // authentic messages rejected as replays
+    public long sessionReplayed;
+    // signatures made by the signer, and messages they covered
+    public long signatures;
+    public long signedMessages;
+    // time spent by the signer per signature
+    public LatencyHistogram signLatency;
+    // delay of signed messages, from sending to handing over to IPC
+    public LatencyHistogram signDelay;
+    // tx starts that joined an identical tx in flight
+    public long transactionsShared;
+    // shared txs currently in flight
+    public int flights;
+    // entity cache lookups served w/o ipc
+    public long cacheHits;
+    public long cacheMisses;
+    // entities evicted due to cache size limit
+    public long cacheEvictions;
+    // estimated size of cached entities in bytes
+    public int cacheSize;
+}
@@ -0,0 +1,194 @@
+package org.lndroid.framework.client;
+
+import android.os.Message;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.PluginData;
+
+// queue of ipc messages waiting for the service to get connected:
+// - bounded, oldest background messages are dropped on overflow
+// - messages of interactive plugins go before background reads
+// - stop of a tx removes it's queued messages, requests aren't
+//   collapsed as the only ones sent are list pages, each waited
+//   for by it's own request id
+// - messages of collected or inactive transactions are dropped
+// Messages are encoded when they're sent, for the connection they're
+// sent over, so queued entries only keep their plugin messages.
+class PluginMessageQueue {
+
+    // user-initiated actions, everything else is a background read
+    private static final Set<String> INTERACTIVE_PLUGINS = new HashSet<>(Arrays.asList(
+            DefaultPlugins.ADD_USER,
+            DefaultPlugins.DECODE_PAYREQ,
+            DefaultPlugins.CONNECT_PEER,
+            DefaultPlugins.NEW_ADDRESS,
+            DefaultPlugins.SEND_PAYMENT,
+            DefaultPlugins.ADD_INVOICE,
+            DefaultPlugins.OPEN_CHANNEL,
+            DefaultPlugins.ADD_CONTACT_APP,
+            DefaultPlugins.ADD_LIST_CONTACTS_PRIVILEGE,
+            DefaultPlugins.ADD_CONTACT_PAYMENTS_PRIVILEGE,
+            DefaultPlugins.SHARE_CONTACT,
+            DefaultPlugins.ADD_CONTACT_INVOICE
+    ));
+
+    static boolean isInteractive(String pluginId) {
+        return INTERACTIVE_PLUGINS.contains(pluginId);
+    }
+
+    static class Entry {
+        WeakReference<PluginTransaction> tx;
+        String txId;
+        String type;
+        boolean interactive;
+        PluginData.PluginMessage pm;
+        // encoded pm, set by client when it's sent
+        Message message;
+
+        Entry(PluginTransaction tx, PluginData.PluginMessage pm) {
+            this.tx = new WeakReference<>(tx);
+            this.txId = tx.id();
+            this.type = pm.type();
+            this.interactive = isInteractive(tx.pluginId());
+            this.pm = pm;
+        }
+    }
+
+    private int capacity_;
+    private LinkedList<Entry> interactive_ = new LinkedList<>();
+    private LinkedList<Entry> background_ = new LinkedList<>();
+
+    // metrics
+    private int maxSize_;
+    private long dropped_;
+
+    PluginMessageQueue(int capacity) {
+        capacity_ = capacity;
+    }
+
+    int size() {
+        return interactive_.size() + background_.size();
+    }
+
+    // max size reached since creation
+    int maxSize() {
+        return maxSize_;
+    }
+
+    // number of messages dropped for any reason
+    long dropped() {
+        return dropped_;
+    }
+
+    private static boolean isStale(Entry e) {
+        PluginTransaction tx = e.tx.get();
+        if (tx == null)
+            return true;
+
+        // stop is sent by inactive tx
+        return !tx.isActive() && !PluginData.MESSAGE_TYPE_STOP.equals(e.type);
+    }
+
+    // remove queued messages of the tx, returns true
+    // if tx start was among them
+    private boolean removeTx(LinkedList<Entry> list, String txId) {
+        boolean started = false;
+        Iterator<Entry> i = list.iterator();
+        while (i.hasNext()) {
+            Entry e = i.next();
+            if (e.txId.equals(txId)) {
+                started |= PluginData.MESSAGE_TYPE_START.equals(e.type);
+                i.remove();
+                dropped_++;
+            }
+        }
+        return started;
+    }
+
+    private boolean dropStale(LinkedList<Entry> list) {
+        Iterator<Entry> i = list.iterator();
+        while (i.hasNext()) {
+            Entry e = i.next();
+            if (isStale(e)) {
+                i.remove();
+                dropped_++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns the entry that had to be evicted to free space
+    // for the new one, or the new entry itself if there's no
+    // space for it, null if entry was queued w/o evictions
+    Entry add(Entry e) {
+        if (PluginData.MESSAGE_TYPE_STOP.equals(e.type)) {
+            // server never heard of this tx, no need to stop it
+            final boolean notStarted = removeTx(interactive_, e.txId)
+                    | removeTx(background_, e.txId);
+            if (notStarted) {
+                dropped_++;
+                return null;
+            }
+        }
+
+        Entry evicted = null;
+        if (size() >= capacity_) {
+            // prefer to forget about the dead
+            if (!dropStale(background_) && !dropStale(interactive_)) {
+                if (!background_.isEmpty()) {
+                    evicted = background_.poll();
+                } else if (!e.interactive) {
+                    dropped_++;
+                    return e;
+                } else {
+                    evicted = interactive_.poll();
+                }
+                dropped_++;
+            }
+        }
+
+        if (e.interactive)
+            interactive_.add(e);
+        else
+            background_.add(e);
+
+        maxSize_ = Math.max(maxSize_, size());
+        return evicted;
+    }
+
+    boolean hasStart(String txId) {
+        for (Entry e: interactive_) {
+            if (e.txId.equals(txId) && PluginData.MESSAGE_TYPE_START.equals(e.type))
+                return true;
+        }
+        for (Entry e: background_) {
+            if (e.txId.equals(txId) && PluginData.MESSAGE_TYPE_START.equals(e.type))
+                return true;
+        }
+        return false;
+    }
+
+    // next message to be sent, or null if queue is empty
+    Entry poll() {
+        while (true) {
+            Entry e = interactive_.poll();
+            if (e == null)
+                e = background_.poll();
+            if (e == null)
+                return null;
+
+            if (!isStale(e))
+                return e;
+
+            dropped_++;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package org.lndroid.framework.client;
 
+import android.util.Log;
+
 import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
 import org.lndroid.framework.common.PluginData;
 import org.lndroid.framework.common.Errors;
 
@@ -11,6 +14,8 @@ import org.lndroid.framework.common.Errors;
 // closely tied to PluginClient
 class PluginTransaction implements IPluginTransaction {
 
+    private static final String TAG = "PluginTransaction";
+
     private String pluginId_;
     private WalletData.UserIdentity userIdentity_;
     private PluginClient client_;
@@ -18,6 +23,16 @@ class PluginTransaction implements IPluginTransaction {
     private IPluginTransactionCallback cb_;
     private boolean started_;
 
+    // start request is kept to restart the tx after reconnect
+    private Object startData_;
+    private Type startType_;
+    private long startTimeout_;
+
+    // local deadline of a tx started w/ timeout, allocated
+    // once per tx and reused by every start
+    private TimerWheel.Node timer_;
+    private boolean timedOut_;
+
     PluginTransaction(String pluginId,
                       WalletData.UserIdentity userId,
                       String txId,
@@ -47,7 +62,41 @@ class PluginTransaction implements IPluginTransaction {
 
     public void onIpcError() {
         cb_.onError(Errors.IPC_ERROR, Errors.errorMessage(Errors.IPC_ERROR));
+        finish();
+    }
+
+    // paged lists have pages in flight that a restarted
+    // server tx knows nothing of, so they're invalidated
+    // instead, and their use cases reload them
+    boolean isPaged() {
+        return startData_ instanceof WalletDataDecl.ListRequestBase
+                && ((WalletDataDecl.ListRequestBase)startData_).page() != null;
+    }
+
+    void onInvalidate() {
+        // tx not usable any more
+        finish();
+        cb_.onError(Errors.TX_INVALIDATE, Errors.errorMessage(Errors.TX_INVALIDATE));
+    }
+
+    // tx not usable any more
+    private void finish() {
         started_ = false;
+        if (timer_ != null)
+            client_.cancelTimeout(timer_);
+    }
+
+    // server didn't reply in time, or it's reply was lost
+    private void onTimeout() {
+        if (!started_)
+            return;
+
+        Log.i(TAG, "tx "+txId_+" timed out");
+
+        // let server release the tx, replies are ignored from now on
+        stop();
+        timedOut_ = true;
+        cb_.onError(Errors.TX_TIMEOUT, Errors.errorMessage(Errors.TX_TIMEOUT));
     }
 
     private void send(PluginData.PluginMessage pm) {
@@ -65,17 +114,45 @@ class PluginTransaction implements IPluginTransaction {
             throw new RuntimeException("Tx already started");
 
         started_ = true;
+        timedOut_ = false;
+        startData_ = r;
+        startType_ = type;
+        startTimeout_ = timeout;
+
+        if (timeout > 0) {
+            if (timer_ == null) {
+                timer_ = new TimerWheel.Node() {
+                    @Override
+                    void onTimeout() {
+                        PluginTransaction.this.onTimeout();
+                    }
+                };
+            }
+            client_.scheduleTimeout(timer_, timeout);
+        }
 
+        send(createStartMessage());
+    }
+
+    private PluginData.PluginMessage createStartMessage() {
         PluginData.PluginMessage pm = PluginData.PluginMessage.builder()
                 .setType(PluginData.MESSAGE_TYPE_START)
                 .setPluginId(pluginId_)
                 .setTxId(txId_)
                 .setUserIdentity(userIdentity_)
-                .setTimeout(timeout)
+                .setTimeout(startTimeout_)
                 .build();
-        pm.assignData(r, type);
+        pm.assignData(startData_, startType_);
+        return pm;
+    }
 
-        send(pm);
+    // re-send the original start message w/ the same tx id,
+    // used by client to resume the tx after server restart
+    void restart() {
+        if (!started_)
+            throw new RuntimeException("Tx not started");
+
+        send(createStartMessage());
     }
 
     @Override
@@ -109,7 +186,7 @@ class PluginTransaction implements IPluginTransaction {
         send(pm);
 
         // tx not usable any more
-        started_ = false;
+        finish();
     }
 
     private <T> T getData(PluginData.PluginMessage pm, Class<T> cls) {
@@ -123,6 +200,12 @@ class PluginTransaction implements IPluginTransaction {
     }
 
     void handleMessage(PluginData.PluginMessage pm) {
+        // TX_TIMEOUT was already reported
+        if (timedOut_) {
+            Log.i(TAG, "tx "+txId_+" timed out, message "+pm.type()+" dropped");
+            return;
+        }
+
         switch(pm.type()) {
             case PluginData.MESSAGE_TYPE_REPLY:
                 cb_.onResponse(pm);
@@ -130,13 +213,13 @@ class PluginTransaction implements IPluginTransaction {
 
             case PluginData.MESSAGE_TYPE_ERROR:
                 // tx not usable any more
-                started_ = false;
+                finish();
                 cb_.onError(pm.code(), pm.error());
                 break;
 
             case PluginData.MESSAGE_TYPE_DONE:
                 // tx not usable any more
-                started_ = false;
+                finish();
                 cb_.onError(Errors.TX_DONE, Errors.errorMessage(Errors.TX_DONE));
                 break;
 
@@ -161,6 +244,8 @@ class PluginTransaction implements IPluginTransaction {
 
     @Override
     public void destroy() {
+        if (timer_ != null)
+            client_.cancelTimeout(timer_);
         client_.releaseTransaction(this);
     }
 
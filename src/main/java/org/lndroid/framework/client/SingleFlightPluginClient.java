@@ -0,0 +1,303 @@
+package org.lndroid.framework.client;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
+import org.lndroid.framework.common.IPluginData;
+
+// single-flight layer in front of a plugin client: identical
+// no-auth get requests (same plugin, equal GetRequestTmpl) started
+// while one is in flight share it's transaction, replies are fanned
+// out to every member, shared tx is stopped and destroyed when the
+// last member leaves. Txs w/ explicit id, other requests
+// and interactive plugins are passed through.
+// Not thread-safe, used on client's looper.
+class SingleFlightPluginClient implements IPluginClient {
+
+    private static final String TAG = "SingleFlightPluginClient";
+
+    private IPluginClient client_;
+    private Map<Key, Flight> flights_ = new HashMap<>();
+
+    // metrics
+    private long joined_;
+
+    private static class Key {
+        final String pluginId;
+        final Object request;
+
+        Key(String pluginId, Object request) {
+            this.pluginId = pluginId;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return pluginId.equals(k.pluginId) && request.equals(k.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return pluginId.hashCode() * 31 + request.hashCode();
+        }
+    }
+
+    // callbacks of the underlying tx are routed through this,
+    // to be switched to the flight once the tx is shared
+    private static class Relay implements IPluginTransactionCallback {
+        IPluginTransactionCallback target;
+
+        Relay(IPluginTransactionCallback target) {
+            this.target = target;
+        }
+
+        @Override
+        public void onResponse(IPluginData r) {
+            target.onResponse(r);
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+            target.onAuth(r);
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+            target.onAuthed(r);
+        }
+
+        @Override
+        public void onError(String code, String message) {
+            target.onError(code, message);
+        }
+    }
+
+    private class Flight implements IPluginTransactionCallback {
+        Key key;
+        IPluginTransaction tx;
+        List<SharedTransaction> members = new ArrayList<>();
+        // replayed to members joining an active subscription
+        IPluginData lastResponse;
+
+        Flight(Key key, IPluginTransaction tx) {
+            this.key = key;
+            this.tx = tx;
+        }
+
+        void join(SharedTransaction m) {
+            members.add(m);
+            m.flight_ = this;
+            m.id_ = tx.id();
+            if (lastResponse != null)
+                m.cb_.onResponse(lastResponse);
+        }
+
+        void leave(SharedTransaction m) {
+            members.remove(m);
+            m.flight_ = null;
+            if (!members.isEmpty())
+                return;
+
+            if (flights_.get(key) == this)
+                flights_.remove(key);
+            if (tx.isActive())
+                tx.stop();
+            tx.destroy();
+        }
+
+        // members might leave while we're notifying them
+        private List<SharedTransaction> snapshot() {
+            return new ArrayList<>(members);
+        }
+
+        @Override
+        public void onResponse(IPluginData r) {
+            lastResponse = r;
+            for (SharedTransaction m: snapshot())
+                m.cb_.onResponse(r);
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+            for (SharedTransaction m: snapshot())
+                m.cb_.onAuth(r);
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+            for (SharedTransaction m: snapshot())
+                m.cb_.onAuthed(r);
+        }
+
+        @Override
+        public void onError(String code, String message) {
+            // tx is over for everyone
+            if (flights_.get(key) == this)
+                flights_.remove(key);
+
+            List<SharedTransaction> members = this.members;
+            this.members = new ArrayList<>();
+            for (SharedTransaction m: members)
+                m.flight_ = null;
+            for (SharedTransaction m: members)
+                m.cb_.onError(code, message);
+
+            tx.destroy();
+        }
+    }
+
+    private class SharedTransaction implements IPluginTransaction {
+        private String pluginId_;
+        private boolean explicitId_;
+        private String id_;
+        private IPluginTransactionCallback cb_;
+        // own tx, handed over to the flight if shared
+        private IPluginTransaction tx_;
+        private Relay relay_;
+        private Flight flight_;
+
+        SharedTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
+            pluginId_ = pluginId;
+            explicitId_ = !txId.isEmpty();
+            cb_ = cb;
+            createTx(txId);
+        }
+
+        private void createTx(String txId) {
+            relay_ = new Relay(cb_);
+            tx_ = client_.createTransaction(pluginId_, txId, relay_);
+            id_ = tx_.id();
+        }
+
+        private boolean isShareable(Object r) {
+            return !explicitId_
+                    && r instanceof WalletDataDecl.GetRequestTmpl
+                    && ((WalletDataDecl.GetRequestTmpl)r).noAuth()
+                    && !PluginMessageQueue.isInteractive(pluginId_);
+        }
+
+        @Override
+        public String pluginId() {
+            return pluginId_;
+        }
+
+        @Override
+        public String id() {
+            return id_;
+        }
+
+        @Override
+        public boolean isActive() {
+            return flight_ != null || (tx_ != null && tx_.isActive());
+        }
+
+        @Override
+        public void start(Object r, Type type) {
+            start(r, type, 0);
+        }
+
+        @Override
+        public void start(Object r, Type type, long timeout) {
+            if (isActive())
+                throw new RuntimeException("Tx already started");
+
+            // previous shared tx is gone, need a new one
+            if (tx_ == null)
+                createTx("");
+
+            if (!isShareable(r)) {
+                tx_.start(r, type, timeout);
+                return;
+            }
+
+            final Key key = new Key(pluginId_, r);
+            Flight f = flights_.get(key);
+            if (f != null) {
+                Log.i(TAG, "tx "+id_+" joined tx "+f.tx.id());
+                tx_.destroy();
+                tx_ = null;
+                relay_ = null;
+                joined_++;
+                f.join(this);
+                return;
+            }
+
+            f = new Flight(key, tx_);
+            relay_.target = f;
+            tx_ = null;
+            relay_ = null;
+
+            flights_.put(key, f);
+            f.join(this);
+            f.tx.start(r, type, timeout);
+        }
+
+        @Override
+        public void send(Object r, Type type) {
+            if (flight_ != null)
+                throw new RuntimeException("Shared tx does not accept inputs");
+            if (tx_ == null)
+                throw new RuntimeException("Tx not started");
+
+            tx_.send(r, type);
+        }
+
+        @Override
+        public void stop() {
+            if (flight_ != null) {
+                flight_.leave(this);
+                return;
+            }
+            if (tx_ == null)
+                throw new RuntimeException("Tx not started");
+
+            tx_.stop();
+        }
+
+        @Override
+        public void destroy() {
+            if (flight_ != null)
+                flight_.leave(this);
+            if (tx_ != null)
+                tx_.destroy();
+        }
+    }
+
+    SingleFlightPluginClient(IPluginClient client) {
+        client_ = client;
+    }
+
+    @Override
+    public IPluginTransaction createTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
+        return new SharedTransaction(pluginId, txId, cb);
+    }
+
+    @Override
+    public void connect(Context ctx) {
+        client_.connect(ctx);
+    }
+
+    @Override
+    public EntityCache getEntityCache() {
+        return client_.getEntityCache();
+    }
+
+    @Override
+    public PluginClientStats getStats() {
+        PluginClientStats s = client_.getStats();
+        s.transactionsShared = joined_;
+        s.flights = flights_.size();
+        return s;
+    }
+}
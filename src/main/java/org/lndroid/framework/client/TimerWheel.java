@@ -0,0 +1,132 @@
+package org.lndroid.framework.client;
+
+import java.util.ArrayList;
+
+// hashed timer wheel: schedule and cancel are O(1), nodes are
+// embedded into their owners and are allocated once per owner,
+// the wheel itself doesn't post anything, owner calls advance()
+// periodically while there are pending timers.
+// Not thread-safe, used on client's looper.
+class TimerWheel {
+
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+
+    abstract static class Node {
+        private Node prev_;
+        private Node next_;
+        private long deadlineTick_;
+        private boolean scheduled_;
+        // expired, to be fired by current advance
+        private boolean pending_;
+
+        boolean isScheduled() {
+            return scheduled_;
+        }
+
+        abstract void onTimeout();
+    }
+
+    private long tickMs_;
+    private Node[] slots_ = new Node[SLOTS];
+    private long currentTick_;
+    private int size_;
+    // reused to avoid allocations on every tick
+    private ArrayList<Node> expired_ = new ArrayList<>();
+
+    TimerWheel(long tickMs) {
+        tickMs_ = tickMs;
+    }
+
+    long tickMs() {
+        return tickMs_;
+    }
+
+    int size() {
+        return size_;
+    }
+
+    boolean isEmpty() {
+        return size_ == 0;
+    }
+
+    // 'now' and 'delayMs' in ms of the same clock that is passed to advance
+    void schedule(Node n, long now, long delayMs) {
+        cancel(n);
+
+        if (size_ == 0)
+            currentTick_ = now / tickMs_;
+
+        long tick = (now + delayMs + tickMs_ - 1) / tickMs_;
+        if (tick <= currentTick_)
+            tick = currentTick_ + 1;
+
+        final int slot = (int)(tick & MASK);
+        n.deadlineTick_ = tick;
+        n.scheduled_ = true;
+        n.prev_ = null;
+        n.next_ = slots_[slot];
+        if (n.next_ != null)
+            n.next_.prev_ = n;
+        slots_[slot] = n;
+        size_++;
+    }
+
+    void cancel(Node n) {
+        // callback of other timer might cancel this one
+        n.pending_ = false;
+        if (!n.scheduled_)
+            return;
+
+        if (n.prev_ != null)
+            n.prev_.next_ = n.next_;
+        else
+            slots_[(int)(n.deadlineTick_ & MASK)] = n.next_;
+        if (n.next_ != null)
+            n.next_.prev_ = n.prev_;
+
+        n.prev_ = null;
+        n.next_ = null;
+        n.scheduled_ = false;
+        size_--;
+    }
+
+    // fire all timers w/ deadline before 'now',
+    // returns number of fired timers
+    int advance(long now) {
+        final long target = now / tickMs_;
+        if (target <= currentTick_ || size_ == 0) {
+            currentTick_ = Math.max(currentTick_, target);
+            return 0;
+        }
+
+        // at most one full turn, even if looper was stalled
+        final long steps = Math.min(target - currentTick_, SLOTS);
+        for (long i = 1; i <= steps; i++) {
+            Node n = slots_[(int)((currentTick_ + i) & MASK)];
+            while (n != null) {
+                Node next = n.next_;
+                if (n.deadlineTick_ <= target) {
+                    cancel(n);
+                    n.pending_ = true;
+                    expired_.add(n);
+                }
+                n = next;
+            }
+        }
+        currentTick_ = target;
+
+        // callbacks might schedule or cancel timers
+        int fired = 0;
+        for (int i = 0; i < expired_.size(); i++) {
+            Node n = expired_.get(i);
+            if (n.pending_) {
+                n.pending_ = false;
+                n.onTimeout();
+                fired++;
+            }
+        }
+        expired_.clear();
+        return fired;
+    }
+}
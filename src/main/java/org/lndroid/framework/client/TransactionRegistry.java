@@ -0,0 +1,138 @@
+package org.lndroid.framework.client;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// weak registry of client transactions: plugin ids are interned
+// into numeric slots, each slot maps tx ids to weak refs, refs of
+// collected txs are purged using a ReferenceQueue on every access,
+// so abandoned txs don't leave their entries behind.
+// Not thread-safe, used on client's looper.
+class TransactionRegistry {
+
+    static class TxRef extends WeakReference<PluginTransaction> {
+        final int plugin;
+        final String txId;
+
+        TxRef(PluginTransaction tx, int plugin, ReferenceQueue<PluginTransaction> queue) {
+            super(tx, queue);
+            this.plugin = plugin;
+            this.txId = tx.id();
+        }
+    }
+
+    private Map<String, Integer> pluginSlots_ = new HashMap<>();
+    private List<String> pluginIds_ = new ArrayList<>();
+    private List<Map<String, TxRef>> transactions_ = new ArrayList<>();
+    private ReferenceQueue<PluginTransaction> queue_ = new ReferenceQueue<>();
+    private int size_;
+
+    // metrics
+    private long swept_;
+    private long released_;
+
+    private int slot(String pluginId, boolean create) {
+        Integer slot = pluginSlots_.get(pluginId);
+        if (slot == null && create) {
+            slot = pluginIds_.size();
+            pluginSlots_.put(pluginId, slot);
+            pluginIds_.add(pluginId);
+            transactions_.add(new HashMap<String, TxRef>());
+        }
+        return slot != null ? slot : -1;
+    }
+
+    // returns the canonical instance of the plugin id, to be
+    // shared by all txs of the plugin
+    String internPluginId(String pluginId) {
+        return pluginIds_.get(slot(pluginId, true));
+    }
+
+    void add(PluginTransaction tx) {
+        sweep();
+
+        final int slot = slot(tx.pluginId(), true);
+        TxRef prev = transactions_.get(slot).put(tx.id(), new TxRef(tx, slot, queue_));
+        if (prev == null)
+            size_++;
+    }
+
+    PluginTransaction get(String pluginId, String txId) {
+        sweep();
+
+        final int slot = slot(pluginId, false);
+        if (slot < 0 || txId == null)
+            return null;
+
+        TxRef ref = transactions_.get(slot).get(txId);
+        return ref != null ? ref.get() : null;
+    }
+
+    void remove(String pluginId, String txId) {
+        sweep();
+
+        final int slot = slot(pluginId, false);
+        if (slot < 0 || txId == null)
+            return;
+
+        if (transactions_.get(slot).remove(txId) != null) {
+            size_--;
+            released_++;
+        }
+    }
+
+    void getActive(List<PluginTransaction> txs) {
+        sweep();
+
+        for (Map<String, TxRef> m: transactions_) {
+            for (TxRef ref: m.values()) {
+                PluginTransaction tx = ref.get();
+                if (tx != null && tx.isActive())
+                    txs.add(tx);
+            }
+        }
+    }
+
+    // purge entries of collected txs, returns number of purged entries
+    int sweep() {
+        int n = 0;
+        Reference<? extends PluginTransaction> r;
+        while ((r = queue_.poll()) != null) {
+            TxRef ref = (TxRef)r;
+            Map<String, TxRef> m = transactions_.get(ref.plugin);
+            // entry might have been replaced or removed already
+            if (m.get(ref.txId) == ref) {
+                m.remove(ref.txId);
+                size_--;
+                n++;
+            }
+        }
+        swept_ += n;
+        return n;
+    }
+
+    // number of registered txs, including collected
+    // ones that weren't swept yet
+    int size() {
+        return size_;
+    }
+
+    int plugins() {
+        return pluginIds_.size();
+    }
+
+    // entries purged after their tx was collected
+    long swept() {
+        return swept_;
+    }
+
+    // entries removed by explicit release
+    long released() {
+        return released_;
+    }
+}
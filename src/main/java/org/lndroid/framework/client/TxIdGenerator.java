@@ -0,0 +1,84 @@
+package org.lndroid.framework.client;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// default tx id generator: random per-instance prefix plus a counter,
+// so ids are unique within the instance, and across process restarts
+// w/ the chance of collision of two random 64-bit prefixes.
+//
+// Readable ids are 'pluginId_prefix_counter' in hex, compact ids are
+// base64url-encoded prefix bytes + varint counter, w/o the plugin id:
+// 12-16 chars for the first 2^28 txs, vs ~55 for readable ones.
+public class TxIdGenerator implements ITxIdGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int PREFIX_SIZE = 8;
+
+    private boolean compact_;
+    private byte[] prefix_ = new byte[PREFIX_SIZE];
+    private String hexPrefix_;
+    private AtomicLong counter_ = new AtomicLong();
+
+    public TxIdGenerator() {
+        this(false);
+    }
+
+    public TxIdGenerator(boolean compact) {
+        compact_ = compact;
+        new SecureRandom().nextBytes(prefix_);
+
+        StringBuilder sb = new StringBuilder(PREFIX_SIZE * 2);
+        for (byte b: prefix_)
+            sb.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        hexPrefix_ = sb.toString();
+    }
+
+    @Override
+    public String generate(String pluginId) {
+        final long n = counter_.getAndIncrement();
+        return compact_ ? compact(n) : readable(pluginId, n);
+    }
+
+    private String readable(String pluginId, long n) {
+        StringBuilder sb = new StringBuilder(pluginId.length() + hexPrefix_.length() + 18);
+        sb.append(pluginId).append('_').append(hexPrefix_).append('_');
+        // hex w/o leading zeros
+        int shift = 60;
+        while (shift > 0 && ((n >>> shift) & 0xF) == 0)
+            shift -= 4;
+        for (; shift >= 0; shift -= 4)
+            sb.append(HEX[(int)((n >>> shift) & 0xF)]);
+        return sb.toString();
+    }
+
+    private String compact(long n) {
+        // prefix + varint counter
+        byte[] b = new byte[PREFIX_SIZE + 10];
+        System.arraycopy(prefix_, 0, b, 0, PREFIX_SIZE);
+        int len = PREFIX_SIZE;
+        while ((n & ~0x7FL) != 0) {
+            b[len++] = (byte)((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        b[len++] = (byte)n;
+
+        // base64url w/o padding
+        char[] out = new char[(len * 4 + 2) / 3];
+        int o = 0;
+        for (int i = 0; i < len; i += 3) {
+            final int v = (b[i] & 0xFF) << 16
+                    | (i + 1 < len ? (b[i + 1] & 0xFF) << 8 : 0)
+                    | (i + 2 < len ? (b[i + 2] & 0xFF) : 0);
+            out[o++] = BASE64URL[(v >> 18) & 0x3F];
+            out[o++] = BASE64URL[(v >> 12) & 0x3F];
+            if (i + 1 < len)
+                out[o++] = BASE64URL[(v >> 6) & 0x3F];
+            if (i + 2 < len)
+                out[o++] = BASE64URL[v & 0x3F];
+        }
+        return new String(out, 0, o);
+    }
+}
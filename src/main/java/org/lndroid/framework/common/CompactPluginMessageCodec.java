@@ -0,0 +1,367 @@
+package org.lndroid.framework.common;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lndroid.framework.WalletData;
+
+// compact binary encoding of the PluginMessage envelope: well-known
+// message types, plugin ids and error codes are sent as one-byte tags,
+// ipcData as raw bytes, and UserIdentity is sent once per connection
+// and then referenced by a handle. Wraps the regular codec: messages
+// are encoded compactly only after peer has announced support
+// (see IPC_COMPACT_ENVELOPE), both formats are decoded. Handles are
+// assigned in order of first use and forgotten by reset(), which
+// must be called when connection to the peer is lost. Identity is
+// sent in full until a message w/ it's handle is reported by onSent,
+// as messages might be dropped before they're sent. Receivers that
+// decode on several threads setDeferHandles and resolve() messages
+// in the order of their arrival.
+// Thread-safe.
+public class CompactPluginMessageCodec implements ICodec<PluginData.PluginMessage> {
+
+    private static final String TAG = "CompactPluginMessageCodec";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // can't be the first byte of the json envelope
+    private static final int MAGIC = 0xc1;
+    public static final int FORMAT_VERSION = 1;
+
+    // tables are append-only, tag is index + 1, 0 means literal
+    private static final String[] TYPES = {
+            PluginData.MESSAGE_TYPE_START,
+            PluginData.MESSAGE_TYPE_REQUEST,
+            PluginData.MESSAGE_TYPE_REPLY,
+            PluginData.MESSAGE_TYPE_STOP,
+            PluginData.MESSAGE_TYPE_ERROR,
+            PluginData.MESSAGE_TYPE_AUTH,
+            PluginData.MESSAGE_TYPE_AUTHED,
+            PluginData.MESSAGE_TYPE_DONE,
+    };
+
+    private static final String[] PLUGINS = {
+            DefaultPlugins.ADD_USER,
+            DefaultPlugins.GET_USER,
+            DefaultPlugins.GET_APP_USER,
+            DefaultPlugins.GET_AUTH_REQUEST_USER,
+            DefaultPlugins.DECODE_PAYREQ,
+            DefaultPlugins.CONNECT_PEER,
+            DefaultPlugins.GET_WALLET_BALANCE,
+            DefaultPlugins.WALLET_BALANCE_WORKER,
+            DefaultPlugins.GET_CHANNEL_BALANCE,
+            DefaultPlugins.CHANNEL_BALANCE_WORKER,
+            DefaultPlugins.GET_WALLET_INFO,
+            DefaultPlugins.WALLET_INFO_WORKER,
+            DefaultPlugins.NEW_ADDRESS,
+            DefaultPlugins.SEND_PAYMENT,
+            DefaultPlugins.SEND_PAYMENT_WORKER,
+            DefaultPlugins.GET_SEND_PAYMENT,
+            DefaultPlugins.SUBSCRIBE_SEND_PAYMENTS,
+            DefaultPlugins.ADD_INVOICE,
+            DefaultPlugins.INVOICE_STATE_WORKER,
+            DefaultPlugins.LIST_INVOICES,
+            DefaultPlugins.GET_INVOICE,
+            DefaultPlugins.OPEN_CHANNEL,
+            DefaultPlugins.OPEN_CHANNEL_WORKER,
+            DefaultPlugins.GET_CHANNEL,
+            DefaultPlugins.CHANNEL_STATE_WORKER,
+            DefaultPlugins.LIST_PAYMENTS,
+            DefaultPlugins.ADD_CONTACT_APP,
+            DefaultPlugins.GET_CONTACT,
+            DefaultPlugins.LIST_CONTACTS,
+            DefaultPlugins.ADD_LIST_CONTACTS_PRIVILEGE,
+            DefaultPlugins.ADD_CONTACT_PAYMENTS_PRIVILEGE,
+            DefaultPlugins.SHARE_CONTACT,
+            DefaultPlugins.ADD_CONTACT_INVOICE,
+            DefaultPlugins.NODE_INFO_WORKER,
+    };
+
+    private static final String[] ERRORS = {
+            Errors.UNKNOWN_CALLER,
+            Errors.FORBIDDEN,
+            Errors.REJECTED,
+            Errors.WALLET_ERROR,
+            Errors.NO_WALLET,
+            Errors.LOCKED,
+            Errors.TX_TIMEOUT,
+            Errors.TX_INVALIDATE,
+            Errors.TX_DONE,
+            Errors.PLUGIN_PROTOCOL,
+            Errors.PLUGIN_MESSAGE,
+            Errors.PLUGIN_INPUT,
+            Errors.LND_ERROR,
+            Errors.AUTH_INPUT,
+            Errors.IPC_ERROR,
+            Errors.PAYMENT_NO_HASH,
+            Errors.PAYMENT_BAD_INPUT,
+    };
+
+    // presence bits of nullable fields
+    private static final int HAS_IDENTITY = 1;
+    private static final int HAS_PLUGIN_ID = 1 << 1;
+    private static final int HAS_TX_ID = 1 << 2;
+    private static final int HAS_TIMEOUT = 1 << 3;
+    private static final int HAS_CODE = 1 << 4;
+    private static final int HAS_ERROR = 1 << 5;
+    private static final int HAS_AUTH_ID = 1 << 6;
+    private static final int HAS_IS_PRIVILEGED = 1 << 7;
+    private static final int HAS_IPC_DATA = 1 << 8;
+    // identity follows it's handle
+    private static final int IDENTITY_FULL = 1 << 9;
+
+    // identities seen by a single client are few,
+    // others are sent in full w/o a handle
+    private static final int MAX_HANDLES = 64;
+
+    private static final Map<String, Integer> TYPE_TAGS = tags(TYPES);
+    private static final Map<String, Integer> PLUGIN_TAGS = tags(PLUGINS);
+    private static final Map<String, Integer> ERROR_TAGS = tags(ERRORS);
+
+    private ICodec<PluginData.PluginMessage> codec_;
+    private ICodec<WalletData.UserIdentity> identityCodec_;
+    private boolean peerAccepts_;
+    private Map<WalletData.UserIdentity, Integer> sentHandles_ = new HashMap<>();
+    // assigned, but the defining message isn't sent yet
+    private Map<WalletData.UserIdentity, Integer> pendingHandles_ = new HashMap<>();
+    // not restarted by reset() so that messages encoded
+    // before it can't define handles assigned after it
+    private int nextHandle_ = 1;
+    private Map<Integer, WalletData.UserIdentity> receivedHandles_ = new HashMap<>();
+    private boolean deferHandles_;
+
+    public CompactPluginMessageCodec(ICodecProvider codecProvider) {
+        codec_ = codecProvider.get(PluginData.PluginMessage.class);
+        identityCodec_ = codecProvider.get(WalletData.UserIdentity.class);
+    }
+
+    private static Map<String, Integer> tags(String[] table) {
+        Map<String, Integer> tags = new HashMap<>();
+        for (int i = 0; i < table.length; i++)
+            tags.put(table[i], i + 1);
+        return tags;
+    }
+
+    // set once peer has announced it decodes the compact format
+    public synchronized void setPeerAccepts(boolean accepts) {
+        peerAccepts_ = accepts;
+    }
+
+    public synchronized boolean peerAccepts() {
+        return peerAccepts_;
+    }
+
+    // forget identity handles of the lost connection
+    public synchronized void reset() {
+        peerAccepts_ = false;
+        sentHandles_.clear();
+        pendingHandles_.clear();
+        receivedHandles_.clear();
+    }
+
+    // decode leaves handles to resolve()
+    public synchronized void setDeferHandles(boolean defer) {
+        deferHandles_ = defer;
+    }
+
+    // message encoded by us was sent to peer, identity
+    // handle it has defined can be referenced now
+    public synchronized void onSent(PluginData.PluginMessage m) {
+        final int handle = m.identityHandle();
+        if (handle == 0 || m.userIdentity() == null)
+            return;
+
+        // might be encoded before reset()
+        final Integer pending = pendingHandles_.get(m.userIdentity());
+        if (pending != null && pending == handle) {
+            pendingHandles_.remove(m.userIdentity());
+            sentHandles_.put(m.userIdentity(), handle);
+        }
+    }
+
+    // records the identity handle defined by the decoded message,
+    // or returns it's copy w/ the referenced identity, null if
+    // the handle is unknown
+    public synchronized PluginData.PluginMessage resolve(PluginData.PluginMessage m) {
+        final int handle = m.identityHandle();
+        if (handle == 0)
+            return m;
+
+        if (m.userIdentity() != null) {
+            receivedHandles_.put(handle, m.userIdentity());
+            return m;
+        }
+
+        WalletData.UserIdentity identity = receivedHandles_.get(handle);
+        if (identity == null) {
+            Log.e(TAG, "unknown identity handle "+handle);
+            return null;
+        }
+        return m.withUserIdentity(identity);
+    }
+
+    @Override
+    public synchronized byte[] encode(PluginData.PluginMessage m) {
+        m.assignIdentityHandle(0);
+        if (!peerAccepts_)
+            return codec_.encode(m);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            int handle = 0;
+            byte[] identity = null;
+            int flags = 0;
+            if (m.userIdentity() != null) {
+                flags |= HAS_IDENTITY;
+                Integer h = sentHandles_.get(m.userIdentity());
+                if (h != null) {
+                    handle = h;
+                } else {
+                    flags |= IDENTITY_FULL;
+                    identity = identityCodec_.encode(m.userIdentity());
+                    h = pendingHandles_.get(m.userIdentity());
+                    if (h == null && sentHandles_.size() + pendingHandles_.size() < MAX_HANDLES) {
+                        h = nextHandle_;
+                        nextHandle_ = nextHandle_ % 0xffff + 1;
+                        pendingHandles_.put(m.userIdentity(), h);
+                    }
+                    if (h != null)
+                        handle = h;
+                }
+                m.assignIdentityHandle(handle);
+            }
+            if (m.pluginId() != null) flags |= HAS_PLUGIN_ID;
+            if (m.txId() != null) flags |= HAS_TX_ID;
+            if (m.timeout() != null) flags |= HAS_TIMEOUT;
+            if (m.code() != null) flags |= HAS_CODE;
+            if (m.error() != null) flags |= HAS_ERROR;
+            if (m.authId() != null) flags |= HAS_AUTH_ID;
+            if (m.isPrivileged() != null) flags |= HAS_IS_PRIVILEGED;
+            if (m.ipcData() != null) flags |= HAS_IPC_DATA;
+
+            out.writeByte(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeShort(flags);
+            writeToken(out, m.type(), TYPE_TAGS);
+            if ((flags & HAS_IDENTITY) != 0) {
+                out.writeShort(handle);
+                if (identity != null) {
+                    out.writeInt(identity.length);
+                    out.write(identity);
+                }
+            }
+            if (m.pluginId() != null) writeToken(out, m.pluginId(), PLUGIN_TAGS);
+            if (m.txId() != null) writeString(out, m.txId());
+            if (m.timeout() != null) out.writeLong(m.timeout());
+            if (m.code() != null) writeToken(out, m.code(), ERROR_TAGS);
+            if (m.error() != null) writeString(out, m.error());
+            if (m.authId() != null) out.writeInt(m.authId());
+            if (m.isPrivileged() != null) out.writeBoolean(m.isPrivileged());
+            if (m.ipcData() != null) {
+                out.writeInt(m.ipcData().length);
+                out.write(m.ipcData());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized PluginData.PluginMessage decode(byte[] d) {
+        if (d.length == 0 || (d[0] & 0xff) != MAGIC)
+            return codec_.decode(d);
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(d));
+            in.readByte();
+            if (in.readByte() != FORMAT_VERSION)
+                return null;
+
+            final int flags = in.readUnsignedShort();
+            PluginData.PluginMessage.Builder b = PluginData.PluginMessage.builder()
+                    .setType(readToken(in, TYPES));
+            int handle = 0;
+            if ((flags & HAS_IDENTITY) != 0) {
+                handle = in.readUnsignedShort();
+                if ((flags & IDENTITY_FULL) != 0) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    WalletData.UserIdentity identity = identityCodec_.decode(data);
+                    if (identity == null) {
+                        Log.e(TAG, "bad identity");
+                        return null;
+                    }
+                    b.setUserIdentity(identity);
+                } else if (handle == 0) {
+                    Log.e(TAG, "unknown identity handle "+handle);
+                    return null;
+                }
+            }
+            if ((flags & HAS_PLUGIN_ID) != 0) b.setPluginId(readToken(in, PLUGINS));
+            if ((flags & HAS_TX_ID) != 0) b.setTxId(readString(in));
+            if ((flags & HAS_TIMEOUT) != 0) b.setTimeout(in.readLong());
+            if ((flags & HAS_CODE) != 0) b.setCode(readToken(in, ERRORS));
+            if ((flags & HAS_ERROR) != 0) b.setError(readString(in));
+            if ((flags & HAS_AUTH_ID) != 0) b.setAuthId(in.readInt());
+            if ((flags & HAS_IS_PRIVILEGED) != 0) b.setIsPrivileged(in.readBoolean());
+
+            byte[] ipcData = null;
+            if ((flags & HAS_IPC_DATA) != 0) {
+                final int len = in.readInt();
+                if (len < 0 || len > in.available())
+                    return null;
+                ipcData = new byte[len];
+                in.readFully(ipcData);
+            }
+            if (in.available() != 0)
+                return null;
+
+            PluginData.PluginMessage m = b.build();
+            m.assignIpcData(ipcData);
+            m.assignIdentityHandle(handle);
+            return deferHandles_ ? m : resolve(m);
+        } catch (IOException | IllegalStateException | IndexOutOfBoundsException e) {
+            // bad message from remote peer
+            Log.e(TAG, "bad compact message: "+e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0 || len > in.available())
+            throw new IOException("Bad string length");
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, UTF8);
+    }
+
+    private static void writeToken(DataOutputStream out, String s, Map<String, Integer> tags) throws IOException {
+        Integer tag = tags.get(s);
+        out.writeByte(tag != null ? tag : 0);
+        if (tag == null)
+            writeString(out, s);
+    }
+
+    private static String readToken(DataInputStream in, String[] table) throws IOException {
+        final int tag = in.readUnsignedByte();
+        return tag == 0 ? readString(in) : table[tag - 1];
+    }
+}
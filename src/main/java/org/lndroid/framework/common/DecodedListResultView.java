@@ -0,0 +1,86 @@
+package org.lndroid.framework.common;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import org.lndroid.framework.WalletDataDecl;
+
+// view over already decoded list result, used if
+// codec provider can't do lazy decoding
+class DecodedListResultView<Item> implements IListResultView<Item> {
+
+    private WalletDataDecl.ListResultTmpl<Item> result_;
+
+    DecodedListResultView(WalletDataDecl.ListResultTmpl<Item> result) {
+        result_ = result;
+    }
+
+    @Override
+    public ImmutableList<Item> items() {
+        return result_.items();
+    }
+
+    @Override
+    public int count() {
+        return result_.count();
+    }
+
+    @Override
+    public int position() {
+        return result_.position();
+    }
+
+    @Override
+    public long requestId() {
+        return result_.requestId();
+    }
+
+    @Override
+    public boolean isUpdate() {
+        return result_.isUpdate();
+    }
+
+    @Override
+    public ImmutableList<Integer> itemPositions() {
+        return result_.itemPositions();
+    }
+
+    @Override
+    public ImmutableList<Long> removedIds() {
+        return result_.removedIds();
+    }
+
+    @Override
+    public String firstCursor() {
+        return result_.firstCursor();
+    }
+
+    @Override
+    public String lastCursor() {
+        return result_.lastCursor();
+    }
+
+    @Override
+    public int size() {
+        return result_.items() != null ? result_.items().size() : 0;
+    }
+
+    @Override
+    public long itemId(int index) {
+        return ((WalletDataDecl.EntityBase)item(index)).id();
+    }
+
+    @Override
+    public Item item(int index) {
+        return result_.items().get(index);
+    }
+
+    @Override
+    public List<Item> itemList() {
+        if (result_.items() != null)
+            return result_.items();
+        return Collections.emptyList();
+    }
+}
@@ -1,5 +1,12 @@
 package org.lndroid.framework.common;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.reflect.Type;
+
+import org.lndroid.framework.WalletData;
+
 public final class DefaultPlugins {
 
     public static final String ADD_USER = "org.lndroid.plugins.NEW_USER";
@@ -51,4 +58,50 @@ public final class DefaultPlugins {
 
     public static final String NODE_INFO_WORKER = "org.lndroid.plugins.NODE_INFO_WORKER";
 
+    // replies of these plugins are large list pages, clients w/
+    // decoder threads decode them before they reach the looper
+    public static final ImmutableMap<String, Type> LIST_REPLY_TYPES = ImmutableMap.<String, Type>of(
+            LIST_INVOICES, WalletData.ListInvoicesResult.class,
+            LIST_PAYMENTS, WalletData.ListPaymentsResult.class,
+            LIST_CONTACTS, WalletData.ListContactsResult.class
+    );
+
+    // request/response types exchanged with the plugins above,
+    // codec providers use these to create their codecs in advance
+    public static final ImmutableList<Type> DATA_TYPES = ImmutableList.<Type>of(
+            WalletData.Error.class,
+            WalletData.AddUserRequest.class,
+            WalletData.User.class,
+            WalletData.GetRequestLong.class,
+            WalletData.GetRequestString.class,
+            WalletData.SubscribeRequest.class,
+            WalletData.WalletBalance.class,
+            WalletData.ChannelBalance.class,
+            WalletData.WalletInfo.class,
+            WalletData.NewAddressRequest.class,
+            WalletData.NewAddress.class,
+            WalletData.SendPaymentRequest.class,
+            WalletData.SendPayment.class,
+            WalletData.AddInvoiceRequest.class,
+            WalletData.Invoice.class,
+            WalletData.ListInvoicesRequest.class,
+            WalletData.ListInvoicesResult.class,
+            WalletData.OpenChannelRequest.class,
+            WalletData.Channel.class,
+            WalletData.ListPaymentsRequest.class,
+            WalletData.ListPaymentsResult.class,
+            WalletData.AddAppContactRequest.class,
+            WalletData.Contact.class,
+            WalletData.ListContactsRequest.class,
+            WalletData.ListContactsResult.class,
+            WalletData.ListContactsPrivilege.class,
+            WalletData.ContactPaymentsPrivilege.class,
+            WalletData.ConnectPeerRequest.class,
+            WalletData.ConnectPeerResponse.class,
+            WalletData.ShareContactRequest.class,
+            WalletData.ShareContactResponse.class,
+            WalletData.AddContactInvoiceRequest.class,
+            WalletData.AddContactInvoiceResponse.class
+    );
+
 }
@@ -0,0 +1,12 @@
+package org.lndroid.framework.common;
+
+// signs outgoing ipc messages, i.e. w/ a keystore-backed key,
+// called on a worker thread and might be slow
+public interface IIpcSigner {
+    // hex pubkey put to IPC_PUBKEY of signed Bundles
+    String pubkey();
+
+    // signature of data built by PluginUtils.getSigningData,
+    // null on failure
+    byte[] sign(byte[] data);
+}
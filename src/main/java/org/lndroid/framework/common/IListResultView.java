@@ -0,0 +1,23 @@
+package org.lndroid.framework.common;
+
+import java.util.List;
+
+import org.lndroid.framework.WalletDataDecl;
+
+// list result that might not be decoded yet: count, position
+// and item ids are available w/o decoding the items, each item
+// is decoded on first access
+public interface IListResultView<Item> extends WalletDataDecl.ListResultTmpl<Item> {
+    // number of items on this page
+    int size();
+
+    // id of item at index, items must be entities
+    long itemId(int index);
+
+    // item at index, decoded on first access
+    Item item(int index);
+
+    // list that decodes items on get(), unlike items()
+    // which decodes all of them
+    List<Item> itemList();
+}
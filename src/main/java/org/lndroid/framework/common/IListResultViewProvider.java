@@ -0,0 +1,10 @@
+package org.lndroid.framework.common;
+
+import java.lang.reflect.Type;
+
+// implemented by codec providers that are able to
+// read list results lazily
+public interface IListResultViewProvider {
+    // returns null if data is malformed
+    <Item> IListResultView<Item> getListResultView(Type type, byte[] data);
+}
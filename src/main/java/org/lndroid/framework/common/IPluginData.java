@@ -7,4 +7,9 @@ public interface IPluginData {
     void assignCodecProvider(ICodecProvider cp);
     void assignDataType(Type type);
     <T> T getData() throws IOException;
+    // for list result data types, decodes items on demand
+    // if codec provider supports that
+    <T> IListResultView<T> getListResultView() throws IOException;
+    // size of encoded data in bytes, 0 if not known
+    int dataSize();
 }
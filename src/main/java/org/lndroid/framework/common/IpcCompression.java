@@ -0,0 +1,123 @@
+package org.lndroid.framework.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// deflate w/ a preset dictionary of WalletData field names for ipc
+// message data (not the envelope, which might encode data as numbers):
+// list results and wallet info are mostly field names and hex strings,
+// which a fresh deflater can't reference until it has seen them once.
+// Dictionary is identified by it's adler32 (also written by zlib to
+// the stream header), peers only send compressed payloads if the
+// other side has announced the same dictionary.
+class IpcCompression {
+
+    // zlib favors the strings at the end of the dictionary,
+    // so the most common ones go last
+    private static final String DICTIONARY =
+            // WalletInfo
+            "\"identityPubkey\":\"\"alias\":\"numPendingChannels\":\"numActiveChannels\":"
+            + "\"numInactiveChannels\":\"numPeers\":\"blockHeight\":\"blockHash\":"
+            + "\"syncedToChain\":\"syncedToGraph\":\"bestHeaderTimestamp\":\"lndVersion\":"
+            + "\"uris\":\"color\":"
+            // HTLCs
+            + "\"chanId\":\"htlcIndex\":\"amountMsat\":\"acceptHeight\":\"acceptTime\":"
+            + "\"resolveTime\":\"expiryHeight\":\"senderTime\":\"customRecords\":"
+            + "\"sendPaymentId\":\"attemptTime\":\"totalAmountMsat\":\"totalFeeMsat\":"
+            + "\"totalTimeLock\":\"destCustomRecords\":"
+            // SendPayment
+            + "\"tries\":\"maxTries\":\"maxTryTime\":\"lastTryTime\":\"nextTryTime\":"
+            + "\"errorCode\":\"errorMessage\":\"invoiceDescription\":"
+            + "\"invoiceDescriptionHashHex\":\"invoiceFallbackAddr\":\"paymentAddrHex\":"
+            + "\"invoiceTimestamp\":\"invoiceExpiry\":\"destPubkey\":\"valueMsat\":"
+            + "\"totalValueMsat\":\"paymentHashHex\":\"finalCltvDelta\":"
+            + "\"feeLimitFixedMsat\":\"feeLimitPercent\":\"outgoingChanId\":\"cltvLimit\":"
+            + "\"paymentError\":\"paymentPreimageHex\":\"routeHints\":\"sendTime\":"
+            + "\"feeMsat\":\"contactPubkey\":"
+            // Invoice
+            + "\"preimageHex\":\"preimageHashHex\":\"valueSat\":\"settleTime\":"
+            + "\"paymentRequest\":\"descriptionHashHex\":\"expiry\":\"fallbackAddr\":"
+            + "\"cltvExpiry\":\"isPrivate\":\"addIndex\":\"settleIndex\":"
+            + "\"amountPaidMsat\":\"htlcsCount\":\"isKeysend\":\"features\":"
+            // Payment
+            + "\"sourceId\":\"sourceHTLCId\":\"sendPayments\":\"HTLCAttempts\":"
+            + "\"invoices\":\"invoiceHTLCs\":\"invoiceId\":\"peerPubkey\":\"senderPubkey\":"
+            + "\"message\":\"time\":"
+            // common
+            + "\"purpose\":\"description\":\"createTime\":\"authUserId\":\"state\":"
+            + "\"userId\":\"txId\":\"type\":"
+            // list results
+            + "\"count\":\"position\":\"requestId\":\"isUpdate\":\"items\":[{\"id\":";
+
+    private static final byte[] DICTIONARY_BYTES = DICTIONARY.getBytes(Charset.forName("UTF-8"));
+    private static final int DICTIONARY_ID = adler32(DICTIONARY_BYTES);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static int adler32(byte[] data) {
+        Adler32 a = new Adler32();
+        a.update(data);
+        return (int)a.getValue();
+    }
+
+    // id of our dictionary, announced to peers
+    static int dictionaryId() {
+        return DICTIONARY_ID;
+    }
+
+    // returns compressed data, or null if it isn't smaller
+    static byte[] compress(byte[] data) {
+        Deflater d = new Deflater(Deflater.BEST_SPEED);
+        try {
+            d.setDictionary(DICTIONARY_BYTES);
+            d.setInput(data);
+            d.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (!d.finished()) {
+                final int n = d.deflate(buf);
+                out.write(buf, 0, n);
+                if (out.size() >= data.length)
+                    return null;
+            }
+            return out.toByteArray();
+        } finally {
+            d.end();
+        }
+    }
+
+    // returns null if data is malformed, uses unknown
+    // dictionary or inflates to more than maxSize bytes
+    static byte[] decompress(byte[] data, int maxSize) {
+        Inflater i = new Inflater();
+        try {
+            i.setInput(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (!i.finished()) {
+                final int n = i.inflate(buf);
+                if (n == 0) {
+                    if (i.needsDictionary() && i.getAdler() == DICTIONARY_ID) {
+                        i.setDictionary(DICTIONARY_BYTES);
+                    } else if (i.needsDictionary() || i.needsInput()) {
+                        return null;
+                    }
+                }
+                out.write(buf, 0, n);
+                if (out.size() > maxSize)
+                    return null;
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            i.end();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.lndroid.framework.common;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// per-connection session, so that messages are authenticated by a
+// cheap HMAC instead of being signed one by one. On bind, client sends
+// MESSAGE_WHAT_IPC_HELLO w/ an ephemeral EC key, server replies w/
+// it's own ephemeral key, signed by it's identity key (the only
+// signature per connection), both derive HMAC keys (one per direction)
+// from the ECDH secret. Version is checked once by the handshake,
+// session messages carry a sequence number and a MAC of it and the
+// payload instead of version and timestamp, replays are rejected by
+// a ReplayWindow over the sequence numbers.
+// Messages sent before the handshake is complete have no MAC, peer
+// must accept those until it receives the first message w/ a MAC,
+// and reject unauthenticated ones after that.
+// Keys are EC P-256, public keys are X.509-encoded, identity pubkey
+// of the service is it's hex.
+public class IpcSession {
+
+    private static final String TAG = "IpcSession";
+
+    private static final String CURVE = "secp256r1";
+    private static final String SIGNATURE = "SHA256withECDSA";
+    private static final String MAC = "HmacSHA256";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] LABEL = "org.lndroid.framework.IpcSession".getBytes(UTF8);
+    private static final byte[] LABEL_CLIENT = "client".getBytes(UTF8);
+    private static final byte[] LABEL_SERVER = "server".getBytes(UTF8);
+
+    private SecretKeySpec sendKey_;
+    private SecretKeySpec receiveKey_;
+    private AtomicLong nextSeq_ = new AtomicLong(1);
+    private AtomicLong rejected_ = new AtomicLong();
+    private AtomicLong replayed_ = new AtomicLong();
+    private ReplayWindow replayWindow_ = new ReplayWindow();
+    // Mac instances are not thread-safe, messages
+    // might be decoded by several threads
+    private ThreadLocal<Mac> sendMac_ = new ThreadLocal<>();
+    private ThreadLocal<Mac> receiveMac_ = new ThreadLocal<>();
+
+    // params of CURVE, taken from a generated key
+    private static ECParameterSpec curveParams_;
+
+    private IpcSession(byte[] sendKey, byte[] receiveKey) {
+        sendKey_ = new SecretKeySpec(sendKey, MAC);
+        receiveKey_ = new SecretKeySpec(receiveKey, MAC);
+    }
+
+    public static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("EC");
+            g.initialize(new ECGenParameterSpec(CURVE));
+            return g.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static PublicKey decodePublicKey(byte[] key) throws GeneralSecurityException {
+        return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(key));
+    }
+
+    private static synchronized ECParameterSpec curveParams() {
+        if (curveParams_ == null)
+            curveParams_ = ((ECPublicKey)generateKeyPair().getPublic()).getParams();
+        return curveParams_;
+    }
+
+    // X.509 encoding might carry any explicit curve
+    private static boolean isOnCurve(PublicKey key) {
+        if (!(key instanceof ECPublicKey))
+            return false;
+
+        final ECParameterSpec p = ((ECPublicKey)key).getParams();
+        final ECParameterSpec c = curveParams();
+        return p.getCurve().equals(c.getCurve())
+                && p.getGenerator().equals(c.getGenerator())
+                && p.getOrder().equals(c.getOrder())
+                && p.getCofactor() == c.getCofactor();
+    }
+
+    // identity key from it's hex, throws if it's not a P-256 key
+    private static PublicKey decodeIdentityKey(String pubkey) throws GeneralSecurityException {
+        final byte[] key = pubkey != null ? HEX.toBytes(pubkey) : null;
+        if (key == null)
+            throw new GeneralSecurityException("Bad identity pubkey hex");
+
+        PublicKey k;
+        try {
+            k = decodePublicKey(key);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException(e);
+        }
+        if (!isOnCurve(k))
+            throw new GeneralSecurityException("Identity pubkey is not on "+CURVE);
+        return k;
+    }
+
+    // whether pubkey can be an identity pubkey of the service
+    public static boolean isValidIdentityPubkey(String pubkey) {
+        try {
+            decodeIdentityKey(pubkey);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    // signed by server: version and both ephemeral keys
+    private static byte[] transcript(String version, byte[] clientKey, byte[] serverKey) {
+        byte[] v = version.getBytes(UTF8);
+        ByteBuffer b = ByteBuffer.allocate(v.length + clientKey.length + serverKey.length + 8);
+        b.putInt(v.length).put(v);
+        b.putInt(clientKey.length).put(clientKey);
+        b.put(serverKey);
+        return b.array();
+    }
+
+    private static byte[] hmac(byte[] key, byte[]... parts) throws GeneralSecurityException {
+        Mac m = Mac.getInstance(MAC);
+        m.init(new SecretKeySpec(key, MAC));
+        for (byte[] p: parts)
+            m.update(p);
+        return m.doFinal();
+    }
+
+    private static IpcSession derive(KeyPair own, byte[] peerKey, byte[] transcript, boolean client)
+            throws GeneralSecurityException {
+        PublicKey peer = decodePublicKey(peerKey);
+        if (!isOnCurve(peer))
+            throw new GeneralSecurityException("Session key is not on "+CURVE);
+
+        KeyAgreement ka = KeyAgreement.getInstance("ECDH");
+        ka.init(own.getPrivate());
+        ka.doPhase(peer, true);
+
+        // extract and expand, a key per direction
+        final byte[] prk = hmac(LABEL, ka.generateSecret(), transcript);
+        final byte[] clientKey = hmac(prk, LABEL_CLIENT);
+        final byte[] serverKey = hmac(prk, LABEL_SERVER);
+        return client ? new IpcSession(clientKey, serverKey) : new IpcSession(serverKey, clientKey);
+    }
+
+    // client: hello to be sent w/ MESSAGE_WHAT_IPC_HELLO
+    public static Bundle createHello(KeyPair own) {
+        Bundle b = new Bundle();
+        b.putString(PluginData.IPC_VERSION, PluginData.IPC_CURRENT_VERSION);
+        b.putByteArray(PluginData.IPC_SESSION_KEY, own.getPublic().getEncoded());
+        return b;
+    }
+
+    // server: fills the reply to hello, returns null
+    // if hello is malformed or of another version
+    public static IpcSession acceptHello(Bundle hello, PrivateKey identityKey, String identityPubkey, Bundle reply) {
+        final String version = hello.getString(PluginData.IPC_VERSION);
+        final byte[] clientKey = hello.getByteArray(PluginData.IPC_SESSION_KEY);
+        if (!PluginData.IPC_CURRENT_VERSION.equals(version) || clientKey == null)
+            return null;
+
+        try {
+            KeyPair own = generateKeyPair();
+            final byte[] serverKey = own.getPublic().getEncoded();
+            final byte[] transcript = transcript(version, clientKey, serverKey);
+
+            Signature s = Signature.getInstance(SIGNATURE);
+            s.initSign(identityKey);
+            s.update(transcript);
+
+            reply.putString(PluginData.IPC_VERSION, version);
+            reply.putByteArray(PluginData.IPC_SESSION_KEY, serverKey);
+            reply.putString(PluginData.IPC_PUBKEY, identityPubkey);
+            reply.putByteArray(PluginData.IPC_SIGNATURE, s.sign());
+            return derive(own, clientKey, transcript, false);
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "failed to accept hello: "+e);
+            return null;
+        }
+    }
+
+    // client: returns null if reply is malformed, of another
+    // version, or not signed by the expected service
+    public static IpcSession acceptHelloReply(Bundle reply, KeyPair own, String servicePubkey) {
+        final String version = reply.getString(PluginData.IPC_VERSION);
+        final byte[] serverKey = reply.getByteArray(PluginData.IPC_SESSION_KEY);
+        final byte[] signature = reply.getByteArray(PluginData.IPC_SIGNATURE);
+        if (!PluginData.IPC_CURRENT_VERSION.equals(version) || serverKey == null || signature == null
+                || !servicePubkey.equalsIgnoreCase(reply.getString(PluginData.IPC_PUBKEY)))
+            return null;
+
+        try {
+            final byte[] clientKey = own.getPublic().getEncoded();
+            final byte[] transcript = transcript(version, clientKey, serverKey);
+
+            Signature s = Signature.getInstance(SIGNATURE);
+            s.initVerify(decodeIdentityKey(servicePubkey));
+            s.update(transcript);
+            if (!s.verify(signature))
+                return null;
+
+            return derive(own, serverKey, transcript, true);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "bad hello reply: "+e);
+            return null;
+        }
+    }
+
+    private static Mac mac(ThreadLocal<Mac> cache, SecretKeySpec key) {
+        Mac m = cache.get();
+        if (m == null) {
+            try {
+                m = Mac.getInstance(MAC);
+                m.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+            cache.set(m);
+        }
+        return m;
+    }
+
+    private static byte[] mac(Mac m, long seq, byte[] payload) {
+        for (int i = 56; i >= 0; i -= 8)
+            m.update((byte)(seq >>> i));
+        m.update(payload);
+        return m.doFinal();
+    }
+
+    // put next sequence number and a MAC
+    // of the payload to the message Bundle
+    public void sign(Bundle b, byte[] payload) {
+        final long seq = nextSeq_.getAndIncrement();
+        b.putLong(PluginData.IPC_SEQ, seq);
+        b.putByteArray(PluginData.IPC_MAC, mac(mac(sendMac_, sendKey_), seq, payload));
+    }
+
+    // check MAC of the message Bundle, then it's sequence number
+    // against replays, MAC goes first so that forged messages
+    // can't burn the numbers of real ones
+    public boolean verify(Bundle b, byte[] payload) {
+        final byte[] expected = b.getByteArray(PluginData.IPC_MAC);
+        final long seq = b.getLong(PluginData.IPC_SEQ, 0);
+        final boolean valid = expected != null
+                && MessageDigest.isEqual(expected, mac(mac(receiveMac_, receiveKey_), seq, payload));
+        if (!valid) {
+            rejected_.incrementAndGet();
+            return false;
+        }
+
+        if (!replayWindow_.accept(seq)) {
+            replayed_.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // messages that failed verification
+    public long rejected() {
+        return rejected_.get();
+    }
+
+    // authentic messages w/ a sequence number that was seen
+    // or is too far behind, replays or very late ones
+    public long replayed() {
+        return replayed_.get();
+    }
+}
@@ -0,0 +1,103 @@
+package org.lndroid.framework.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// keyset cursor: (sort value, id) of the boundary item of a page,
+// servers return them w/ list results and get them back in ListPage
+// to seek the sorted index instead of locating the item by id.
+// Opaque to clients, encoded as hex.
+public class ListCursor {
+
+    private static final byte VERSION = 1;
+    private static final byte TYPE_NONE = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_STRING = 2;
+
+    private Object sortValue_;
+    private long id_;
+
+    private ListCursor(Object sortValue, long id) {
+        sortValue_ = sortValue;
+        id_ = id;
+    }
+
+    // Long or String value of the sort field,
+    // null if sorted by id only
+    public Object sortValue() {
+        return sortValue_;
+    }
+
+    public long id() {
+        return id_;
+    }
+
+    public static String encode(Object sortValue, long id) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            if (sortValue == null) {
+                out.writeByte(TYPE_NONE);
+            } else if (sortValue instanceof Long || sortValue instanceof Integer) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong(((Number)sortValue).longValue());
+            } else if (sortValue instanceof String) {
+                out.writeByte(TYPE_STRING);
+                out.writeUTF((String)sortValue);
+            } else {
+                throw new RuntimeException("Unsupported cursor sort value "+sortValue.getClass());
+            }
+            out.writeLong(id);
+            out.flush();
+            return HEX.fromBytes(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // HEX.toBytes doesn't check the digits
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    // returns null if cursor is malformed
+    public static ListCursor decode(String cursor) {
+        byte[] data = cursor != null && isHex(cursor) ? HEX.toBytes(cursor) : null;
+        if (data == null)
+            return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readByte() != VERSION)
+                return null;
+
+            Object sortValue;
+            switch (in.readByte()) {
+                case TYPE_NONE:
+                    sortValue = null;
+                    break;
+                case TYPE_LONG:
+                    sortValue = in.readLong();
+                    break;
+                case TYPE_STRING:
+                    sortValue = in.readUTF();
+                    break;
+                default:
+                    return null;
+            }
+
+            ListCursor c = new ListCursor(sortValue, in.readLong());
+            return in.available() == 0 ? c : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
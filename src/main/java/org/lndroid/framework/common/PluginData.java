@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
 
 public class PluginData {
 
@@ -16,6 +17,10 @@ public class PluginData {
     public static final int MESSAGE_WHAT_IPC_TX = 0;
     public static final int MESSAGE_WHAT_LOCAL_TX = 1;
     public static final int MESSAGE_WHAT_AUTH = 2;
+    // several ipc tx messages in one Bundle, see IPC_BATCH
+    public static final int MESSAGE_WHAT_IPC_BATCH = 3;
+    // session handshake, see IpcSession
+    public static final int MESSAGE_WHAT_IPC_HELLO = 4;
 
     // ipc Bundle keys
     public static final String IPC_VERSION = "ver";
@@ -23,6 +28,28 @@ public class PluginData {
     public static final String IPC_TIMESTAMP = "tm";
     public static final String IPC_PUBKEY = "pk";
     public static final String IPC_SIGNATURE = "sign";
+    // SharedMemory w/ the payload, used instead of IPC_MESSAGE
+    // for large payloads if peer supports it
+    public static final String IPC_MESSAGE_SHM = "msgshm";
+    // max payload size the sender of the Bundle accepts in
+    // shared memory, absent if shared memory isn't supported
+    public static final String IPC_SHM_MAX_SIZE = "shmmax";
+    // id of the compression dictionary the sender of the Bundle
+    // can inflate, absent if it doesn't accept compressed payloads
+    public static final String IPC_DEFLATE_DICT = "zdict";
+    // set if message data is deflated w/ peer's dictionary
+    public static final String IPC_DEFLATED = "z";
+    // CompactPluginMessageCodec format version the sender of
+    // the Bundle can decode, absent if it only decodes json
+    public static final String IPC_COMPACT_ENVELOPE = "env";
+    // ephemeral session pubkey in hello messages
+    public static final String IPC_SESSION_KEY = "skey";
+    // sequence number and MAC of session messages,
+    // used instead of version and timestamp
+    public static final String IPC_SEQ = "seq";
+    public static final String IPC_MAC = "mac";
+    // list of message Bundles w/o their own version and timestamp
+    public static final String IPC_BATCH = "batch";
 
     // current IPC Bundle format version
     public static final String IPC_CURRENT_VERSION = "org.lndroid.framework.IPC_VERSION:0.1.0";
@@ -83,7 +110,8 @@ public class PluginData {
         // decode the data received from IPC transport
         @Override
         public void assignDataType(Type type) {
-            if (data_ == null && dataType_ != null)
+            // shared replies get the same type from every reader
+            if (data_ == null && dataType_ != null && !dataType_.equals(type))
                 throw new RuntimeException("Data type already assigned");
 
             dataType_ = type;
@@ -124,6 +152,33 @@ public class PluginData {
             return (T)data_;
         }
 
+        // lazy alternative to getData for list results, the view
+        // is memoized separately as it's not of dataType
+        @Nullable @Override
+        public <T> IListResultView<T> getListResultView() throws IOException {
+            if (listView_ == null) {
+                if (data_ == null && ipcData_ != null
+                        && codecProvider_ instanceof IListResultViewProvider) {
+                    listView_ = ((IListResultViewProvider)codecProvider_)
+                            .getListResultView(dataType_, ipcData_);
+                    if (listView_ == null)
+                        throw new IOException("Unexpected message data");
+                } else {
+                    WalletDataDecl.ListResultTmpl<T> r = getData();
+                    if (r != null)
+                        listView_ = new DecodedListResultView<>(r);
+                }
+            }
+
+            return (IListResultView<T>)listView_;
+        }
+        private transient IListResultView<?> listView_;
+
+        @Override
+        public int dataSize() {
+            return ipcData_ != null ? ipcData_.length : 0;
+        }
+
         public void encodeData() {
             if (data_ == null)
                 return;
@@ -151,6 +206,32 @@ public class PluginData {
         }
         private byte[] ipcData_;
 
+        // set by codecs that don't use reflection
+        void assignIpcData(byte[] ipcData) {
+            ipcData_ = ipcData;
+        }
+
+        // identity handle of the compact envelope, see
+        // CompactPluginMessageCodec.onSent and resolve
+        int identityHandle() {
+            return identityHandle_;
+        }
+        void assignIdentityHandle(int handle) {
+            identityHandle_ = handle;
+        }
+        private transient int identityHandle_;
+
+        // copy w/ the identity, keeps the payload and it's decoded data
+        PluginMessage withUserIdentity(WalletData.UserIdentity ui) {
+            PluginMessage m = toBuilder().setUserIdentity(ui).build();
+            m.data_ = data_;
+            m.dataType_ = dataType_;
+            m.codecProvider_ = codecProvider_;
+            m.listView_ = listView_;
+            m.ipcData_ = ipcData_;
+            return m;
+        }
+
         public static Builder builder() {
             return new AutoValue_PluginData_PluginMessage.Builder();
         }
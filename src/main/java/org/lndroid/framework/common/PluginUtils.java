@@ -1,42 +1,384 @@
 package org.lndroid.framework.common;
 
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Parcelable;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class PluginUtils {
 
+    private static final String TAG = "PluginUtils";
+
+    // max payload size we accept in shared memory
+    public static final int MAX_SHM_SIZE = 16 * 1024 * 1024;
+
+    public static boolean isSharedMemorySupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+    }
+
     public static PluginData.PluginMessage decodePluginMessageIpc(Bundle b, ICodec<PluginData.PluginMessage> codec) {
+        return decodePluginMessageIpc(b, codec, null);
+    }
+
+    // session of the connection if handshake is complete, null otherwise
+    public static PluginData.PluginMessage decodePluginMessageIpc(
+            Bundle b, ICodec<PluginData.PluginMessage> codec, IpcSession session) {
         if (b == null)
             return null;
 
-        // FIXME check version, timestamp, signature
+        // FIXME check version, timestamp, signature of sessionless messages
         byte[] payload = b.getByteArray(PluginData.IPC_MESSAGE);
+        if (payload == null && isSharedMemorySupported())
+            payload = readSharedMemory(b);
         if (payload == null)
             return null;
 
-        return codec.decode(payload);
+        if (session != null && !session.verify(b, payload)) {
+            Log.e(TAG, "bad or replayed session message");
+            return null;
+        }
+
+        PluginData.PluginMessage pm = codec.decode(payload);
+        if (pm != null && pm.ipcData() != null && b.getBoolean(PluginData.IPC_DEFLATED, false)) {
+            byte[] data = IpcCompression.decompress(pm.ipcData(), MAX_SHM_SIZE);
+            if (data == null) {
+                Log.e(TAG, "bad compressed payload");
+                return null;
+            }
+            pm.assignIpcData(data);
+        }
+
+        return pm;
+    }
+
+    // max shared memory payload size accepted by sender of the bundle,
+    // 0 if sender can't receive shared memory
+    public static int getSharedMemoryMaxSize(Bundle b) {
+        if (b == null)
+            return 0;
+        return b.getInt(PluginData.IPC_SHM_MAX_SIZE, 0);
+    }
+
+    // whether sender of the bundle decodes envelopes
+    // encoded by CompactPluginMessageCodec
+    public static boolean isCompactEnvelopeAccepted(Bundle b) {
+        return b != null
+                && b.getInt(PluginData.IPC_COMPACT_ENVELOPE, 0) == CompactPluginMessageCodec.FORMAT_VERSION;
+    }
+
+    // whether sender of the bundle accepts payloads
+    // compressed w/ our dictionary
+    public static boolean isCompressionAccepted(Bundle b) {
+        return b != null
+                && b.containsKey(PluginData.IPC_DEFLATE_DICT)
+                && b.getInt(PluginData.IPC_DEFLATE_DICT) == IpcCompression.dictionaryId();
     }
 
     public static Bundle encodePluginMessageIpc(
             PluginData.PluginMessage msg,
             ICodecProvider codecProvider,
             ICodec<PluginData.PluginMessage> pluginMessageCodec
+    ) {
+        return encodePluginMessageIpc(msg, codecProvider, pluginMessageCodec, 0, 0, 0, false, null);
+    }
+
+    public static Bundle encodePluginMessageIpc(
+            PluginData.PluginMessage msg,
+            ICodecProvider codecProvider,
+            ICodec<PluginData.PluginMessage> pluginMessageCodec,
+            int shmThreshold,
+            int peerShmMaxSize
+    ) {
+        return encodePluginMessageIpc(msg, codecProvider, pluginMessageCodec,
+                shmThreshold, peerShmMaxSize, 0, false, null);
+    }
+
+    // payloads of shmThreshold bytes or more are passed in shared memory
+    // if peer accepts that much (peerShmMaxSize), otherwise inline,
+    // shmThreshold of 0 disables shared memory (also for receiving).
+    // Message data of compressThreshold bytes or more is deflated if
+    // peer accepts that (peerCompression), compressThreshold of 0
+    // disables compression (also for receiving). Messages are
+    // authenticated by session if it's not null
+    public static Bundle encodePluginMessageIpc(
+            PluginData.PluginMessage msg,
+            ICodecProvider codecProvider,
+            ICodec<PluginData.PluginMessage> pluginMessageCodec,
+            int shmThreshold,
+            int peerShmMaxSize,
+            int compressThreshold,
+            boolean peerCompression,
+            IpcSession session
     ) {
         // encode message data
         msg.assignCodecProvider(codecProvider);
         msg.encodeData();
 
-        // encode message itself
-        byte[] payload = pluginMessageCodec.encode(msg);
+        // data is deflated before it goes into the envelope: the
+        // dictionary holds data field names, while gson envelope
+        // has data as an array of numbers
+        final byte[] data = msg.ipcData();
+        byte[] compressed = null;
+        if (compressThreshold > 0 && peerCompression && data != null && data.length >= compressThreshold)
+            compressed = IpcCompression.compress(data);
+
+        // encode message itself, w/o changing it's data
+        byte[] payload;
+        if (compressed != null) {
+            msg.assignIpcData(compressed);
+            try {
+                payload = pluginMessageCodec.encode(msg);
+            } finally {
+                msg.assignIpcData(data);
+            }
+        } else {
+            payload = pluginMessageCodec.encode(msg);
+        }
+
+        // set to bundle, session messages have their
+        // version checked by the handshake
+        Bundle b = new Bundle();
+        if (session == null) {
+            // signed by PluginClient's signer if any
+            b.putString(PluginData.IPC_VERSION, PluginData.IPC_CURRENT_VERSION);
+            b.putLong(PluginData.IPC_TIMESTAMP, System.currentTimeMillis());
+        }
+
+        final boolean shm = shmThreshold > 0 && isSharedMemorySupported();
+        if (shm)
+            b.putInt(PluginData.IPC_SHM_MAX_SIZE, MAX_SHM_SIZE);
+
+        if (compressThreshold > 0)
+            b.putInt(PluginData.IPC_DEFLATE_DICT, IpcCompression.dictionaryId());
+
+        if (pluginMessageCodec instanceof CompactPluginMessageCodec)
+            b.putInt(PluginData.IPC_COMPACT_ENVELOPE, CompactPluginMessageCodec.FORMAT_VERSION);
+
+        if (compressed != null)
+            b.putBoolean(PluginData.IPC_DEFLATED, true);
 
-        // FIXME sign using signer
+        if (session != null)
+            session.sign(b, payload);
 
-        // set to bundle
+        if (!shm
+                || payload.length < shmThreshold
+                || payload.length > peerShmMaxSize
+                || !writeSharedMemory(b, payload))
+            b.putByteArray(PluginData.IPC_MESSAGE, payload);
+
+        return b;
+    }
+
+    // pack message Bundles produced by encodePluginMessageIpc into
+    // a single one to be sent w/ MESSAGE_WHAT_IPC_BATCH, common
+    // header fields are only written once, batches passed
+    // as messages are merged into the new one
+    public static Bundle encodePluginMessageBatchIpc(List<Bundle> messages) {
         Bundle b = new Bundle();
         b.putString(PluginData.IPC_VERSION, PluginData.IPC_CURRENT_VERSION);
-        b.putByteArray(PluginData.IPC_MESSAGE, payload);
         b.putLong(PluginData.IPC_TIMESTAMP, System.currentTimeMillis());
-        //FIXME signature and appPubkey
 
+        ArrayList<Bundle> batch = new ArrayList<>(messages.size());
+        for (Bundle m: messages) {
+            List<Bundle> inner = m.getParcelableArrayList(PluginData.IPC_BATCH);
+            if (inner != null) {
+                m.remove(PluginData.IPC_BATCH);
+                b.putAll(m);
+                batch.addAll(inner);
+                continue;
+            }
+
+            if (m.containsKey(PluginData.IPC_SHM_MAX_SIZE))
+                b.putInt(PluginData.IPC_SHM_MAX_SIZE, m.getInt(PluginData.IPC_SHM_MAX_SIZE));
+            if (m.containsKey(PluginData.IPC_DEFLATE_DICT))
+                b.putInt(PluginData.IPC_DEFLATE_DICT, m.getInt(PluginData.IPC_DEFLATE_DICT));
+            if (m.containsKey(PluginData.IPC_COMPACT_ENVELOPE))
+                b.putInt(PluginData.IPC_COMPACT_ENVELOPE, m.getInt(PluginData.IPC_COMPACT_ENVELOPE));
+            m.remove(PluginData.IPC_VERSION);
+            m.remove(PluginData.IPC_TIMESTAMP);
+            m.remove(PluginData.IPC_SHM_MAX_SIZE);
+            m.remove(PluginData.IPC_DEFLATE_DICT);
+            m.remove(PluginData.IPC_COMPACT_ENVELOPE);
+            batch.add(m);
+        }
+        b.putParcelableArrayList(PluginData.IPC_BATCH, batch);
         return b;
     }
+
+    // returns message Bundles to be passed to decodePluginMessageIpc,
+    // empty list if batch is malformed
+    public static List<Bundle> decodePluginMessageBatchIpc(Bundle b) {
+        if (b == null)
+            return Collections.emptyList();
+
+        List<Parcelable> batch;
+        try {
+            batch = b.getParcelableArrayList(PluginData.IPC_BATCH);
+        } catch (RuntimeException e) {
+            // bad parcel sent by remote peer
+            Log.e(TAG, "bad batch parcel: "+e);
+            return Collections.emptyList();
+        }
+        if (batch == null)
+            return Collections.emptyList();
+
+        // FIXME check version, timestamp, signature
+        List<Bundle> messages = new ArrayList<>(batch.size());
+        for (Parcelable p: batch) {
+            if (p instanceof Bundle)
+                messages.add((Bundle)p);
+        }
+        return messages;
+    }
+
+    // whether message or batch Bundle has messages
+    // not authenticated by session MAC
+    public static boolean needsSignature(Bundle b) {
+        List<Bundle> batch = b.getParcelableArrayList(PluginData.IPC_BATCH);
+        if (batch == null)
+            return !b.containsKey(PluginData.IPC_MAC);
+
+        for (Bundle m: batch) {
+            if (!m.containsKey(PluginData.IPC_MAC))
+                return true;
+        }
+        return false;
+    }
+
+    // data to be signed for a message or batch Bundle: hash of
+    // version, timestamp and hashes of payloads of all messages,
+    // a batch is covered by a single signature
+    public static byte[] getSigningData(Bundle b) {
+        try {
+            MessageDigest d = MessageDigest.getInstance("SHA-256");
+            final String version = b.getString(PluginData.IPC_VERSION);
+            if (version != null)
+                d.update(version.getBytes(Charset.forName("UTF-8")));
+            d.update(ByteBuffer.allocate(8).putLong(0, b.getLong(PluginData.IPC_TIMESTAMP)));
+
+            List<Bundle> batch = b.getParcelableArrayList(PluginData.IPC_BATCH);
+            if (batch == null)
+                batch = Collections.singletonList(b);
+            MessageDigest pd = MessageDigest.getInstance("SHA-256");
+            for (Bundle m: batch) {
+                byte[] payload = m.getByteArray(PluginData.IPC_MESSAGE);
+                if (payload != null)
+                    pd.update(payload);
+                else if (isSharedMemorySupported())
+                    digestSharedMemory(m, pd);
+                d.update(pd.digest());
+            }
+            return d.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void putSignature(Bundle b, String pubkey, byte[] signature) {
+        b.putString(PluginData.IPC_PUBKEY, pubkey);
+        b.putByteArray(PluginData.IPC_SIGNATURE, signature);
+    }
+
+    // release resources held by the bundle, call after it was sent
+    public static void releasePluginMessageIpc(Bundle b) {
+        if (b == null || !isSharedMemorySupported())
+            return;
+
+        closeSharedMemory(b);
+
+        List<Bundle> batch = b.getParcelableArrayList(PluginData.IPC_BATCH);
+        if (batch != null) {
+            for (Bundle m: batch)
+                closeSharedMemory(m);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    private static boolean writeSharedMemory(Bundle b, byte[] payload) {
+        SharedMemory shm = null;
+        try {
+            shm = SharedMemory.create("lndroid-ipc", payload.length);
+            ByteBuffer buf = shm.mapReadWrite();
+            buf.put(payload);
+            SharedMemory.unmap(buf);
+
+            // receiver can only read it
+            shm.setProtect(android.system.OsConstants.PROT_READ);
+            b.putParcelable(PluginData.IPC_MESSAGE_SHM, shm);
+            return true;
+        } catch (ErrnoException e) {
+            Log.e(TAG, "failed to write shared memory: "+e);
+            if (shm != null)
+                shm.close();
+            return false;
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    private static byte[] readSharedMemory(Bundle b) {
+        SharedMemory shm;
+        try {
+            shm = b.getParcelable(PluginData.IPC_MESSAGE_SHM);
+        } catch (RuntimeException e) {
+            // bad parcel sent by remote peer
+            Log.e(TAG, "bad shared memory parcel: "+e);
+            return null;
+        }
+        if (shm == null)
+            return null;
+
+        try {
+            if (shm.getSize() > MAX_SHM_SIZE)
+                return null;
+
+            ByteBuffer buf = shm.mapReadOnly();
+            byte[] payload = new byte[buf.remaining()];
+            buf.get(payload);
+            SharedMemory.unmap(buf);
+            return payload;
+        } catch (ErrnoException e) {
+            Log.e(TAG, "failed to read shared memory: "+e);
+            return null;
+        } finally {
+            shm.close();
+            b.remove(PluginData.IPC_MESSAGE_SHM);
+        }
+    }
+
+    // reads shared memory w/o releasing it
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    private static void digestSharedMemory(Bundle b, MessageDigest d) {
+        SharedMemory shm = b.getParcelable(PluginData.IPC_MESSAGE_SHM);
+        if (shm == null)
+            return;
+
+        try {
+            ByteBuffer buf = shm.mapReadOnly();
+            d.update(buf);
+            SharedMemory.unmap(buf);
+        } catch (ErrnoException e) {
+            Log.e(TAG, "failed to read shared memory: "+e);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    private static void closeSharedMemory(Bundle b) {
+        SharedMemory shm = b.getParcelable(PluginData.IPC_MESSAGE_SHM);
+        if (shm != null) {
+            shm.close();
+            b.remove(PluginData.IPC_MESSAGE_SHM);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package org.lndroid.framework.common;
+
+// sliding anti-replay window over message sequence numbers
+// (RFC 6479): a ring of 64-bit blocks where bit N is set if N was
+// seen, sliding forward clears the blocks that become ahead of the
+// window. Accepts each number once, in any order, unless it's more
+// than WINDOW_SIZE behind the highest one. Doesn't allocate.
+// Thread-safe, messages might be verified by several threads.
+public class ReplayWindow {
+
+    private static final int BLOCKS = 16;
+    private static final int BLOCK_BITS = 64;
+    // one block is being reused while the window slides
+    public static final int WINDOW_SIZE = (BLOCKS - 1) * BLOCK_BITS;
+
+    private final long[] bitmap_ = new long[BLOCKS];
+    private long highest_;
+
+    // returns false if seq was seen or is too old, sequences start at 1
+    public synchronized boolean accept(long seq) {
+        if (seq <= 0)
+            return false;
+
+        final long block = seq / BLOCK_BITS;
+        if (seq > highest_) {
+            // clear blocks that now represent the numbers
+            // ahead of the window, at most all of them
+            final long top = highest_ / BLOCK_BITS;
+            final long clear = Math.min(block - top, BLOCKS);
+            for (long i = 1; i <= clear; i++)
+                bitmap_[(int)((top + i) % BLOCKS)] = 0;
+            highest_ = seq;
+        } else if (highest_ - seq >= WINDOW_SIZE) {
+            return false;
+        }
+
+        final int index = (int)(block % BLOCKS);
+        final long bit = 1L << (seq % BLOCK_BITS);
+        if ((bitmap_[index] & bit) != 0)
+            return false;
+
+        bitmap_[index] |= bit;
+        return true;
+    }
+
+    public synchronized long highest() {
+        return highest_;
+    }
+}
@@ -40,6 +40,7 @@ public abstract class ActionUseCaseBase<Request, Response> implements IActionUse
     private WalletData.AuthResponse authResponse_;
     private boolean authResponseNotified_;
     private WalletData.Error error_;
+    private long timeout_;
 
     public ActionUseCaseBase(String pluginId, IPluginClient client, String tag) {
         pluginId_ = pluginId;
@@ -134,6 +135,11 @@ public abstract class ActionUseCaseBase<Request, Response> implements IActionUse
         owner.getLifecycle().addObserver(this);
     }
 
+    @Override
+    public void setTimeout(long timeout) {
+        timeout_ = timeout;
+    }
+
     @Override
     public boolean isExecuting() {
         return tx_ != null;
@@ -244,6 +250,6 @@ public abstract class ActionUseCaseBase<Request, Response> implements IActionUse
         });
 
         // start
-        tx_.start(request_, getRequestType());
+        tx_.start(request_, getRequestType(), timeout_);
     }
 }
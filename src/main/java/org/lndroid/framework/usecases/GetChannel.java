@@ -3,9 +3,7 @@ package org.lndroid.framework.usecases;
 import org.lndroid.framework.WalletData;
 import org.lndroid.framework.client.IPluginClient;
 import org.lndroid.framework.common.DefaultPlugins;
-import org.lndroid.framework.common.IPluginData;
 
-import java.io.IOException;
 import java.lang.reflect.Type;
 
 public class GetChannel extends GetData<WalletData.Channel, Long> {
@@ -14,13 +12,8 @@ public class GetChannel extends GetData<WalletData.Channel, Long> {
     }
 
     @Override
-    protected WalletData.Channel getData(IPluginData in) {
-        in.assignDataType(WalletData.Channel.class);
-        try {
-            return in.getData();
-        } catch (IOException e) {
-            return null;
-        }
+    protected Type getDataType() {
+        return WalletData.Channel.class;
     }
 
     @Override
@@ -1,12 +1,10 @@
 package org.lndroid.framework.usecases;
 
-import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.lndroid.framework.WalletData;
 import org.lndroid.framework.client.IPluginClient;
 import org.lndroid.framework.common.DefaultPlugins;
-import org.lndroid.framework.common.IPluginData;
 
 public class GetContact extends GetData<WalletData.Contact, Long> {
     public GetContact(IPluginClient client){
@@ -14,13 +12,8 @@ public class GetContact extends GetData<WalletData.Contact, Long> {
     }
 
     @Override
-    protected WalletData.Contact getData(IPluginData in) {
-        in.assignDataType(WalletData.Invoice.class);
-        try {
-            return in.getData();
-        } catch (IOException e) {
-            return null;
-        }
+    protected Type getDataType() {
+        return WalletData.Contact.class;
     }
 
     @Override
@@ -1,13 +1,16 @@
 package org.lndroid.framework.usecases;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.lndroid.framework.IResponseCallback;
 import org.lndroid.framework.WalletData;
 import org.lndroid.framework.WalletDataDecl;
+import org.lndroid.framework.client.EntityCache;
 import org.lndroid.framework.client.IPluginClient;
 import org.lndroid.framework.client.IPluginTransaction;
 import org.lndroid.framework.client.IPluginTransactionCallback;
+import org.lndroid.framework.common.Errors;
 import org.lndroid.framework.common.IPluginData;
 
 // usable by non-UI thread
@@ -37,17 +40,44 @@ public abstract class GetDataBg<DataType, /*optional*/IdType> {
         return tx_ != null && tx_.isActive();
     }
 
-    protected abstract DataType getData(IPluginData in);
+    protected abstract Type getDataType();
     protected abstract Type getRequestType();
 
+    private DataType getData(IPluginData in) {
+        in.assignDataType(getDataType());
+        try {
+            return in.getData();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long cacheId() {
+        return req_.id() instanceof Long ? (Long)req_.id() : 0;
+    }
+
     public void start() {
         if (tx_ != null)
             throw new RuntimeException("Tx already started");
 
+        final EntityCache cache = cacheId() != 0 ? client_.getEntityCache() : null;
+        if (cache != null) {
+            DataType cached = cache.get(getDataType(), cacheId());
+            if (cached != null && EntityCache.isFinal(cached)) {
+                cb_.onResponse(cached);
+
+                // served w/o ipc, subscribers still need updates
+                if (!req_.subscribe())
+                    return;
+            }
+        }
+
         tx_ = client_.createTransaction(pluginId_, "", new IPluginTransactionCallback() {
             @Override
             public void onResponse(IPluginData in) {
                 DataType data = getData(in);
+                if (cache != null && EntityCache.isFinal(data))
+                    cache.put(getDataType(), (WalletDataDecl.EntityBase)data, in.dataSize());
                 // NOTE: data might be null which is fine, plugins might return
                 // empty replies if record is not found
                 cb_.onResponse(data);
@@ -67,6 +97,8 @@ public abstract class GetDataBg<DataType, /*optional*/IdType> {
 
             @Override
             public void onError(String code, String message) {
+                if (cache != null && Errors.TX_INVALIDATE.equals(code))
+                    cache.invalidate(getDataType(), cacheId());
                 cb_.onError(code, message);
                 destroy();
             }
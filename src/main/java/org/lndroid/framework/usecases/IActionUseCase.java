@@ -22,6 +22,10 @@ public interface IActionUseCase<Request, Response> {
     void execute(String txId);
     void recover();
 
+    // tx fails w/ TX_TIMEOUT if not finished within timeout ms,
+    // 0 (default) to wait indefinitely, i.e. for user auth
+    void setTimeout(long timeout);
+
     // 'true' when 'execute' was called but Callback wasn't yet executed
     boolean isExecuting();
 
@@ -12,13 +12,15 @@ public interface IListData<Request extends WalletData.ListRequestBase, Response
     // load the first page of results
     void load(Request req);
 
-    // load further pages
+    // load further pages, several might be in flight, set
+    // p.requestId to match the replies by their requestId
     void loadMore(WalletData.ListPage p);
 
     // a single callback can be attached, if needed
     void setCallback(IResponseCallback<WalletDataDecl.ListResultTmpl<Response>> cb);
 
-    // observe to read results
+    // observe to read results, if first page was requested
+    // w/ acceptUpdates, results might be updates of the data set
     LiveData<WalletDataDecl.ListResultTmpl<Response>> results();
 
     // observe to read errors, including TX_INVALID which means
@@ -27,6 +29,17 @@ public interface IListData<Request extends WalletData.ListRequestBase, Response
     // previously observed page)
     LiveData<WalletData.Error> error();
 
+    // decode items only when they're accessed (i.e. when PagedList
+    // binds them) instead of the whole page on arrival, must be
+    // set before 'load', results will be IListResultView's,
+    // codec provider might not support this and decode eagerly
+    void setLazyDecoding(boolean lazy);
+
+    // Pager renders the last stored pages of it's request from
+    // this cache until live results arrive, and stores the
+    // first pages of live results, must be set before 'setRequest'
+    void setSnapshotCache(ListSnapshotCache cache);
+
     // reset list to allow for new 'load' call
     void reset();
 
@@ -1,5 +1,8 @@
 package org.lndroid.framework.usecases;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -9,37 +12,148 @@ import androidx.lifecycle.Observer;
 import androidx.paging.ItemKeyedDataSource;
 import androidx.paging.PagedList;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 import org.lndroid.framework.IResponseCallback;
 import org.lndroid.framework.WalletData;
 import org.lndroid.framework.WalletDataDecl;
 import org.lndroid.framework.common.Errors;
+import org.lndroid.framework.client.EntityCache;
 import org.lndroid.framework.client.IPluginClient;
 import org.lndroid.framework.client.IPluginTransaction;
 import org.lndroid.framework.client.IPluginTransactionCallback;
+import org.lndroid.framework.common.IListResultView;
 import org.lndroid.framework.common.IPluginData;
 
 abstract class  ListData<Request extends WalletData.ListRequestBase, Response extends WalletDataDecl.EntityBase>
         implements IListData<Request, Response> {
 
+    // prefetcher limits
+    private static final int MAX_PREFETCH_PAGES = 4;
+    private static final double SMOOTHING = 0.25;
+
     private IPluginClient client_;
     private String pluginId_;
     private IPluginTransaction tx_;
     private IResponseCallback<WalletDataDecl.ListResultTmpl<Response>> cb_;
     private MutableLiveData<WalletDataDecl.ListResultTmpl<Response>> results_ = new MutableLiveData<>();
+    // number of results_ values set, to tell new ones from
+    // the last one redelivered to a newly attached observer
+    private long resultsVersion_;
     private MutableLiveData<WalletData.Error> error_ = new MutableLiveData<>();
+    private boolean lazyDecoding_;
+    private ListSnapshotCache snapshotCache_;
 
     public ListData(IPluginClient client, String pluginId) {
         client_ = client;
         pluginId_ = pluginId;
     }
 
-    protected abstract WalletDataDecl.ListResultTmpl<Response> getData(IPluginData in);
+    protected abstract Type getResultType();
+    protected abstract Type getItemType();
     protected abstract Type getRequestType();
 
+    private WalletDataDecl.ListResultTmpl<Response> getData(IPluginData in) {
+        in.assignDataType(getResultType());
+        try {
+            if (lazyDecoding_)
+                return in.getListResultView();
+            else
+                return in.getData();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // items of lazy results are decoded as they're accessed
+    private static <Response> List<Response> itemList(WalletDataDecl.ListResultTmpl<Response> res) {
+        if (res instanceof IListResultView)
+            return ((IListResultView<Response>)res).itemList();
+        return res.items();
+    }
+
+    // ids of the items, lazy results have them w/o decoding
+    private static <Response extends WalletDataDecl.EntityBase> long[] itemIds(
+            WalletDataDecl.ListResultTmpl<Response> res, List<Response> items) {
+        long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = res instanceof IListResultView
+                    ? ((IListResultView<Response>)res).itemId(i)
+                    : items.get(i).id();
+        }
+        return ids;
+    }
+
+    // items picked from loaded pages, got from them on access
+    // so that lazy items are only decoded if PagedList needs them
+    private static class PickedItems<T> extends AbstractList<T> {
+        private List<List<T>> pages_ = new ArrayList<>();
+        private List<Integer> indexes_ = new ArrayList<>();
+
+        void add(int at, List<T> page, int index) {
+            // refer to the page itself, not to an earlier pick
+            if (page instanceof PickedItems) {
+                PickedItems<T> picked = (PickedItems<T>)page;
+                page = picked.pages_.get(index);
+                index = picked.indexes_.get(index);
+            }
+            pages_.add(at, page);
+            indexes_.add(at, index);
+        }
+
+        @Override
+        public T get(int i) {
+            return pages_.get(i).get(indexes_.get(i));
+        }
+
+        @Override
+        public int size() {
+            return pages_.size();
+        }
+    }
+
+    // lazy results aren't cached to keep their items undecoded
+    private void cacheItems(WalletDataDecl.ListResultTmpl<Response> r, int size) {
+        EntityCache cache = client_.getEntityCache();
+        if (cache == null)
+            return;
+
+        if (r.isUpdate() && r.removedIds() != null) {
+            for (Long id: r.removedIds())
+                cache.invalidate(getItemType(), id);
+        }
+
+        if (r instanceof IListResultView || r.items() == null || r.items().isEmpty())
+            return;
+
+        final int itemSize = size / r.items().size();
+        for (Response item: r.items()) {
+            if (EntityCache.isFinal(item))
+                cache.put(getItemType(), item, itemSize);
+        }
+    }
+
+    @Override
+    public void setLazyDecoding(boolean lazy) {
+        lazyDecoding_ = lazy;
+    }
+
+    @Override
+    public void setSnapshotCache(ListSnapshotCache cache) {
+        snapshotCache_ = cache;
+    }
+
     public void setCallback(IResponseCallback<WalletDataDecl.ListResultTmpl<Response>> cb) {
         cb_ = cb;
     }
@@ -48,6 +162,11 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
         // clear tx
         destroy();
 
+        // any of listed entities might have changed
+        EntityCache cache = client_.getEntityCache();
+        if (cache != null && Errors.TX_INVALIDATE.equals(code))
+            cache.invalidate(getItemType());
+
         if (cb_ != null)
             cb_.onError(code, message);
 
@@ -73,6 +192,8 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
             public void onResponse(IPluginData in) {
                 WalletDataDecl.ListResultTmpl<Response> r = getData(in);
                 if (r != null) {
+                    cacheItems(r, in.dataSize());
+                    resultsVersion_++;
                     results_.setValue(r);
                     if (cb_ != null)
                         cb_.onResponse(r);
@@ -154,6 +275,21 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
         // request stored to reload data in case of invalidation
         private Request request_;
 
+        // scroll velocity in items per ms and page round trip time,
+        // both smoothed, measured across data sources to size
+        // the prefetched pages
+        private double velocity_;
+        private double rttMs_;
+        private long lastLoadAfter_;
+
+        // pages of current data source to be stored in snapshot cache
+        private long snapshotKey_;
+        private List<WalletDataDecl.ListResultTmpl<Response>> snapshotPages_ = new ArrayList<>();
+
+        // page request ids aren't reused by new data sources, so
+        // late replies to the old ones are dropped as unexpected
+        private long nextRequestId_ = 1;
+
         private Pager(PagedList.Config config) {
             config_ = config;
 
@@ -168,7 +304,33 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
             });
         }
 
-        private void buildPagedList(){
+        private void onLoadAfter(int size) {
+            final long now = SystemClock.uptimeMillis();
+            if (lastLoadAfter_ != 0) {
+                final double v = (double)size / Math.max(1, now - lastLoadAfter_);
+                velocity_ = velocity_ * (1 - SMOOTHING) + v * SMOOTHING;
+            }
+            lastLoadAfter_ = now;
+        }
+
+        private void onRoundTrip(long ms) {
+            rttMs_ = rttMs_ > 0 ? rttMs_ * (1 - SMOOTHING) + ms * SMOOTHING : ms;
+        }
+
+        // items consumed while a page is in flight, w/ a margin,
+        // at least one page, at most MAX_PREFETCH_PAGES
+        private int aheadCount() {
+            final long n = Math.round(velocity_ * rttMs_ * 2);
+            return (int)Math.max(config_.pageSize, Math.min(n, config_.pageSize * MAX_PREFETCH_PAGES));
+        }
+
+        private void buildPagedList() {
+            buildPagedList(null, 0, 0);
+        }
+
+        // preloaded - items to start with instead of loading
+        // them, position and count are those of preloaded items
+        private void buildPagedList(Chunk preloaded, int position, int count){
             // get current cursor
             Long initializeKey = null;
             if (pagedList_.getValue() != null) {
@@ -178,9 +340,10 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
             // detach old datasource from list results
             if (currentDataSource_ != null)
                 results_.removeObserver(currentDataSource_);
+            snapshotPages_ = new ArrayList<>();
 
             // create new data source
-            currentDataSource_ = new DataSource();
+            currentDataSource_ = new DataSource(preloaded, position, count);
 
             // make datasource observe list results
             results_.observeForever(currentDataSource_);
@@ -202,6 +365,12 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                     .setInitialKey(initializeKey)
                     .build();
 
+            // nothing to wait for
+            if (preloaded != null) {
+                pagedList_.setValue(pagedList);
+                return;
+            }
+
             // make sure that the after loadInitial is finished,
             // pagedList is delivered to the adapter
             setCallback(new IResponseCallback<WalletDataDecl.ListResultTmpl<Response>>() {
@@ -219,6 +388,54 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
             });
         }
 
+        // patch loaded items w/ the update and rebuild the
+        // PagedList around them, w/o reloading the pages
+        private void applyUpdate(WalletDataDecl.ListResultTmpl<Response> update) {
+            List<Response> items = itemList(update);
+            long[] ids = itemIds(update, items);
+
+            // changed items are re-inserted at their new positions
+            Set<Long> changed = new HashSet<>();
+            if (update.removedIds() != null)
+                changed.addAll(update.removedIds());
+            for (long id: ids)
+                changed.add(id);
+
+            PickedItems<Response> loaded = new PickedItems<>();
+            List<Long> loadedIds = new ArrayList<>();
+            for (Chunk chunk: currentDataSource_.loaded_) {
+                for (int i = 0; i < chunk.ids.length; i++) {
+                    if (!changed.contains(chunk.ids[i])) {
+                        loaded.add(loaded.size(), chunk.items, i);
+                        loadedIds.add(chunk.ids[i]);
+                    }
+                }
+            }
+
+            // positions are ascending, each item is placed after
+            // it's predecessors, those outside the window are skipped
+            final int position = update.position();
+            List<Integer> positions = update.itemPositions();
+            for (int i = 0; positions != null && i < items.size() && i < positions.size(); i++) {
+                final int index = positions.get(i) - position;
+                if (index < 0)
+                    continue;
+                if (index > loaded.size())
+                    break;
+                loaded.add(index, items, i);
+                loadedIds.add(index, ids[i]);
+            }
+
+            long[] loadedIdArray = new long[loadedIds.size()];
+            for (int i = 0; i < loadedIdArray.length; i++)
+                loadedIdArray[i] = loadedIds.get(i);
+
+            Log.i("LI", "update " + items.size() + " removed " + (update.removedIds() != null ? update.removedIds().size() : 0)
+                    + " pos " + position + " c " + update.count());
+            buildPagedList(new Chunk(loaded, loadedIdArray), position,
+                    Math.max(update.count(), position + loaded.size()));
+        }
+
         @Override
         public LiveData<PagedList<Response>> pagedList() {
             return pagedList_;
@@ -232,9 +449,81 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                 throw new RuntimeException("Enable paging for the Pager");
 
             request_ = req;
+            if (snapshotCache_ != null) {
+                snapshotKey_ = snapshotCache_.key(req.withPage(null), getRequestType());
+                loadSnapshot();
+            }
             buildPagedList();
         }
 
+        // stored pages are read on the cache's thread, and shown
+        // unless live results or other request got there first
+        private void loadSnapshot() {
+            final Request req = request_;
+            final PagedList<Response> current = pagedList_.getValue();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            snapshotCache_.getPages(snapshotKey_, getResultType(), new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    handler.post(runnable);
+                }
+            }, new IResponseCallback<List<WalletDataDecl.ListResultTmpl<Response>>>() {
+                @Override
+                public void onResponse(List<WalletDataDecl.ListResultTmpl<Response>> pages) {
+                    if (request_ == req && pagedList_.getValue() == current)
+                        showSnapshot(pages);
+                }
+
+                @Override
+                public void onError(String code, String e) {
+                    // not called
+                }
+            });
+        }
+
+        // render the stored pages until live results arrive
+        private void showSnapshot(List<WalletDataDecl.ListResultTmpl<Response>> pages) {
+            if (pages == null || pages.isEmpty())
+                return;
+
+            List<Response> items = new ArrayList<>();
+            for (WalletDataDecl.ListResultTmpl<Response> p: pages) {
+                if (p.items() != null)
+                    items.addAll(p.items());
+            }
+
+            final int position = pages.get(0).position();
+            final int count = Math.max(pages.get(pages.size() - 1).count(), position + items.size());
+            Log.i("LI", "snapshot " + items.size() + " pos " + position + " c " + count);
+
+            Executor executor = new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    runnable.run();
+                }
+            };
+            pagedList_.setValue(new PagedList.Builder<Long, Response>(
+                    new SnapshotDataSource(items, position, count), config_)
+                    .setFetchExecutor(executor)
+                    .setNotifyExecutor(executor)
+                    .build());
+        }
+
+        // store the first pages of live results, lazy
+        // results are skipped as they aren't decoded
+        private void storeSnapshot(WalletDataDecl.ListResultTmpl<Response> res, boolean initial) {
+            if (snapshotCache_ == null || res instanceof IListResultView)
+                return;
+
+            if (initial)
+                snapshotPages_ = new ArrayList<>();
+            else if (snapshotPages_.isEmpty() || snapshotPages_.size() >= snapshotCache_.maxPages())
+                return;
+
+            snapshotPages_.add(res);
+            snapshotCache_.putPages(snapshotKey_, new ArrayList<>(snapshotPages_), getResultType());
+        }
+
         @Override
         public void invalidate() {
             buildPagedList();
@@ -247,6 +536,29 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                 return 0;
         }
 
+        private class PageRequest {
+            long id;
+            boolean after;
+            long sent;
+            ItemKeyedDataSource.LoadCallback<Response> callback;
+        }
+
+        // items delivered to PagedList or buffered, w/ their
+        // ids to read them w/o decoding lazy items
+        private class Chunk {
+            List<Response> items;
+            long[] ids;
+
+            Chunk(List<Response> items, long[] ids) {
+                this.items = items;
+                this.ids = ids;
+            }
+
+            Chunk subChunk(int from, int to) {
+                return new Chunk(items.subList(from, to), Arrays.copyOfRange(ids, from, to));
+            }
+        }
+
         private class DataSource
                 // data source to be used by PagedList
                 extends ItemKeyedDataSource<Long, Response>
@@ -254,32 +566,111 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                 implements Observer<WalletDataDecl.ListResultTmpl<Response>>
         {
 
+            // results up to this version were set before this data
+            // source was attached, they were applied by previous ones
+            private long version_ = resultsVersion_;
+
             private LoadInitialCallback<Response> initialCallback_;
-            private LoadCallback<Response> callback_;
             private int count_;
             private Runnable onStarted_;
 
+            // pages in flight by their request id, replies are routed
+            // by the echoed id, or by position if server doesn't echo it:
+            // after-pages start at or past the first received item
+            private Map<Long, PageRequest> pending_ = new HashMap<>();
+
+            // positions of the first and past-the-last received items
+            private int start_;
+            private int end_;
+
+            // after-pages are prefetched, items received ahead
+            // of PagedList's requests are buffered as chunks
+            private LoadCallback<Response> afterCallback_;
+            private int afterRequested_;
+            private boolean afterPending_;
+            private boolean afterEnd_;
+            private long lastAfterKey_;
+            private LinkedList<Chunk> buffer_ = new LinkedList<>();
+            private int bufferSize_;
+
+            // chunks of items delivered to PagedList, in order
+            private LinkedList<Chunk> loaded_ = new LinkedList<>();
+
+            // keyset cursors of the first and last received items, sent
+            // instead of ids if server returned them, dropped on updates
+            // as sort values of the boundary items might have changed
+            private long firstKey_;
+            private String firstCursor_;
+            private String lastCursor_;
+
+            // set if started w/ known items instead of loading
+            private Chunk preloaded_;
+            private int preloadedPosition_;
+            private int preloadedCount_;
+
+            DataSource(Chunk preloaded, int position, int count) {
+                preloaded_ = preloaded;
+                preloadedPosition_ = position;
+                preloadedCount_ = count;
+            }
+
             void setOnStarted(Runnable onStarted) {
                 onStarted_ = onStarted;
             }
 
             @Override
             public void onChanged(WalletDataDecl.ListResultTmpl<Response> res) {
+                // observeForever redelivers the last value, applying
+                // it again would rebuild the list over and over
+                if (resultsVersion_ <= version_)
+                    return;
+                version_ = resultsVersion_;
+
                 count_ = res.count();
 
-                if (initialCallback_ != null) {
-                    Log.i("LI", "res " + res.items().size() + " pos " + res.position() + " c " + res.count());
+                List<Response> items = itemList(res);
+                if (res.isUpdate()) {
+                    // changes before the first page are in it already
+                    if (initialCallback_ == null) {
+                        firstCursor_ = null;
+                        lastCursor_ = null;
+                        applyUpdate(res);
+                    }
+                } else if (initialCallback_ != null) {
+                    Log.i("LI", "res " + items.size() + " pos " + res.position() + " c " + res.count());
                     LoadInitialCallback<Response> c = initialCallback_;
                     initialCallback_ = null;
 
-                    c.onResult(res.items(), res.position(), res.count());
-                } else {
-                    // only callable once
-                    if (callback_ != null) {
-                        LoadCallback<Response> c = callback_;
-                        callback_ = null;
+                    final long[] ids = itemIds(res, items);
+                    start_ = res.position();
+                    end_ = start_ + ids.length;
+                    if (ids.length > 0) {
+                        firstKey_ = ids[0];
+                        lastAfterKey_ = ids[ids.length - 1];
+                    }
+                    firstCursor_ = res.firstCursor();
+                    lastCursor_ = res.lastCursor();
 
-                        c.onResult(res.items());
+                    storeSnapshot(res, true);
+                    loaded_.add(new Chunk(items, ids));
+                    c.onResult(items, res.position(), res.count());
+                } else {
+                    PageRequest req = res.requestId() != 0
+                            ? pending_.remove(res.requestId())
+                            : matchByPosition(res);
+                    if (req == null) {
+                        Log.i("LI", "unexpected page " + res.requestId() + " pos " + res.position());
+                    } else if (req.after) {
+                        onAfterPage(res, items, req);
+                    } else {
+                        final long[] ids = itemIds(res, items);
+                        start_ = res.position();
+                        if (ids.length > 0) {
+                            firstKey_ = ids[0];
+                            firstCursor_ = res.firstCursor();
+                        }
+                        loaded_.addFirst(new Chunk(items, ids));
+                        req.callback.onResult(items);
                     }
                 }
 
@@ -289,6 +680,93 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                 }
             }
 
+            // oldest pending request of the direction of the reply
+            private PageRequest matchByPosition(WalletDataDecl.ListResultTmpl<Response> res) {
+                final boolean after = res.position() >= start_;
+                long id = 0;
+                for (PageRequest req: pending_.values()) {
+                    if (req.after == after && (id == 0 || req.id < id))
+                        id = req.id;
+                }
+                return id != 0 ? pending_.remove(id) : null;
+            }
+
+            private void send(PageRequest req, WalletData.ListPage page) {
+                req.id = nextRequestId_++;
+                req.sent = SystemClock.uptimeMillis();
+                pending_.put(req.id, req);
+
+                // ask plugin
+                loadMore(page.toBuilder().setRequestId(req.id).build());
+            }
+
+            private void onAfterPage(WalletDataDecl.ListResultTmpl<Response> res, List<Response> items, PageRequest req) {
+                afterPending_ = false;
+                onRoundTrip(SystemClock.uptimeMillis() - req.sent);
+
+                storeSnapshot(res, false);
+                if (items.isEmpty()) {
+                    afterEnd_ = true;
+                } else {
+                    final long[] ids = itemIds(res, items);
+                    buffer_.add(new Chunk(items, ids));
+                    bufferSize_ += ids.length;
+                    end_ = res.position() + ids.length;
+                    lastAfterKey_ = ids[ids.length - 1];
+                    lastCursor_ = res.lastCursor();
+                }
+
+                deliverAfter();
+                prefetchAfter();
+            }
+
+            // serve the waiting loadAfter from the buffer, a single
+            // chunk at most to keep lazy items undecoded
+            private void deliverAfter() {
+                if (afterCallback_ == null || (buffer_.isEmpty() && !afterEnd_))
+                    return;
+
+                Chunk page = new Chunk(new ArrayList<Response>(), new long[0]);
+                if (!buffer_.isEmpty()) {
+                    Chunk chunk = buffer_.poll();
+                    final int n = Math.min(afterRequested_, chunk.ids.length);
+                    page = chunk.subChunk(0, n);
+                    if (n < chunk.ids.length)
+                        buffer_.addFirst(chunk.subChunk(n, chunk.ids.length));
+                    bufferSize_ -= n;
+                }
+
+                LoadCallback<Response> c = afterCallback_;
+                afterCallback_ = null;
+                if (page.ids.length > 0)
+                    loaded_.add(page);
+                c.onResult(page.items);
+            }
+
+            // keep enough items buffered to cover the
+            // consumption while next page is in flight
+            private void prefetchAfter() {
+                if (afterPending_ || afterEnd_ || velocity_ <= 0)
+                    return;
+
+                if (bufferSize_ < aheadCount())
+                    requestAfter(lastAfterKey_);
+            }
+
+            private void requestAfter(long key) {
+                afterPending_ = true;
+
+                // buffered, not bound to a callback
+                PageRequest req = new PageRequest();
+                req.after = true;
+
+                send(req, WalletData.ListPage.builder()
+                        .setCount(aheadCount())
+                        .setAfterId(key)
+                        .setAfterCursor(key == lastAfterKey_ ? lastCursor_ : null)
+                        .build());
+            }
+
             @Override
             public void loadInitial(@NonNull LoadInitialParams<Long> params, @NonNull final LoadInitialCallback<Response> callback) {
                 if (request_ == null) {
@@ -296,6 +774,21 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                     return;
                 }
 
+                if (preloaded_ != null) {
+                    final long[] ids = preloaded_.ids;
+                    start_ = preloadedPosition_;
+                    end_ = start_ + ids.length;
+                    if (ids.length > 0) {
+                        firstKey_ = ids[0];
+                        lastAfterKey_ = ids[ids.length - 1];
+                    }
+                    count_ = preloadedCount_;
+                    loaded_.add(preloaded_);
+                    callback.onResult(preloaded_.items, preloadedPosition_, preloadedCount_);
+                    preloaded_ = null;
+                    return;
+                }
+
                 // save callback
                 initialCallback_ = callback;
 
@@ -303,6 +796,7 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
                 Request pagedRequest = (Request)request_.withPage(WalletData.ListPage.builder()
                         .setCount(params.requestedLoadSize)
                         .setAroundId(params.requestedInitialKey != null ? params.requestedInitialKey : 0)
+                        .setAcceptUpdates(true)
                         .build());
 
                 load(pagedRequest);
@@ -310,32 +804,34 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
 
             @Override
             public void loadAfter(@NonNull LoadParams<Long> params, @NonNull LoadCallback<Response> callback) {
+                onLoadAfter(params.requestedLoadSize);
+
                 // save callback
-                callback_ = callback;
+                afterCallback_ = callback;
+                afterRequested_ = params.requestedLoadSize;
 
-                // request page
-                WalletData.ListPage page = WalletData.ListPage.builder()
-                        .setCount(params.requestedLoadSize)
-                        .setAfterId(params.key != null ? params.key : 0)
-                        .build();
+                if (buffer_.isEmpty() && !afterPending_ && !afterEnd_) {
+                    requestAfter(params.key != null ? params.key : 0);
+                    return;
+                }
 
-                // ask plugin
-                loadMore(page);
+                deliverAfter();
+                prefetchAfter();
             }
 
             @Override
             public void loadBefore(@NonNull LoadParams<Long> params, @NonNull LoadCallback<Response> callback) {
                 // save callback
-                callback_ = callback;
+                PageRequest req = new PageRequest();
+                req.callback = callback;
 
                 // request page
-                WalletData.ListPage page = WalletData.ListPage.builder()
+                final long key = params.key != null ? params.key : 0;
+                send(req, WalletData.ListPage.builder()
                         .setCount(params.requestedLoadSize)
-                        .setBeforeId(params.key != null ? params.key : 0)
-                        .build();
-
-                // ask plugin
-                loadMore(page);
+                        .setBeforeId(key)
+                        .setBeforeCursor(key == firstKey_ ? firstCursor_ : null)
+                        .build());
             }
 
             @NonNull
@@ -346,6 +842,41 @@ abstract class  ListData<Request extends WalletData.ListRequestBase, Response ex
 
         }
 
+        // serves stored pages, doesn't load more
+        private class SnapshotDataSource extends ItemKeyedDataSource<Long, Response> {
+
+            private List<Response> items_;
+            private int position_;
+            private int count_;
+
+            SnapshotDataSource(List<Response> items, int position, int count) {
+                items_ = items;
+                position_ = position;
+                count_ = count;
+            }
+
+            @Override
+            public void loadInitial(@NonNull LoadInitialParams<Long> params, @NonNull LoadInitialCallback<Response> callback) {
+                callback.onResult(items_, position_, count_);
+            }
+
+            @Override
+            public void loadAfter(@NonNull LoadParams<Long> params, @NonNull LoadCallback<Response> callback) {
+                callback.onResult(new ArrayList<Response>());
+            }
+
+            @Override
+            public void loadBefore(@NonNull LoadParams<Long> params, @NonNull LoadCallback<Response> callback) {
+                callback.onResult(new ArrayList<Response>());
+            }
+
+            @NonNull
+            @Override
+            public Long getKey(@NonNull Response item) {
+                return item.id();
+            }
+        }
+
     }
 
 }
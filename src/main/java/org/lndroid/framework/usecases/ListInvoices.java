@@ -1,12 +1,9 @@
 package org.lndroid.framework.usecases;
 
-import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.lndroid.framework.WalletData;
-import org.lndroid.framework.WalletDataDecl;
 import org.lndroid.framework.client.IPluginClient;
-import org.lndroid.framework.common.IPluginData;
 import org.lndroid.framework.common.DefaultPlugins;
 
 public class ListInvoices extends ListData<WalletData.ListInvoicesRequest, WalletData.Invoice> {
@@ -15,13 +12,13 @@ public class ListInvoices extends ListData<WalletData.ListInvoicesRequest, Walle
     }
 
     @Override
-    protected WalletDataDecl.ListResultTmpl<WalletData.Invoice> getData(IPluginData in) {
-        in.assignDataType(WalletData.ListInvoicesResult.class);
-        try {
-            return in.getData();
-        } catch (IOException e) {
-            return null;
-        }
+    protected Type getResultType() {
+        return WalletData.ListInvoicesResult.class;
+    }
+
+    @Override
+    protected Type getItemType() {
+        return WalletData.Invoice.class;
     }
 
     @Override
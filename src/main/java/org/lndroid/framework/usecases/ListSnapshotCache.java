@@ -0,0 +1,369 @@
+package org.lndroid.framework.usecases;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.lndroid.framework.IResponseCallback;
+import org.lndroid.framework.WalletDataDecl;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.PluginData;
+
+// on-disk cache of the last pages of list requests, to render
+// lists instantly on cold start while live results are loading.
+// The file is append-only: a header followed by records
+// [len][key][crc][payload], last record of a key wins, records are
+// read through a memory mapping of the file. Each append is forced
+// to disk, a torn tail left by a crash fails the crc check and is
+// truncated on open. When the file outgrows it's budget live records
+// are copied to a temp file that replaces the old one by rename.
+// Header includes IPC version, files written by other versions are
+// discarded. Created on a background thread, as it scans the file,
+// the rest is thread-safe, reads and writes are done on it's own
+// thread so that UI thread never touches the disk.
+public class ListSnapshotCache {
+
+    private static final String TAG = "ListSnapshotCache";
+
+    private static final int MAGIC = 0x4c4e5343; // LNSC
+    private static final int FORMAT_VERSION = 1;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+    private static final long WRITER_KEEPALIVE_MS = 30000;
+
+    public static final int DEFAULT_MAX_PAGES = 2;
+
+    private File file_;
+    private int maxBytes_;
+    private int maxPages_;
+    private ICodecProvider codecProvider_;
+    private byte[] header_;
+
+    private RandomAccessFile raf_;
+    private FileChannel channel_;
+    // mapping of the file up to it's end at the time of mapping
+    private MappedByteBuffer map_;
+    // end of valid records
+    private long end_;
+    // key => payload offset and length
+    private Map<Long, long[]> index_ = new HashMap<>();
+    private long liveBytes_;
+
+    private ThreadPoolExecutor writer_ = new ThreadPoolExecutor(0, 1,
+            WRITER_KEEPALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+
+    public ListSnapshotCache(File file, int maxBytes, int maxPages, ICodecProvider codecProvider) {
+        file_ = file;
+        maxBytes_ = maxBytes;
+        maxPages_ = maxPages;
+        codecProvider_ = codecProvider;
+        header_ = createHeader();
+
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to open "+file_+": "+e);
+            close();
+        }
+    }
+
+    public ListSnapshotCache(File file, int maxBytes, ICodecProvider codecProvider) {
+        this(file, maxBytes, DEFAULT_MAX_PAGES, codecProvider);
+    }
+
+    private static byte[] createHeader() {
+        byte[] version = PluginData.IPC_CURRENT_VERSION.getBytes(Charset.forName("UTF-8"));
+        ByteBuffer b = ByteBuffer.allocate(4 + 4 + 4 + version.length);
+        b.putInt(MAGIC);
+        b.putInt(FORMAT_VERSION);
+        b.putInt(version.length);
+        b.put(version);
+        return b.array();
+    }
+
+    private void open() throws IOException {
+        raf_ = new RandomAccessFile(file_, "rw");
+        channel_ = raf_.getChannel();
+        if (!hasValidHeader()) {
+            Log.i(TAG, "resetting "+file_);
+            channel_.truncate(0);
+            channel_.write(ByteBuffer.wrap(header_), 0);
+            channel_.force(true);
+        }
+        scan();
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        if (channel_.size() < header_.length)
+            return false;
+
+        ByteBuffer b = ByteBuffer.allocate(header_.length);
+        channel_.read(b, 0);
+        return ByteBuffer.wrap(header_).equals((ByteBuffer)b.flip());
+    }
+
+    private static int crc(ByteBuffer b, int pos, int len) {
+        byte[] data = new byte[len];
+        ByteBuffer d = b.duplicate();
+        d.position(pos);
+        d.get(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int)crc.getValue();
+    }
+
+    private void remap() throws IOException {
+        map_ = channel_.map(FileChannel.MapMode.READ_ONLY, 0, end_);
+    }
+
+    // rebuild the index, truncate the torn tail if any
+    private void scan() throws IOException {
+        final long size = channel_.size();
+        map_ = channel_.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        index_.clear();
+        liveBytes_ = 0;
+
+        long pos = header_.length;
+        while (pos + RECORD_HEADER_SIZE <= size) {
+            final int len = map_.getInt((int)pos);
+            final long key = map_.getLong((int)pos + 4);
+            final int crc = map_.getInt((int)pos + 12);
+            final long payload = pos + RECORD_HEADER_SIZE;
+            if (len < 0 || payload + len > size || crc(map_, (int)payload, len) != crc)
+                break;
+
+            long[] prev = index_.put(key, new long[]{payload, len});
+            if (prev != null)
+                liveBytes_ -= prev[1];
+            liveBytes_ += len;
+            pos = payload + len;
+        }
+
+        end_ = pos;
+        if (end_ < size) {
+            Log.i(TAG, "truncating torn tail at "+end_+" size "+size);
+            channel_.truncate(end_);
+            channel_.force(true);
+            remap();
+        }
+    }
+
+    private void close() {
+        try {
+            if (raf_ != null)
+                raf_.close();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to close "+file_+": "+e);
+        }
+        raf_ = null;
+        channel_ = null;
+        map_ = null;
+        index_.clear();
+    }
+
+    // synchronous, on writer thread or in tests
+    synchronized byte[] get(long key) {
+        long[] entry = index_.get(key);
+        if (channel_ == null || entry == null)
+            return null;
+
+        try {
+            if (map_.capacity() < entry[0] + entry[1])
+                remap();
+
+            byte[] data = new byte[(int)entry[1]];
+            ByteBuffer b = map_.duplicate();
+            b.position((int)entry[0]);
+            b.get(data);
+            return data;
+        } catch (IOException e) {
+            Log.e(TAG, "failed to read "+file_+": "+e);
+            return null;
+        }
+    }
+
+    synchronized void put(long key, byte[] data) {
+        // a single snapshot should not flush the others
+        if (channel_ == null || data.length > maxBytes_ / 2)
+            return;
+
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+            b.putInt(data.length);
+            b.putLong(key);
+            b.putInt((int)crc.getValue());
+            b.put(data);
+            b.flip();
+
+            final long payload = end_ + RECORD_HEADER_SIZE;
+            while (b.hasRemaining())
+                channel_.write(b, end_ + b.position());
+            channel_.force(false);
+
+            end_ = payload + data.length;
+            long[] prev = index_.put(key, new long[]{payload, data.length});
+            if (prev != null)
+                liveBytes_ -= prev[1];
+            liveBytes_ += data.length;
+
+            if (end_ > maxBytes_)
+                compact();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write "+file_+": "+e);
+            close();
+        }
+    }
+
+    // copy live records to a new file, drop the oldest
+    // half of them if they don't fit into the budget
+    private void compact() throws IOException {
+        Log.i(TAG, "compacting "+file_+" size "+end_+" live "+liveBytes_);
+        if (map_.capacity() < end_)
+            remap();
+
+        List<long[]> live = new ArrayList<>(index_.values());
+        if (liveBytes_ + live.size() * RECORD_HEADER_SIZE > maxBytes_ / 2) {
+            // records are in the order of writing
+            Collections.sort(live, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return Long.compare(a[0], b[0]);
+                }
+            });
+            live = live.subList(live.size() / 2, live.size());
+        }
+
+        File tmp = new File(file_.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel c = out.getChannel();
+            c.truncate(0);
+            c.write(ByteBuffer.wrap(header_));
+            for (long[] r: live) {
+                ByteBuffer b = map_.duplicate();
+                b.position((int)r[0] - RECORD_HEADER_SIZE);
+                b.limit((int)(r[0] + r[1]));
+                while (b.hasRemaining())
+                    c.write(b);
+            }
+            c.force(true);
+        } finally {
+            out.close();
+        }
+
+        close();
+        if (!tmp.renameTo(file_))
+            throw new IOException("Failed to replace "+file_);
+        open();
+    }
+
+    public int maxPages() {
+        return maxPages_;
+    }
+
+    // key of the request w/o page
+    long key(Object request, Type type) {
+        ICodec<Object> c = codecProvider_.get(type);
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(c.encode(request));
+            return ByteBuffer.wrap(h).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // returns stored pages or null, reads the disk
+    <Item> List<WalletDataDecl.ListResultTmpl<Item>> getPages(long key, Type resultType) {
+        byte[] data = get(key);
+        if (data == null)
+            return null;
+
+        ICodec<WalletDataDecl.ListResultTmpl<Item>> c = codecProvider_.get(resultType);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            final int count = in.readInt();
+            List<WalletDataDecl.ListResultTmpl<Item>> pages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] page = new byte[in.readInt()];
+                in.readFully(page);
+                WalletDataDecl.ListResultTmpl<Item> r = c.decode(page);
+                if (r == null)
+                    return null;
+                pages.add(r);
+            }
+            return pages;
+        } catch (IOException e) {
+            Log.e(TAG, "bad snapshot: "+e);
+            return null;
+        }
+    }
+
+    // reads and decodes pages on the writer thread (after pending
+    // writes), cb gets them or null through the executor
+    <Item> void getPages(final long key, final Type resultType, final Executor executor,
+                         final IResponseCallback<List<WalletDataDecl.ListResultTmpl<Item>>> cb) {
+        writer_.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<WalletDataDecl.ListResultTmpl<Item>> pages = getPages(key, resultType);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        cb.onResponse(pages);
+                    }
+                });
+            }
+        });
+    }
+
+    // encodes and writes pages on the writer thread,
+    // pages must be immutable
+    <Item> void putPages(final long key, final List<WalletDataDecl.ListResultTmpl<Item>> pages, final Type resultType) {
+        writer_.execute(new Runnable() {
+            @Override
+            public void run() {
+                ICodec<WalletDataDecl.ListResultTmpl<Item>> c = codecProvider_.get(resultType);
+                try {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeInt(pages.size());
+                    for (WalletDataDecl.ListResultTmpl<Item> r: pages) {
+                        byte[] page = c.encode(r);
+                        out.writeInt(page.length);
+                        out.write(page);
+                    }
+                    out.flush();
+                    put(key, bytes.toByteArray());
+                } catch (IOException e) {
+                    Log.e(TAG, "failed to encode snapshot: "+e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,222 @@
+package org.lndroid.framework;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.lndroid.framework.common.AutoValueClass;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.PluginData;
+
+import static org.junit.Assert.*;
+
+// every @AutoValueClass type and some list types are encoded w/ both
+// codecs, binary round-trip must decode to the same value as the Gson
+// one. Values are compared by their Gson json, as plain classes and
+// byte[] map values have no equals.
+@RunWith(Parameterized.class)
+public class BinaryIpcCodecProviderTest {
+
+    private static final int MAX_DEPTH = 3;
+
+    private static final DefaultIpcCodecProvider gsonProvider_ = new DefaultIpcCodecProvider();
+    private static final BinaryIpcCodecProvider binaryProvider_ = new BinaryIpcCodecProvider();
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> types() {
+        List<Object[]> types = new ArrayList<>();
+        for (Class<?> c: WalletData.class.getDeclaredClasses()) {
+            if (c.getAnnotation(AutoValueClass.class) != null)
+                types.add(new Object[]{c.getSimpleName(), c});
+        }
+        types.add(new Object[]{"PluginMessage", PluginData.PluginMessage.class});
+        types.add(new Object[]{"ImmutableList<Invoice>",
+                new TypeToken<ImmutableList<WalletData.Invoice>>(){}.getType()});
+        types.add(new Object[]{"ImmutableList<RouteHint>",
+                new TypeToken<ImmutableList<WalletData.RouteHint>>(){}.getType()});
+        types.add(new Object[]{"ImmutableMap<Long, Payment>",
+                new TypeToken<ImmutableMap<Long, WalletData.Payment>>(){}.getType()});
+        return types;
+    }
+
+    private final Type type_;
+    private int seed_;
+
+    public BinaryIpcCodecProviderTest(String name, Type type) {
+        type_ = type;
+    }
+
+    // distinct values, w/ negative and multi-byte varints
+    private Object sample(Type type, int depth) throws Exception {
+        final int n = ++seed_;
+        if (type == long.class || type == Long.class)
+            return (n % 2 == 0 ? -1L : 1L) * n * 1000000007L;
+        if (type == int.class || type == Integer.class)
+            return (n % 2 == 0 ? -1 : 1) * n * 1009;
+        if (type == boolean.class || type == Boolean.class)
+            return n % 2 == 0;
+        if (type == double.class || type == Double.class)
+            return n + 0.5;
+        if (type == String.class || type == Object.class)
+            return "value-" + n + "-ü€";
+        if (type == byte[].class)
+            return new byte[]{(byte)n, 0, (byte)0xff};
+
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType)type;
+            Type[] args = pt.getActualTypeArguments();
+            if (pt.getRawType() == ImmutableList.class || pt.getRawType() == List.class) {
+                if (depth >= MAX_DEPTH)
+                    return ImmutableList.of();
+                return ImmutableList.of(sample(args[0], depth + 1), sample(args[0], depth + 1));
+            }
+            if (pt.getRawType() == ImmutableMap.class) {
+                if (depth >= MAX_DEPTH)
+                    return ImmutableMap.of();
+                return ImmutableMap.of(sample(args[0], depth + 1), sample(args[1], depth + 1));
+            }
+        }
+
+        Class<?> cls = (Class<?>)type;
+        if (cls.getAnnotation(AutoValueClass.class) != null)
+            return autoValue(cls, depth, false);
+        return plain(cls, depth);
+    }
+
+    // public fields of plain classes like Route
+    private Object plain(Class<?> cls, int depth) throws Exception {
+        Object v = cls.getDeclaredConstructor().newInstance();
+        for (Field f: cls.getFields()) {
+            if (!Modifier.isStatic(f.getModifiers()))
+                f.set(v, sample(f.getGenericType(), depth + 1));
+        }
+        return v;
+    }
+
+    // all properties set, or only the non-nullable ones
+    private Object autoValue(Class<?> cls, int depth, boolean nulls) throws Exception {
+        Method builder = cls.getMethod("builder");
+        builder.setAccessible(true);
+        Object b = builder.invoke(null);
+        TypeToken<?> token = TypeToken.of(cls);
+
+        for (Method m: cls.getMethods()) {
+            if (!Modifier.isAbstract(m.getModifiers()) || m.getParameterTypes().length != 0
+                    || m.getReturnType() == void.class || m.getName().equals("toBuilder"))
+                continue;
+
+            final String name = m.getName();
+            final String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Method setter = null;
+            for (Method s: b.getClass().getMethods()) {
+                if (s.getName().equals(setterName) && s.getParameterTypes().length == 1)
+                    setter = s;
+            }
+            assertNotNull("no setter for " + cls.getSimpleName() + "." + name, setter);
+            setter.setAccessible(true);
+
+            if (nulls && !m.getReturnType().isPrimitive()) {
+                // non-nullable properties reject null
+                try {
+                    setter.invoke(b, (Object)null);
+                    continue;
+                } catch (InvocationTargetException e) {
+                    if (!(e.getCause() instanceof NullPointerException))
+                        throw e;
+                }
+            }
+
+            // depth limit for recursive types
+            final Type propType = token.resolveType(m.getGenericReturnType()).getType();
+            setter.invoke(b, sample(propType, depth));
+        }
+
+        Method build = b.getClass().getMethod("build");
+        build.setAccessible(true);
+        Object v = build.invoke(b);
+        if (v instanceof PluginData.PluginMessage && !nulls) {
+            Field ipcData = PluginData.PluginMessage.class.getDeclaredField("ipcData_");
+            ipcData.setAccessible(true);
+            ipcData.set(v, new byte[]{1, 2, 3, (byte)0x80});
+        }
+        return v;
+    }
+
+    private void assertRoundTrip(Object value) {
+        ICodec<Object> gson = gsonProvider_.get(type_);
+        ICodec<Object> binary = binaryProvider_.get(type_);
+
+        final Object gsonDecoded = gson.decode(gson.encode(value));
+        final byte[] encoded = binary.encode(value);
+        final Object binaryDecoded = binary.decode(encoded);
+        assertNotNull(binaryDecoded);
+
+        final String expected = new String(gson.encode(gsonDecoded));
+        assertEquals(new String(gson.encode(value)), expected);
+        assertEquals(expected, new String(gson.encode(binaryDecoded)));
+
+        // binary decoded value encodes the same way
+        assertArrayEquals(encoded, binary.encode(binaryDecoded));
+    }
+
+    @Test
+    public void roundTrip_allPropertiesSet() throws Exception {
+        assertRoundTrip(sample(type_, 0));
+    }
+
+    @Test
+    public void roundTrip_nullableProperties() throws Exception {
+        if (!(type_ instanceof Class))
+            return;
+
+        Object value;
+        try {
+            value = autoValue((Class<?>)type_, 0, true);
+        } catch (InvocationTargetException e) {
+            // some types (User) require the nullable
+            // properties that match their role
+            if (e.getCause() instanceof IllegalArgumentException)
+                return;
+            throw e;
+        }
+        assertRoundTrip(value);
+    }
+
+    @Test
+    public void roundTrip_emptyLists() throws Exception {
+        seed_ = 0;
+        assertRoundTrip(sample(type_, MAX_DEPTH));
+    }
+
+    @Test
+    public void decode_rejectsMalformed() throws Exception {
+        ICodec<Object> binary = binaryProvider_.get(type_);
+        final byte[] encoded = binary.encode(sample(type_, 0));
+
+        // foreign format
+        assertNull(binary.decode(new byte[]{'{', '}'}));
+
+        // truncated
+        assertNull(binary.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+
+        // trailing bytes
+        byte[] longer = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, longer, 0, encoded.length);
+        assertNull(binary.decode(longer));
+    }
+}
@@ -0,0 +1,127 @@
+package org.lndroid.framework;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.PluginData;
+
+import static org.junit.Assert.*;
+
+public class DefaultIpcCodecProviderTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 200;
+
+    private static List<Type> testTypes() {
+        List<Type> types = new ArrayList<>(DefaultPlugins.DATA_TYPES);
+        types.add(PluginData.PluginMessage.class);
+        // not known in advance, created on demand
+        types.add(WalletData.Payment.class);
+        types.add(new TypeToken<ImmutableList<WalletData.Invoice>>(){}.getType());
+        types.add(new TypeToken<ImmutableList<String>>(){}.getType());
+        return types;
+    }
+
+    @Test
+    public void knownTypes_areCreatedInAdvance() {
+        DefaultIpcCodecProvider cp = new DefaultIpcCodecProvider();
+        for (Type type: DefaultPlugins.DATA_TYPES) {
+            ICodec<Object> c = cp.get(type);
+            assertNotNull(c);
+            assertSame(c, cp.get(type));
+        }
+    }
+
+    @Test
+    public void concurrentGet_returnsSingleCodecPerType() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final DefaultIpcCodecProvider cp = new DefaultIpcCodecProvider();
+            final List<Type> types = testTypes();
+            final CountDownLatch start = new CountDownLatch(1);
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Future<ICodec[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<ICodec[]>() {
+                    @Override
+                    public ICodec[] call() throws Exception {
+                        start.await();
+                        ICodec[] codecs = new ICodec[types.size()];
+                        // threads walk the types in different order
+                        for (int i = 0; i < types.size(); i++) {
+                            final int index = (i + offset) % types.size();
+                            codecs[index] = cp.get(types.get(index));
+                        }
+                        return codecs;
+                    }
+                }));
+            }
+
+            start.countDown();
+            List<ICodec[]> all = new ArrayList<>();
+            for (Future<ICodec[]> f: results)
+                all.add(f.get(10, TimeUnit.SECONDS));
+            executor.shutdown();
+
+            for (int i = 0; i < types.size(); i++) {
+                final ICodec c = cp.get(types.get(i));
+                assertNotNull("no codec for " + types.get(i), c);
+                for (ICodec[] codecs: all)
+                    assertSame("duplicate codec for " + types.get(i), c, codecs[i]);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentDecode_returnsEqualValues() throws Exception {
+        final DefaultIpcCodecProvider cp = new DefaultIpcCodecProvider();
+        final WalletData.Contact contact = WalletData.Contact.builder()
+                .setId(1)
+                .setPubkey("02abcdef")
+                .setName("Alice")
+                .setDescription("test")
+                .setUrl("https://example.com")
+                .setCreateTime(1000)
+                .setRouteHints(ImmutableList.<WalletData.RouteHint>of())
+                .build();
+        final byte[] data = cp.<WalletData.Contact>get(WalletData.Contact.class).encode(contact);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        ICodec<WalletData.Contact> c = cp.get(WalletData.Contact.class);
+                        if (!contact.equals(c.decode(data)))
+                            return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<Boolean> f: results)
+            assertTrue(f.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,153 @@
+package org.lndroid.framework.client;
+
+import org.junit.Test;
+
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
+
+import static org.junit.Assert.*;
+
+public class EntityCacheTest {
+
+    private static class Entity implements WalletDataDecl.EntityBase {
+        final long id;
+
+        Entity(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public long id() {
+            return id;
+        }
+    }
+
+    private static final Class<?> INVOICE = WalletData.Invoice.class;
+    private static final Class<?> PAYMENT = WalletData.Payment.class;
+
+    @Test
+    public void get_returnsPutEntity() {
+        EntityCache c = new EntityCache(1000);
+        Entity e = new Entity(1);
+        c.put(INVOICE, e, 100);
+
+        assertSame(e, c.get(INVOICE, 1));
+        assertNull(c.get(INVOICE, 2));
+        // same id of another type
+        assertNull(c.get(PAYMENT, 1));
+        assertEquals(1, c.hits());
+        assertEquals(2, c.misses());
+        assertEquals(100, c.size());
+    }
+
+    @Test
+    public void put_replacesEntity() {
+        EntityCache c = new EntityCache(1000);
+        c.put(INVOICE, new Entity(1), 100);
+        Entity e = new Entity(1);
+        c.put(INVOICE, e, 300);
+
+        assertSame(e, c.get(INVOICE, 1));
+        assertEquals(300, c.size());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        EntityCache c = new EntityCache(300);
+        c.put(INVOICE, new Entity(1), 100);
+        c.put(INVOICE, new Entity(2), 100);
+        c.put(INVOICE, new Entity(3), 100);
+
+        // 1 is now more recent than 2
+        assertNotNull(c.get(INVOICE, 1));
+        c.put(INVOICE, new Entity(4), 100);
+
+        assertNull(c.get(INVOICE, 2));
+        assertNotNull(c.get(INVOICE, 1));
+        assertNotNull(c.get(INVOICE, 3));
+        assertNotNull(c.get(INVOICE, 4));
+        assertEquals(1, c.evictions());
+        assertEquals(300, c.size());
+
+        // large entity pushes out all others
+        c.put(PAYMENT, new Entity(1), 250);
+        assertEquals(4, c.evictions());
+        assertEquals(250, c.size());
+        assertNotNull(c.get(PAYMENT, 1));
+        assertNull(c.get(INVOICE, 4));
+    }
+
+    @Test
+    public void put_unknownSizeUsesDefault() {
+        EntityCache c = new EntityCache(10000);
+        c.put(INVOICE, new Entity(1), 0);
+        assertTrue(c.size() > 0);
+    }
+
+    @Test
+    public void invalidate_entity() {
+        EntityCache c = new EntityCache(1000);
+        c.put(INVOICE, new Entity(1), 100);
+        c.put(INVOICE, new Entity(2), 100);
+
+        c.invalidate(INVOICE, 1);
+        assertNull(c.get(INVOICE, 1));
+        assertNotNull(c.get(INVOICE, 2));
+        assertEquals(100, c.size());
+        assertEquals(0, c.evictions());
+    }
+
+    @Test
+    public void invalidate_type() {
+        EntityCache c = new EntityCache(1000);
+        c.put(INVOICE, new Entity(1), 100);
+        c.put(INVOICE, new Entity(2), 100);
+        c.put(PAYMENT, new Entity(1), 100);
+
+        c.invalidate(INVOICE);
+        assertNull(c.get(INVOICE, 1));
+        assertNull(c.get(INVOICE, 2));
+        assertNotNull(c.get(PAYMENT, 1));
+
+        // entities put after invalidation are valid
+        Entity e = new Entity(1);
+        c.put(INVOICE, e, 100);
+        assertSame(e, c.get(INVOICE, 1));
+    }
+
+    @Test
+    public void clear_dropsAll() {
+        EntityCache c = new EntityCache(1000);
+        c.put(INVOICE, new Entity(1), 100);
+        c.invalidate(PAYMENT);
+        c.clear();
+        assertNull(c.get(INVOICE, 1));
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void isFinal_byEntityState() {
+        assertFalse(EntityCache.isFinal(WalletData.Invoice.builder()
+                .setState(WalletData.INVOICE_STATE_OPEN).build()));
+        assertFalse(EntityCache.isFinal(WalletData.Invoice.builder()
+                .setState(WalletData.INVOICE_STATE_ACCEPTED).build()));
+        assertTrue(EntityCache.isFinal(WalletData.Invoice.builder()
+                .setState(WalletData.INVOICE_STATE_SETTLED).build()));
+        assertTrue(EntityCache.isFinal(WalletData.Invoice.builder()
+                .setState(WalletData.INVOICE_STATE_CANCELED).build()));
+
+        assertFalse(EntityCache.isFinal(WalletData.Channel.builder()
+                .setState(WalletData.CHANNEL_STATE_OPEN).build()));
+        assertTrue(EntityCache.isFinal(WalletData.Channel.builder()
+                .setState(WalletData.CHANNEL_STATE_CLOSED).build()));
+
+        assertFalse(EntityCache.isFinal(WalletData.SendPayment.builder()
+                .setState(WalletData.SEND_PAYMENT_STATE_SENDING).build()));
+        assertTrue(EntityCache.isFinal(WalletData.SendPayment.builder()
+                .setState(WalletData.SEND_PAYMENT_STATE_OK).build()));
+
+        assertTrue(EntityCache.isFinal(WalletData.Contact.builder().build()));
+        assertFalse(EntityCache.isFinal(new Entity(1)));
+        assertFalse(EntityCache.isFinal(null));
+    }
+}
@@ -0,0 +1,76 @@
+package org.lndroid.framework.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static long us(long us) {
+        return us * 1000;
+    }
+
+    @Test
+    public void empty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.averageUs());
+        assertEquals(0, h.maxUs());
+        assertEquals(0, h.percentileUs(50));
+    }
+
+    @Test
+    public void record_powerOfTwoBuckets() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(us(0));
+        h.record(us(LatencyHistogram.BASE_US - 1));
+        h.record(us(LatencyHistogram.BASE_US));
+        h.record(us(LatencyHistogram.BASE_US * 3));
+        // negative ones are clock glitches
+        h.record(-1);
+
+        assertEquals(3, h.bucketCount(0));
+        assertEquals(1, h.bucketCount(1));
+        assertEquals(1, h.bucketCount(2));
+        assertEquals(5, h.count());
+        assertEquals(LatencyHistogram.BASE_US * 3, h.maxUs());
+        assertEquals((LatencyHistogram.BASE_US - 1 + LatencyHistogram.BASE_US * 4) / 5, h.averageUs());
+    }
+
+    @Test
+    public void record_lastBucketIsUnbounded() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(us(LatencyHistogram.bucketLimitUs(LatencyHistogram.BUCKETS - 2)));
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.bucketCount(LatencyHistogram.BUCKETS - 1));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketLimitUs(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void percentile_isBucketLimitCappedByMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 90; i++)
+            h.record(us(10));
+        for (int i = 0; i < 10; i++)
+            h.record(us(1000));
+
+        assertEquals(LatencyHistogram.BASE_US, h.percentileUs(50));
+        assertEquals(LatencyHistogram.BASE_US, h.percentileUs(90));
+        // bucket limit is 2000, capped by max
+        assertEquals(1000, h.percentileUs(99));
+        assertEquals(1000, h.percentileUs(100));
+    }
+
+    @Test
+    public void copy_isSnapshot() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(us(10));
+        LatencyHistogram c = h.copy();
+        h.record(us(1000));
+
+        assertEquals(1, c.count());
+        assertEquals(1, c.bucketCount(0));
+        assertEquals(10, c.maxUs());
+        assertEquals(2, h.count());
+    }
+}
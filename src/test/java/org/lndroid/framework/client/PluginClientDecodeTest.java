@@ -0,0 +1,171 @@
+package org.lndroid.framework.client;
+
+import android.os.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IPluginData;
+import org.lndroid.framework.common.PluginData;
+import org.lndroid.framework.common.PluginUtils;
+
+import static org.junit.Assert.*;
+
+// Messages and Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class PluginClientDecodeTest {
+
+    private static final long WAIT_MS = 10000;
+    private static final ICodecProvider CODEC_PROVIDER = new DefaultIpcCodecProvider();
+    private static final ICodec<PluginData.PluginMessage> CODEC =
+            CODEC_PROVIDER.get(PluginData.PluginMessage.class);
+
+    // holds decoding of the slow tx until the test releases it
+    private static class SlowCodec implements ICodec<PluginData.PluginMessage> {
+        String slowTxId;
+        Semaphore permits = new Semaphore(0);
+        Semaphore decoded = new Semaphore(0);
+
+        @Override
+        public byte[] encode(PluginData.PluginMessage value) {
+            return CODEC.encode(value);
+        }
+
+        @Override
+        public PluginData.PluginMessage decode(byte[] data) {
+            PluginData.PluginMessage pm = CODEC.decode(data);
+            if (pm.txId().equals(slowTxId))
+                permits.acquireUninterruptibly();
+            decoded.release();
+            return pm;
+        }
+
+        void awaitDecoded(int count) throws InterruptedException {
+            assertTrue(decoded.tryAcquire(count, WAIT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private class Callback implements IPluginTransactionCallback {
+        final String txId;
+
+        Callback(String txId) {
+            this.txId = txId;
+        }
+
+        @Override
+        public void onResponse(IPluginData r) {
+            dispatched_.add(txId);
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+        }
+
+        @Override
+        public void onError(String code, String message) {
+        }
+    }
+
+    private SlowCodec codec_;
+    private List<String> dispatched_;
+    private PluginClient client_;
+
+    @Before
+    public void setUp() {
+        // like a real looper, posted runnables run on idle
+        ShadowLooper.pauseMainLooper();
+        codec_ = new SlowCodec();
+        dispatched_ = new ArrayList<>();
+        client_ = new PluginClient(WalletData.UserIdentity.create(1, "org.lndroid.app", ""),
+                null, true, new ICodecProvider() {
+                    @Override
+                    public <T> ICodec<T> get(Type type) {
+                        if (type == PluginData.PluginMessage.class)
+                            return (ICodec<T>)codec_;
+                        return CODEC_PROVIDER.get(type);
+                    }
+                }, "org.lndroid.wallet", "org.lndroid.wallet.IPCService", "",
+                2, 0, 0, false, false, null, false, 100, false,
+                new TxIdGenerator(), null);
+    }
+
+    @After
+    public void tearDown() {
+        // let the decoder threads go
+        codec_.permits.release(100);
+    }
+
+    private void receiveReply(String txId) {
+        client_.createTransaction(DefaultPlugins.GET_INVOICE, txId, new Callback(txId));
+
+        PluginData.PluginMessage pm = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setPluginId(DefaultPlugins.GET_INVOICE)
+                .setTxId(txId)
+                .build();
+        pm.assignData(WalletData.Invoice.builder().setId(1).build(), WalletData.Invoice.class);
+
+        Message m = Message.obtain(null, PluginData.MESSAGE_WHAT_IPC_TX);
+        m.setData(PluginUtils.encodePluginMessageIpc(pm, CODEC_PROVIDER, CODEC));
+        client_.handleMessage(m);
+    }
+
+    @Test
+    public void decode_dispatchesInArrivalOrder() throws Exception {
+        codec_.slowTxId = "tx0";
+        receiveReply("tx0");
+        receiveReply("tx1");
+        receiveReply("tx2");
+
+        // later ones are decoded first and wait for their turn
+        codec_.awaitDecoded(2);
+        ShadowLooper.idleMainLooper();
+        assertTrue(dispatched_.isEmpty());
+
+        codec_.permits.release();
+        codec_.awaitDecoded(1);
+        final long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (dispatched_.size() < 3) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList("tx0", "tx1", "tx2"), dispatched_);
+    }
+
+    @Test
+    public void decode_slowLastMessageDoesntHoldEarlierOnes() throws Exception {
+        codec_.slowTxId = "tx1";
+        receiveReply("tx0");
+        receiveReply("tx1");
+
+        codec_.awaitDecoded(1);
+        final long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (dispatched_.isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList("tx0"), dispatched_);
+    }
+}
@@ -0,0 +1,153 @@
+package org.lndroid.framework.client;
+
+import android.content.ComponentName;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.Errors;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.IPluginData;
+import org.lndroid.framework.common.PluginData;
+import org.lndroid.framework.common.PluginUtils;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+// Messengers and Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class PluginClientReconnectTest {
+
+    private static final String PACKAGE = "org.lndroid.wallet";
+    private static final String SERVICE = "org.lndroid.wallet.IPCService";
+    private static final ComponentName COMPONENT = new ComponentName(PACKAGE, SERVICE);
+
+    private static final ICodec<PluginData.PluginMessage> CODEC =
+            new DefaultIpcCodecProvider().get(PluginData.PluginMessage.class);
+
+    private static class Callback implements IPluginTransactionCallback {
+        List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onResponse(IPluginData r) {
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+        }
+
+        @Override
+        public void onError(String code, String message) {
+            errors.add(code);
+        }
+    }
+
+    private List<PluginData.PluginMessage> received_;
+    private Messenger server_;
+    private PluginClient client_;
+
+    @Before
+    public void setUp() {
+        received_ = new ArrayList<>();
+        server_ = new Messenger(new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                received_.add(PluginUtils.decodePluginMessageIpc(msg.getData(), CODEC));
+            }
+        });
+        shadowOf(RuntimeEnvironment.application).setComponentNameAndServiceForBindService(
+                COMPONENT, server_.getBinder());
+
+        client_ = new PluginClient(WalletData.UserIdentity.create(1, "org.lndroid.app", ""),
+                null, true, new DefaultIpcCodecProvider(), PACKAGE, SERVICE, "",
+                0, 0, 0, false, false, null, false, 100, true,
+                new TxIdGenerator(), null);
+        client_.connect(RuntimeEnvironment.application);
+        ShadowLooper.idleMainLooper();
+    }
+
+    private ServiceConnection connection() {
+        List<ServiceConnection> c = shadowOf(RuntimeEnvironment.application).getBoundServiceConnections();
+        return c.get(c.size() - 1);
+    }
+
+    private IPluginTransaction start(String txId, WalletData.ListPage page, Callback cb) {
+        IPluginTransaction tx = client_.createTransaction(DefaultPlugins.LIST_INVOICES, txId, cb);
+        tx.start(WalletData.ListInvoicesRequest.builder().setNoAuth(true).setPage(page).build(),
+                WalletData.ListInvoicesRequest.class);
+        return tx;
+    }
+
+    private List<String> receivedTxIds() {
+        List<String> ids = new ArrayList<>();
+        for (PluginData.PluginMessage pm: received_)
+            ids.add(pm.txId() + " " + pm.type());
+        return ids;
+    }
+
+    @Test
+    public void reconnect_restartsReadsInvalidatesPaged() {
+        Callback readCb = new Callback();
+        IPluginTransaction read = start("read", null, readCb);
+        Callback pagedCb = new Callback();
+        IPluginTransaction paged = start("paged", WalletData.ListPage.builder().setCount(10).build(), pagedCb);
+        // page in flight when server is lost
+        paged.send(WalletData.ListPage.builder().setCount(10).setAfterId(5).setRequestId(1).build(),
+                WalletData.ListPage.class);
+        ShadowLooper.idleMainLooper();
+        assertEquals(Arrays.asList("read start", "paged start", "paged req"), receivedTxIds());
+        received_.clear();
+
+        ServiceConnection c = connection();
+        c.onServiceDisconnected(COMPONENT);
+        assertTrue(readCb.errors.isEmpty());
+        assertTrue(pagedCb.errors.isEmpty());
+
+        c.onServiceConnected(COMPONENT, server_.getBinder());
+        ShadowLooper.idleMainLooper();
+
+        // new server tx would reply to the page by position
+        // or not at all, list is reloaded instead
+        assertEquals(Arrays.asList("read start"), receivedTxIds());
+        assertTrue(read.isActive());
+        assertTrue(readCb.errors.isEmpty());
+        assertFalse(paged.isActive());
+        assertEquals(Arrays.asList(Errors.TX_INVALIDATE), pagedCb.errors);
+    }
+
+    @Test
+    public void reconnect_sendsQueuedPagedStart() {
+        ServiceConnection c = connection();
+        c.onServiceDisconnected(COMPONENT);
+
+        Callback cb = new Callback();
+        IPluginTransaction paged = start("paged", WalletData.ListPage.builder().setCount(10).build(), cb);
+        c.onServiceConnected(COMPONENT, server_.getBinder());
+        ShadowLooper.idleMainLooper();
+
+        // server hasn't seen it before, nothing to invalidate
+        assertEquals(Arrays.asList("paged start"), receivedTxIds());
+        assertTrue(paged.isActive());
+        assertTrue(cb.errors.isEmpty());
+    }
+}
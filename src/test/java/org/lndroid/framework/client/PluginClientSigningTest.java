@@ -0,0 +1,354 @@
+package org.lndroid.framework.client;
+
+import android.content.ComponentName;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.Errors;
+import org.lndroid.framework.common.ICodec;
+import org.lndroid.framework.common.IIpcSigner;
+import org.lndroid.framework.common.IPluginData;
+import org.lndroid.framework.common.PluginData;
+import org.lndroid.framework.common.PluginUtils;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+// Messengers and Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class PluginClientSigningTest {
+
+    private static final long WAIT_MS = 10000;
+    private static final String PACKAGE = "org.lndroid.wallet";
+    private static final String SERVICE = "org.lndroid.wallet.IPCService";
+    private static final ComponentName COMPONENT = new ComponentName(PACKAGE, SERVICE);
+
+    private static final ICodec<PluginData.PluginMessage> CODEC =
+            new DefaultIpcCodecProvider().get(PluginData.PluginMessage.class);
+
+    // blocks until the test releases a signature
+    private static class FakeSigner implements IIpcSigner {
+        Semaphore permits = new Semaphore(0);
+        Semaphore entered = new Semaphore(0);
+        List<byte[]> signed = new ArrayList<>();
+
+        @Override
+        public String pubkey() {
+            return "02ab";
+        }
+
+        @Override
+        public byte[] sign(byte[] data) {
+            synchronized (signed) {
+                signed.add(data);
+            }
+            entered.release();
+            permits.acquireUninterruptibly();
+            return new byte[]{1, 2, 3};
+        }
+
+        void awaitEntered() throws InterruptedException {
+            assertTrue(entered.tryAcquire(WAIT_MS, TimeUnit.MILLISECONDS));
+        }
+
+        byte[] signed(int i) {
+            synchronized (signed) {
+                return signed.get(i);
+            }
+        }
+    }
+
+    private static class Callback implements IPluginTransactionCallback {
+        List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onResponse(IPluginData r) {
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+        }
+
+        @Override
+        public void onError(String code, String message) {
+            errors.add(code);
+        }
+    }
+
+    private List<Message> received_;
+    private Messenger server_;
+    private FakeSigner signer_;
+    private PluginClient client_;
+    private List<IPluginTransaction> txs_;
+    private List<Callback> callbacks_;
+
+    @Before
+    public void setUp() {
+        // like a real looper, posted runnables run on idle
+        ShadowLooper.pauseMainLooper();
+        received_ = new ArrayList<>();
+        server_ = new Messenger(new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                Message m = Message.obtain(null, msg.what);
+                m.setData(msg.getData());
+                received_.add(m);
+            }
+        });
+        shadowOf(RuntimeEnvironment.application).setComponentNameAndServiceForBindService(
+                COMPONENT, server_.getBinder());
+        signer_ = new FakeSigner();
+        txs_ = new ArrayList<>();
+        callbacks_ = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        // let the signer thread go
+        signer_.permits.release(100);
+    }
+
+    private void connect(boolean batching, boolean autoReconnect) {
+        client_ = new PluginClient(WalletData.UserIdentity.create(1, "org.lndroid.app", ""),
+                null, true, new DefaultIpcCodecProvider(), PACKAGE, SERVICE, "",
+                0, 0, 0, false, false, signer_, batching, 100, autoReconnect,
+                new TxIdGenerator(), null);
+        client_.connect(RuntimeEnvironment.application);
+        ShadowLooper.idleMainLooper();
+    }
+
+    private ServiceConnection connection() {
+        List<ServiceConnection> c = shadowOf(RuntimeEnvironment.application).getBoundServiceConnections();
+        return c.get(c.size() - 1);
+    }
+
+    // tx ids are the order of starts
+    private String start() {
+        return start(DefaultPlugins.LIST_INVOICES, WalletData.ListInvoicesRequest.builder().setNoAuth(true).build(),
+                WalletData.ListInvoicesRequest.class);
+    }
+
+    private String start(String pluginId, Object r, Class<?> type) {
+        Callback cb = new Callback();
+        IPluginTransaction tx = client_.createTransaction(pluginId, "tx" + txs_.size(), cb);
+        tx.start(r, type);
+        ShadowLooper.idleMainLooper();
+        txs_.add(tx);
+        callbacks_.add(cb);
+        return tx.id();
+    }
+
+    // results of the signer thread are posted to our looper
+    private static void idleUntil(Callable<Boolean> done) throws Exception {
+        final long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!done.call()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(1);
+        }
+    }
+
+    private void idleUntilReceived(final int count) throws Exception {
+        idleUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return received_.size() >= count;
+            }
+        });
+    }
+
+    private static List<String> txIds(Message m) {
+        List<Bundle> bundles = m.what == PluginData.MESSAGE_WHAT_IPC_BATCH
+                ? PluginUtils.decodePluginMessageBatchIpc(m.getData())
+                : Arrays.asList(m.getData());
+        List<String> ids = new ArrayList<>();
+        for (Bundle b: bundles)
+            ids.add(PluginUtils.decodePluginMessageIpc(b, CODEC).txId());
+        return ids;
+    }
+
+    private static void assertSigned(Message m) {
+        assertEquals("02ab", m.getData().getString(PluginData.IPC_PUBKEY));
+        assertArrayEquals(new byte[]{1, 2, 3}, m.getData().getByteArray(PluginData.IPC_SIGNATURE));
+    }
+
+    @Test
+    public void signing_sendsInOrder() throws Exception {
+        connect(false, false);
+        start();
+        signer_.awaitEntered();
+        start();
+        start();
+
+        // nothing goes out before the head is signed
+        SystemClock.sleep(10);
+        ShadowLooper.idleMainLooper();
+        assertTrue(received_.isEmpty());
+
+        signer_.permits.release(3);
+        idleUntilReceived(3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(PluginData.MESSAGE_WHAT_IPC_TX, received_.get(i).what);
+            assertEquals(Arrays.asList("tx" + i), txIds(received_.get(i)));
+            assertSigned(received_.get(i));
+        }
+
+        PluginClientStats s = client_.getStats();
+        assertEquals(3, s.signatures);
+        assertEquals(3, s.signedMessages);
+        assertEquals(3, s.signLatency.count());
+        assertEquals(3, s.signDelay.count());
+        // queued ones waited for the first signature
+        assertTrue(s.signDelay.maxUs() >= 10000);
+    }
+
+    @Test
+    public void signing_mergesQueuedMessages() throws Exception {
+        connect(true, false);
+        start();
+        signer_.awaitEntered();
+        // queued up while signer was busy, flushed separately
+        start();
+        start();
+        assertTrue(received_.isEmpty());
+
+        signer_.permits.release(2);
+        idleUntilReceived(2);
+        assertEquals(PluginData.MESSAGE_WHAT_IPC_TX, received_.get(0).what);
+        assertEquals(Arrays.asList("tx0"), txIds(received_.get(0)));
+        assertSigned(received_.get(0));
+
+        // single signature covers the batch
+        Message batch = received_.get(1);
+        assertEquals(PluginData.MESSAGE_WHAT_IPC_BATCH, batch.what);
+        assertEquals(Arrays.asList("tx1", "tx2"), txIds(batch));
+        assertSigned(batch);
+        assertArrayEquals(PluginUtils.getSigningData(batch.getData()), signer_.signed(1));
+
+        PluginClientStats s = client_.getStats();
+        assertEquals(2, s.signatures);
+        assertEquals(3, s.signedMessages);
+        assertEquals(2, s.signLatency.count());
+        assertEquals(2, s.signDelay.count());
+    }
+
+    @Test
+    public void connectionLost_failsUnsentWithoutReconnect() throws Exception {
+        connect(false, false);
+        start();
+        signer_.awaitEntered();
+        start();
+
+        connection().onServiceDisconnected(COMPONENT);
+        for (Callback cb: callbacks_)
+            assertEquals(Arrays.asList(Errors.IPC_ERROR), cb.errors);
+        for (IPluginTransaction tx: txs_)
+            assertFalse(tx.isActive());
+
+        // late signature is dropped
+        signer_.permits.release(2);
+        idleUntil(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return client_.getStats().signLatency.count() == 1;
+            }
+        });
+        ShadowLooper.idleMainLooper();
+        assertTrue(received_.isEmpty());
+        assertEquals(0, client_.getStats().signatures);
+        assertEquals(1, signer_.signed.size());
+    }
+
+    @Test
+    public void connectionLost_resendsUnsentAfterReconnect() throws Exception {
+        connect(false, true);
+        start();
+        signer_.awaitEntered();
+        start();
+
+        ServiceConnection c = connection();
+        c.onServiceDisconnected(COMPONENT);
+        assertEquals(2, client_.getStats().queueSize);
+
+        c.onServiceConnected(COMPONENT, server_.getBinder());
+        signer_.permits.release(3);
+        idleUntilReceived(2);
+        assertEquals(Arrays.asList("tx0"), txIds(received_.get(0)));
+        assertEquals(Arrays.asList("tx1"), txIds(received_.get(1)));
+        assertSigned(received_.get(0));
+        assertSigned(received_.get(1));
+
+        for (Callback cb: callbacks_)
+            assertTrue(cb.errors.isEmpty());
+        assertEquals(0, client_.getStats().queueSize);
+        // first signature was made for the lost connection
+        assertEquals(2, client_.getStats().signatures);
+        assertEquals(3, signer_.signed.size());
+    }
+
+    @Test
+    public void connectionLost_reencodesBatchedAfterReconnect() throws Exception {
+        connect(true, true);
+        // interactive tx is failed on connection loss
+        start(DefaultPlugins.NEW_ADDRESS, WalletData.NewAddressRequest.create(0),
+                WalletData.NewAddressRequest.class);
+        signer_.awaitEntered();
+        start();
+        start();
+
+        // tx1 and tx2 are signed as a batch
+        signer_.permits.release(1);
+        idleUntilReceived(1);
+        signer_.awaitEntered();
+
+        ServiceConnection c = connection();
+        c.onServiceDisconnected(COMPONENT);
+        assertEquals(Arrays.asList(Errors.IPC_ERROR), callbacks_.get(0).errors);
+        assertEquals(2, client_.getStats().queueSize);
+
+        // tx1 is left alone in the queue
+        txs_.get(2).stop();
+        assertEquals(1, client_.getStats().queueSize);
+
+        c.onServiceConnected(COMPONENT, server_.getBinder());
+        signer_.permits.release(2);
+        idleUntilReceived(2);
+
+        // sent by itself w/ the headers the batch had stripped
+        Message m = received_.get(1);
+        assertEquals(PluginData.MESSAGE_WHAT_IPC_TX, m.what);
+        assertEquals(Arrays.asList("tx1"), txIds(m));
+        assertEquals(PluginData.IPC_CURRENT_VERSION, m.getData().getString(PluginData.IPC_VERSION));
+        assertTrue(m.getData().containsKey(PluginData.IPC_TIMESTAMP));
+        assertSigned(m);
+        assertArrayEquals(PluginUtils.getSigningData(m.getData()), signer_.signed(2));
+        assertTrue(callbacks_.get(1).errors.isEmpty());
+    }
+}
@@ -0,0 +1,194 @@
+package org.lndroid.framework.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.PluginData;
+
+import static org.junit.Assert.*;
+
+public class PluginMessageQueueTest {
+
+    // started w/o a client
+    private static class FakeTransaction extends PluginTransaction {
+        boolean active = true;
+
+        FakeTransaction(String pluginId, String txId) {
+            super(pluginId, null, txId, null, null);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    private List<FakeTransaction> txs_;
+
+    @Before
+    public void setUp() {
+        txs_ = new ArrayList<>();
+    }
+
+    private FakeTransaction tx(String pluginId, String txId) {
+        FakeTransaction tx = new FakeTransaction(pluginId, txId);
+        // queue only keeps weak refs
+        txs_.add(tx);
+        return tx;
+    }
+
+    private FakeTransaction read(String txId) {
+        return tx(DefaultPlugins.LIST_INVOICES, txId);
+    }
+
+    private FakeTransaction action(String txId) {
+        return tx(DefaultPlugins.SEND_PAYMENT, txId);
+    }
+
+    private static PluginMessageQueue.Entry entry(PluginTransaction tx, String type) {
+        return new PluginMessageQueue.Entry(tx, PluginData.PluginMessage.builder()
+                .setType(type)
+                .setPluginId(tx.pluginId())
+                .setTxId(tx.id())
+                .build());
+    }
+
+    private static List<String> drain(PluginMessageQueue q) {
+        List<String> r = new ArrayList<>();
+        PluginMessageQueue.Entry e;
+        while ((e = q.poll()) != null)
+            r.add(e.txId + " " + e.type);
+        return r;
+    }
+
+    @Test
+    public void poll_interactiveBeforeBackground() {
+        PluginMessageQueue q = new PluginMessageQueue(10);
+        assertNull(q.add(entry(read("r1"), PluginData.MESSAGE_TYPE_START)));
+        assertNull(q.add(entry(action("a1"), PluginData.MESSAGE_TYPE_START)));
+        assertNull(q.add(entry(read("r2"), PluginData.MESSAGE_TYPE_START)));
+        assertNull(q.add(entry(action("a2"), PluginData.MESSAGE_TYPE_START)));
+
+        assertEquals(4, q.size());
+        assertEquals(Arrays.asList("a1 start", "a2 start", "r1 start", "r2 start"), drain(q));
+        assertEquals(0, q.size());
+        assertNull(q.poll());
+    }
+
+    @Test
+    public void add_keepsRequestsOfTx() {
+        PluginMessageQueue q = new PluginMessageQueue(10);
+        FakeTransaction tx = read("r1");
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_START));
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_REQUEST));
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_REQUEST));
+
+        // each page is waited for
+        assertEquals(Arrays.asList("r1 start", "r1 req", "r1 req"), drain(q));
+        assertEquals(0, q.dropped());
+    }
+
+    @Test
+    public void add_stopRemovesUnsentTx() {
+        PluginMessageQueue q = new PluginMessageQueue(10);
+        FakeTransaction tx = read("r1");
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_START));
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_REQUEST));
+        q.add(entry(read("r2"), PluginData.MESSAGE_TYPE_START));
+        assertTrue(q.hasStart("r1"));
+
+        // server never heard of it
+        tx.active = false;
+        assertNull(q.add(entry(tx, PluginData.MESSAGE_TYPE_STOP)));
+        assertFalse(q.hasStart("r1"));
+        assertEquals(3, q.dropped());
+        assertEquals(Arrays.asList("r2 start"), drain(q));
+    }
+
+    @Test
+    public void add_stopOfSentTxIsQueued() {
+        PluginMessageQueue q = new PluginMessageQueue(10);
+        FakeTransaction tx = read("r1");
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_REQUEST));
+
+        // inactive tx still sends it's stop
+        tx.active = false;
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_STOP));
+        assertEquals(Arrays.asList("r1 stop"), drain(q));
+        assertEquals(1, q.dropped());
+    }
+
+    @Test
+    public void poll_dropsStale() {
+        PluginMessageQueue q = new PluginMessageQueue(10);
+        FakeTransaction tx = read("r1");
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_START));
+        q.add(entry(read("r2"), PluginData.MESSAGE_TYPE_START));
+
+        tx.active = false;
+        assertEquals(Arrays.asList("r2 start"), drain(q));
+        assertEquals(1, q.dropped());
+    }
+
+    @Test
+    public void add_evictsStaleFirst() {
+        PluginMessageQueue q = new PluginMessageQueue(2);
+        FakeTransaction tx = action("a1");
+        q.add(entry(read("r1"), PluginData.MESSAGE_TYPE_START));
+        q.add(entry(tx, PluginData.MESSAGE_TYPE_START));
+
+        tx.active = false;
+        assertNull(q.add(entry(read("r2"), PluginData.MESSAGE_TYPE_START)));
+        assertEquals(Arrays.asList("r1 start", "r2 start"), drain(q));
+        assertEquals(1, q.dropped());
+    }
+
+    @Test
+    public void add_evictsOldestBackground() {
+        PluginMessageQueue q = new PluginMessageQueue(2);
+        q.add(entry(read("r1"), PluginData.MESSAGE_TYPE_START));
+        q.add(entry(read("r2"), PluginData.MESSAGE_TYPE_START));
+
+        PluginMessageQueue.Entry evicted = q.add(entry(action("a1"), PluginData.MESSAGE_TYPE_START));
+        assertEquals("r1", evicted.txId);
+        assertEquals(Arrays.asList("a1 start", "r2 start"), drain(q));
+        assertEquals(1, q.dropped());
+    }
+
+    @Test
+    public void add_rejectsBackgroundIfFullOfInteractive() {
+        PluginMessageQueue q = new PluginMessageQueue(2);
+        q.add(entry(action("a1"), PluginData.MESSAGE_TYPE_START));
+        q.add(entry(action("a2"), PluginData.MESSAGE_TYPE_START));
+
+        PluginMessageQueue.Entry e = entry(read("r1"), PluginData.MESSAGE_TYPE_START);
+        assertSame(e, q.add(e));
+
+        // interactive one evicts the oldest interactive
+        PluginMessageQueue.Entry evicted = q.add(entry(action("a3"), PluginData.MESSAGE_TYPE_START));
+        assertEquals("a1", evicted.txId);
+        assertEquals(Arrays.asList("a2 start", "a3 start"), drain(q));
+        assertEquals(2, q.dropped());
+    }
+
+    @Test
+    public void stats() {
+        PluginMessageQueue q = new PluginMessageQueue(3);
+        for (int i = 0; i < 5; i++)
+            q.add(entry(read("r" + i), PluginData.MESSAGE_TYPE_START));
+
+        assertEquals(3, q.size());
+        assertEquals(3, q.maxSize());
+        assertEquals(2, q.dropped());
+
+        drain(q);
+        assertEquals(0, q.size());
+        // max since creation
+        assertEquals(3, q.maxSize());
+    }
+}
@@ -0,0 +1,310 @@
+package org.lndroid.framework.client;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.common.DefaultPlugins;
+import org.lndroid.framework.common.Errors;
+import org.lndroid.framework.common.IPluginData;
+import org.lndroid.framework.common.PluginData;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightPluginClientTest {
+
+    private static class FakeTransaction implements IPluginTransaction {
+        String pluginId;
+        String id;
+        IPluginTransactionCallback cb;
+        Object request;
+        boolean active;
+        int starts;
+        int stops;
+        boolean destroyed;
+
+        @Override
+        public String pluginId() {
+            return pluginId;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void start(Object r, Type type) {
+            start(r, type, 0);
+        }
+
+        @Override
+        public void start(Object r, Type type, long timeout) {
+            request = r;
+            active = true;
+            starts++;
+        }
+
+        @Override
+        public void send(Object r, Type type) {
+        }
+
+        @Override
+        public void stop() {
+            active = false;
+            stops++;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+
+        void reply(IPluginData r) {
+            cb.onResponse(r);
+        }
+
+        void fail(String code) {
+            active = false;
+            cb.onError(code, Errors.errorMessage(code));
+        }
+    }
+
+    private static class FakeClient implements IPluginClient {
+        List<FakeTransaction> txs = new ArrayList<>();
+
+        @Override
+        public IPluginTransaction createTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
+            FakeTransaction tx = new FakeTransaction();
+            tx.pluginId = pluginId;
+            tx.id = txId.isEmpty() ? "tx" + txs.size() : txId;
+            tx.cb = cb;
+            txs.add(tx);
+            return tx;
+        }
+
+        @Override
+        public void connect(Context ctx) {
+        }
+
+        @Override
+        public PluginClientStats getStats() {
+            return new PluginClientStats();
+        }
+
+        @Override
+        public EntityCache getEntityCache() {
+            return null;
+        }
+
+        // txs that were started
+        List<FakeTransaction> started() {
+            List<FakeTransaction> r = new ArrayList<>();
+            for (FakeTransaction tx: txs) {
+                if (tx.starts > 0)
+                    r.add(tx);
+            }
+            return r;
+        }
+    }
+
+    private static class Callback implements IPluginTransactionCallback {
+        List<IPluginData> responses = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onResponse(IPluginData r) {
+            responses.add(r);
+        }
+
+        @Override
+        public void onAuth(WalletData.AuthRequest r) {
+        }
+
+        @Override
+        public void onAuthed(WalletData.AuthResponse r) {
+        }
+
+        @Override
+        public void onError(String code, String message) {
+            errors.add(code);
+        }
+    }
+
+    private FakeClient client_;
+    private SingleFlightPluginClient sf_;
+
+    @Before
+    public void setUp() {
+        client_ = new FakeClient();
+        sf_ = new SingleFlightPluginClient(client_);
+    }
+
+    private static WalletData.GetRequestLong request(long id, boolean subscribe) {
+        return WalletData.GetRequestLong.builder()
+                .setId(id)
+                .setNoAuth(true)
+                .setSubscribe(subscribe)
+                .build();
+    }
+
+    private static PluginData.PluginMessage reply(String txId) {
+        return PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setPluginId(DefaultPlugins.GET_INVOICE)
+                .setTxId(txId)
+                .build();
+    }
+
+    private IPluginTransaction start(Callback cb, WalletData.GetRequestLong r) {
+        IPluginTransaction tx = sf_.createTransaction(DefaultPlugins.GET_INVOICE, "", cb);
+        tx.start(r, WalletData.GetRequestLong.class);
+        return tx;
+    }
+
+    @Test
+    public void identicalRequests_shareTransaction() {
+        Callback cb1 = new Callback();
+        Callback cb2 = new Callback();
+        Callback cb3 = new Callback();
+        IPluginTransaction t1 = start(cb1, request(1, false));
+        IPluginTransaction t2 = start(cb2, request(1, false));
+        IPluginTransaction t3 = start(cb3, request(1, false));
+
+        assertEquals(1, client_.started().size());
+        FakeTransaction tx = client_.started().get(0);
+        assertEquals(t1.id(), t2.id());
+        assertEquals(tx.id(), t3.id());
+        assertTrue(t2.isActive());
+
+        // unused txs of the joiners are released
+        for (FakeTransaction t: client_.txs) {
+            if (t != tx)
+                assertTrue(t.destroyed);
+        }
+
+        PluginData.PluginMessage r = reply(tx.id());
+        tx.reply(r);
+        assertSame(r, cb1.responses.get(0));
+        assertSame(r, cb2.responses.get(0));
+        assertSame(r, cb3.responses.get(0));
+
+        PluginClientStats s = sf_.getStats();
+        assertEquals(2, s.transactionsShared);
+        assertEquals(1, s.flights);
+    }
+
+    @Test
+    public void differentRequests_areNotShared() {
+        start(new Callback(), request(1, false));
+        start(new Callback(), request(2, false));
+        start(new Callback(), request(1, true));
+        assertEquals(3, client_.started().size());
+    }
+
+    @Test
+    public void authRequestsExplicitIdsAndInteractivePlugins_arePassedThrough() {
+        WalletData.GetRequestLong auth = WalletData.GetRequestLong.builder().setId(1L).build();
+        start(new Callback(), auth);
+        start(new Callback(), auth);
+
+        IPluginTransaction e1 = sf_.createTransaction(DefaultPlugins.GET_INVOICE, "explicit1", new Callback());
+        IPluginTransaction e2 = sf_.createTransaction(DefaultPlugins.GET_INVOICE, "explicit2", new Callback());
+        e1.start(request(1, false), WalletData.GetRequestLong.class);
+        e2.start(request(1, false), WalletData.GetRequestLong.class);
+        assertEquals("explicit1", e1.id());
+
+        IPluginTransaction i1 = sf_.createTransaction(DefaultPlugins.SEND_PAYMENT, "", new Callback());
+        IPluginTransaction i2 = sf_.createTransaction(DefaultPlugins.SEND_PAYMENT, "", new Callback());
+        i1.start(request(1, false), WalletData.GetRequestLong.class);
+        i2.start(request(1, false), WalletData.GetRequestLong.class);
+
+        assertEquals(6, client_.started().size());
+        assertEquals(0, sf_.getStats().transactionsShared);
+    }
+
+    @Test
+    public void stop_ofOneMember_keepsOthersSubscribed() {
+        Callback cb1 = new Callback();
+        Callback cb2 = new Callback();
+        IPluginTransaction t1 = start(cb1, request(1, true));
+        IPluginTransaction t2 = start(cb2, request(1, true));
+        FakeTransaction tx = client_.started().get(0);
+
+        t1.stop();
+        assertFalse(t1.isActive());
+        assertTrue(t2.isActive());
+        assertTrue(tx.isActive());
+        assertEquals(0, tx.stops);
+
+        tx.reply(reply(tx.id()));
+        assertEquals(0, cb1.responses.size());
+        assertEquals(1, cb2.responses.size());
+
+        // last member stops the shared tx
+        t2.stop();
+        assertEquals(1, tx.stops);
+        assertTrue(tx.destroyed);
+        assertEquals(0, sf_.getStats().flights);
+    }
+
+    @Test
+    public void destroy_ofFirstMember_keepsFlight() {
+        Callback cb2 = new Callback();
+        IPluginTransaction t1 = start(new Callback(), request(1, true));
+        start(cb2, request(1, true));
+        FakeTransaction tx = client_.started().get(0);
+
+        t1.destroy();
+        assertFalse(tx.destroyed);
+        tx.reply(reply(tx.id()));
+        assertEquals(1, cb2.responses.size());
+    }
+
+    @Test
+    public void join_replaysLastResponse() {
+        start(new Callback(), request(1, true));
+        FakeTransaction tx = client_.started().get(0);
+        PluginData.PluginMessage r = reply(tx.id());
+        tx.reply(r);
+
+        Callback late = new Callback();
+        start(late, request(1, true));
+        assertEquals(1, late.responses.size());
+        assertSame(r, late.responses.get(0));
+    }
+
+    @Test
+    public void error_endsFlightForAllMembers() {
+        Callback cb1 = new Callback();
+        Callback cb2 = new Callback();
+        IPluginTransaction t1 = start(cb1, request(1, true));
+        IPluginTransaction t2 = start(cb2, request(1, true));
+        FakeTransaction tx = client_.started().get(0);
+
+        tx.fail(Errors.TX_TIMEOUT);
+        assertEquals(Errors.TX_TIMEOUT, cb1.errors.get(0));
+        assertEquals(Errors.TX_TIMEOUT, cb2.errors.get(0));
+        assertFalse(t1.isActive());
+        assertFalse(t2.isActive());
+        assertTrue(tx.destroyed);
+        assertEquals(0, sf_.getStats().flights);
+
+        // restart gets a new flight
+        t1.start(request(1, true), WalletData.GetRequestLong.class);
+        assertEquals(2, client_.started().size());
+        assertTrue(t1.isActive());
+        assertNotEquals(tx.id(), t1.id());
+    }
+}
@@ -0,0 +1,227 @@
+package org.lndroid.framework.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 10;
+    // wheel has 512 slots
+    private static final long TURN_MS = 512 * TICK_MS;
+
+    private static class Timer extends TimerWheel.Node {
+        String name;
+        List<String> fired;
+        Runnable action;
+
+        Timer(String name, List<String> fired) {
+            this.name = name;
+            this.fired = fired;
+        }
+
+        @Override
+        void onTimeout() {
+            fired.add(name);
+            if (action != null)
+                action.run();
+        }
+    }
+
+    @Test
+    public void advance_firesOnDeadline() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        Timer a = new Timer("a", fired);
+        Timer b = new Timer("b", fired);
+        w.schedule(a, 1000, 50);
+        w.schedule(b, 1000, 100);
+        assertEquals(2, w.size());
+        assertTrue(a.isScheduled());
+
+        assertEquals(0, w.advance(1040));
+        assertTrue(fired.isEmpty());
+
+        assertEquals(1, w.advance(1050));
+        assertEquals(1, fired.size());
+        assertEquals("a", fired.get(0));
+        assertFalse(a.isScheduled());
+        assertEquals(1, w.size());
+
+        assertEquals(1, w.advance(1200));
+        assertEquals(2, fired.size());
+        assertEquals("b", fired.get(1));
+        assertTrue(w.isEmpty());
+    }
+
+    @Test
+    public void schedule_zeroDelayFiresOnNextTick() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        w.schedule(new Timer("a", fired), 1000, 0);
+        assertEquals(0, w.advance(1000));
+        assertEquals(1, w.advance(1010));
+    }
+
+    @Test
+    public void cancel_preventsFiring() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        Timer a = new Timer("a", fired);
+        Timer b = new Timer("b", fired);
+        Timer c = new Timer("c", fired);
+        // same slot, cancel from the middle of the list
+        w.schedule(a, 0, 100);
+        w.schedule(b, 0, 100);
+        w.schedule(c, 0, 100);
+        w.cancel(b);
+        w.cancel(b);
+        assertFalse(b.isScheduled());
+        assertEquals(2, w.size());
+
+        assertEquals(2, w.advance(100));
+        assertEquals(2, fired.size());
+        assertFalse(fired.contains("b"));
+    }
+
+    @Test
+    public void schedule_reschedulesScheduledNode() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        Timer a = new Timer("a", fired);
+        w.schedule(a, 0, 100);
+        w.schedule(a, 0, 300);
+        assertEquals(1, w.size());
+
+        assertEquals(0, w.advance(200));
+        assertEquals(1, w.advance(300));
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void onTimeout_cancelsOtherExpiredTimer() {
+        final TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        final Timer a = new Timer("a", fired);
+        final Timer b = new Timer("b", fired);
+        Runnable cancelOther = new Runnable() {
+            @Override
+            public void run() {
+                w.cancel(a);
+                w.cancel(b);
+            }
+        };
+        a.action = cancelOther;
+        b.action = cancelOther;
+        w.schedule(a, 0, 100);
+        w.schedule(b, 0, 100);
+
+        // whichever fires first cancels the other
+        assertEquals(1, w.advance(100));
+        assertEquals(1, fired.size());
+        assertTrue(w.isEmpty());
+        assertEquals(0, w.advance(1000));
+    }
+
+    @Test
+    public void onTimeout_reschedulesItself() {
+        final TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        final Timer a = new Timer("a", fired);
+        final long[] now = {0};
+        a.action = new Runnable() {
+            @Override
+            public void run() {
+                w.schedule(a, now[0], 100);
+            }
+        };
+        w.schedule(a, 0, 100);
+
+        for (now[0] = 10; now[0] <= 1000; now[0] += 10)
+            w.advance(now[0]);
+        assertEquals(10, fired.size());
+        assertTrue(a.isScheduled());
+        assertEquals(1, w.size());
+    }
+
+    @Test
+    public void onTimeout_reschedulesOtherExpiredTimer() {
+        final TimerWheel w = new TimerWheel(TICK_MS);
+        final List<String> fired = new ArrayList<>();
+        final Timer a = new Timer("a", fired);
+        final Timer b = new Timer("b", fired);
+        Runnable postponeOther = new Runnable() {
+            @Override
+            public void run() {
+                w.schedule(fired.get(0).equals("a") ? b : a, 100, 500);
+            }
+        };
+        a.action = postponeOther;
+        b.action = postponeOther;
+        w.schedule(a, 0, 100);
+        w.schedule(b, 0, 100);
+
+        // the postponed one fires later, once
+        assertEquals(1, w.advance(100));
+        assertEquals(1, w.size());
+        a.action = null;
+        b.action = null;
+        assertEquals(0, w.advance(590));
+        assertEquals(1, w.advance(600));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    public void advance_deadlineBeyondOneTurn() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        // same slot as 'near', but 2 turns later
+        Timer near = new Timer("near", fired);
+        Timer far = new Timer("far", fired);
+        w.schedule(near, 0, 100);
+        w.schedule(far, 0, 100 + 2 * TURN_MS);
+
+        // tick by tick, passing the slot several times
+        long now = 0;
+        for (; now < 100 + 2 * TURN_MS; now += TICK_MS)
+            w.advance(now);
+        assertEquals(1, fired.size());
+        assertEquals("near", fired.get(0));
+        assertTrue(far.isScheduled());
+
+        assertEquals(1, w.advance(now));
+        assertEquals("far", fired.get(1));
+        assertTrue(w.isEmpty());
+    }
+
+    @Test
+    public void advance_stalledLooperFiresAllExpired() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            w.schedule(new Timer("t" + i, fired), 0, i * TICK_MS);
+        Timer later = new Timer("later", fired);
+        w.schedule(later, 0, 10 * TURN_MS);
+
+        // looper didn't run for several turns of the wheel
+        assertEquals(1000, w.advance(5 * TURN_MS));
+        assertEquals(1000, fired.size());
+        assertTrue(later.isScheduled());
+        assertEquals(1, w.size());
+
+        assertEquals(0, w.advance(10 * TURN_MS - TICK_MS));
+        assertEquals(1, w.advance(10 * TURN_MS));
+    }
+
+    @Test
+    public void advance_clockGoingBackDoesNothing() {
+        TimerWheel w = new TimerWheel(TICK_MS);
+        List<String> fired = new ArrayList<>();
+        w.schedule(new Timer("a", fired), 1000, 100);
+        assertEquals(0, w.advance(500));
+        assertEquals(1, w.advance(1100));
+    }
+}
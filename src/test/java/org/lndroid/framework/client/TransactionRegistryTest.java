@@ -0,0 +1,106 @@
+package org.lndroid.framework.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lndroid.framework.common.DefaultPlugins;
+
+import static org.junit.Assert.*;
+
+public class TransactionRegistryTest {
+
+    private static final int TXS = 10000;
+
+    private static PluginTransaction createTx(TransactionRegistry r, String pluginId, String txId) {
+        PluginTransaction tx = new PluginTransaction(
+                r.internPluginId(pluginId), null, txId, null, null);
+        r.add(tx);
+        return tx;
+    }
+
+    // wait until gc clears the refs and registry purges them
+    private static void collect(TransactionRegistry r) throws InterruptedException {
+        for (int i = 0; i < 100 && r.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            r.sweep();
+        }
+    }
+
+    @Test
+    public void abandonedTransactions_arePurged() throws Exception {
+        TransactionRegistry r = new TransactionRegistry();
+        for (int i = 0; i < TXS; i++)
+            createTx(r, DefaultPlugins.GET_INVOICE, "tx" + i);
+        assertEquals(TXS, r.size());
+
+        collect(r);
+
+        assertEquals(0, r.size());
+        assertEquals(TXS, r.swept());
+        assertEquals(0, r.released());
+    }
+
+    @Test
+    public void liveTransactions_areKept() throws Exception {
+        TransactionRegistry r = new TransactionRegistry();
+        List<PluginTransaction> live = new ArrayList<>();
+        for (int i = 0; i < TXS; i++) {
+            PluginTransaction tx = createTx(r, DefaultPlugins.LIST_INVOICES, "tx" + i);
+            if (i % 10 == 0)
+                live.add(tx);
+        }
+
+        for (int i = 0; i < 100 && r.swept() < TXS - live.size(); i++) {
+            System.gc();
+            Thread.sleep(10);
+            r.sweep();
+        }
+
+        assertEquals(live.size(), r.size());
+        for (PluginTransaction tx: live)
+            assertSame(tx, r.get(DefaultPlugins.LIST_INVOICES, tx.id()));
+    }
+
+    @Test
+    public void releasedTransactions_areRemoved() {
+        TransactionRegistry r = new TransactionRegistry();
+        PluginTransaction a = createTx(r, DefaultPlugins.GET_INVOICE, "a");
+        PluginTransaction b = createTx(r, DefaultPlugins.GET_CONTACT, "a");
+
+        assertSame(a, r.get(DefaultPlugins.GET_INVOICE, "a"));
+        assertSame(b, r.get(DefaultPlugins.GET_CONTACT, "a"));
+        assertEquals(2, r.plugins());
+
+        r.remove(DefaultPlugins.GET_INVOICE, "a");
+        assertNull(r.get(DefaultPlugins.GET_INVOICE, "a"));
+        assertSame(b, r.get(DefaultPlugins.GET_CONTACT, "a"));
+        assertEquals(1, r.size());
+        assertEquals(1, r.released());
+    }
+
+    @Test
+    public void replacedEntry_isNotPurgedByOldRef() throws Exception {
+        TransactionRegistry r = new TransactionRegistry();
+        createTx(r, DefaultPlugins.GET_INVOICE, "a");
+        PluginTransaction b = createTx(r, DefaultPlugins.GET_INVOICE, "a");
+
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+            r.sweep();
+        }
+
+        assertSame(b, r.get(DefaultPlugins.GET_INVOICE, "a"));
+        assertEquals(1, r.size());
+    }
+
+    @Test
+    public void pluginIds_areInterned() {
+        TransactionRegistry r = new TransactionRegistry();
+        String id = new String(DefaultPlugins.GET_INVOICE);
+        assertSame(r.internPluginId(DefaultPlugins.GET_INVOICE), r.internPluginId(id));
+    }
+}
@@ -0,0 +1,86 @@
+package org.lndroid.framework.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.lndroid.framework.common.DefaultPlugins;
+
+import static org.junit.Assert.*;
+
+public class TxIdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS = 1000000;
+
+    private static Set<String> generateConcurrently(final ITxIdGenerator g) throws Exception {
+        final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    int dups = 0;
+                    for (int i = 0; i < IDS / THREADS; i++) {
+                        if (!ids.add(g.generate(DefaultPlugins.LIST_INVOICES)))
+                            dups++;
+                    }
+                    return dups;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<Integer> f: results)
+            assertEquals(0, (int)f.get(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        return ids;
+    }
+
+    @Test
+    public void concurrentIds_areUnique() throws Exception {
+        assertEquals(IDS, generateConcurrently(new TxIdGenerator()).size());
+    }
+
+    @Test
+    public void concurrentCompactIds_areUnique() throws Exception {
+        Set<String> ids = generateConcurrently(new TxIdGenerator(true));
+        assertEquals(IDS, ids.size());
+        for (String id: ids)
+            assertTrue(id, id.length() <= 16 && id.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void restartedGenerator_doesNotRepeatIds() {
+        // new instance is what the client gets after process restart
+        TxIdGenerator a = new TxIdGenerator();
+        TxIdGenerator b = new TxIdGenerator();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ids.add(a.generate(DefaultPlugins.GET_INVOICE)));
+            assertTrue(ids.add(b.generate(DefaultPlugins.GET_INVOICE)));
+        }
+    }
+
+    @Test
+    public void readableIds_containPluginId() {
+        String id = new TxIdGenerator().generate(DefaultPlugins.GET_INVOICE);
+        assertTrue(id, id.startsWith(DefaultPlugins.GET_INVOICE + "_"));
+        assertTrue(id, id.endsWith("_0"));
+    }
+}
@@ -0,0 +1,287 @@
+package org.lndroid.framework.common;
+
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+
+import static org.junit.Assert.*;
+
+// Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class CompactPluginMessageCodecTest {
+
+    private static final ICodecProvider CODEC_PROVIDER = new DefaultIpcCodecProvider();
+    private static final WalletData.UserIdentity IDENTITY =
+            WalletData.UserIdentity.create(3, "org.lndroid.app", "02ab");
+
+    private ICodec<PluginData.PluginMessage> gson_;
+    private CompactPluginMessageCodec sender_;
+    private CompactPluginMessageCodec receiver_;
+
+    @Before
+    public void setUp() {
+        gson_ = CODEC_PROVIDER.get(PluginData.PluginMessage.class);
+        sender_ = new CompactPluginMessageCodec(CODEC_PROVIDER);
+        sender_.setPeerAccepts(true);
+        receiver_ = new CompactPluginMessageCodec(CODEC_PROVIDER);
+    }
+
+    private static PluginData.PluginMessage full() {
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_ERROR)
+                .setUserIdentity(IDENTITY)
+                .setPluginId(DefaultPlugins.LIST_INVOICES)
+                .setTxId("tx1")
+                .setTimeout(Long.MAX_VALUE)
+                .setCode(Errors.TX_TIMEOUT)
+                .setError("timeout ½")
+                .setAuthId(-7)
+                .setIsPrivileged(true)
+                .build();
+        m.assignIpcData(new byte[]{0, 1, (byte)0xc1, (byte)0xff});
+        return m;
+    }
+
+    private static void assertMessageEquals(PluginData.PluginMessage expected, PluginData.PluginMessage m) {
+        assertNotNull(m);
+        assertEquals(expected, m);
+        assertArrayEquals(expected.ipcData(), m.ipcData());
+    }
+
+    @Test
+    public void roundTrip_allFields() {
+        PluginData.PluginMessage m = full();
+        byte[] d = sender_.encode(m);
+        assertEquals(0xc1, d[0] & 0xff);
+        assertMessageEquals(m, receiver_.decode(d));
+        // much smaller than json, even w/ the identity sent in full
+        assertTrue(d.length * 2 < gson_.encode(m).length);
+    }
+
+    @Test
+    public void roundTrip_requiredOnly() {
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_STOP)
+                .build();
+        PluginData.PluginMessage r = receiver_.decode(sender_.encode(m));
+        assertMessageEquals(m, r);
+        assertNull(r.ipcData());
+        assertNull(r.userIdentity());
+        assertNull(r.timeout());
+        assertNull(r.isPrivileged());
+    }
+
+    @Test
+    public void roundTrip_emptyAndUnknownValues() {
+        // not in the tag tables, sent as literals
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType("custom")
+                .setPluginId("org.example.PLUGIN")
+                .setTxId("")
+                .setCode("")
+                .setError("")
+                .setTimeout(0L)
+                .setAuthId(0)
+                .setIsPrivileged(false)
+                .build();
+        m.assignIpcData(new byte[0]);
+        assertMessageEquals(m, receiver_.decode(sender_.encode(m)));
+    }
+
+    @Test
+    public void identity_sentOnceThenByHandle() {
+        PluginData.PluginMessage m = full();
+        final int first = sender_.encode(m).length;
+        sender_.onSent(m);
+        byte[] second = sender_.encode(full());
+        assertTrue(second.length < first);
+
+        // receiver that missed the first one can't resolve the handle
+        assertNull(receiver_.decode(second));
+
+        // after reset both sides start over
+        sender_.reset();
+        sender_.setPeerAccepts(true);
+        receiver_.reset();
+        m = full();
+        assertMessageEquals(m, receiver_.decode(sender_.encode(m)));
+        sender_.onSent(m);
+        assertMessageEquals(full(), receiver_.decode(sender_.encode(full())));
+    }
+
+    @Test
+    public void identity_sentInFullUntilSent() {
+        // first one is dropped before it's sent
+        final int first = sender_.encode(full()).length;
+        PluginData.PluginMessage m = full();
+        byte[] second = sender_.encode(m);
+        assertEquals(first, second.length);
+        assertMessageEquals(m, receiver_.decode(second));
+
+        sender_.onSent(m);
+        byte[] third = sender_.encode(full());
+        assertTrue(third.length < first);
+        assertMessageEquals(full(), receiver_.decode(third));
+    }
+
+    @Test
+    public void identity_sentBeforeResetIsIgnored() {
+        PluginData.PluginMessage m = full();
+        final int first = sender_.encode(m).length;
+        sender_.reset();
+        sender_.setPeerAccepts(true);
+        sender_.encode(full());
+
+        // handle of the lost connection
+        sender_.onSent(m);
+        assertEquals(first, sender_.encode(full()).length);
+    }
+
+    @Test
+    public void identity_deferredHandlesResolvedInArrivalOrder() {
+        PluginData.PluginMessage m = full();
+        byte[] first = sender_.encode(m);
+        sender_.onSent(m);
+        byte[] second = sender_.encode(full());
+
+        // decoder threads finish the second one first
+        receiver_.setDeferHandles(true);
+        PluginData.PluginMessage r2 = receiver_.decode(second);
+        assertNull(r2.userIdentity());
+        PluginData.PluginMessage r1 = receiver_.decode(first);
+        assertEquals(IDENTITY, r1.userIdentity());
+
+        assertMessageEquals(full(), receiver_.resolve(r1));
+        assertMessageEquals(full(), receiver_.resolve(r2));
+
+        // unknown handle
+        CompactPluginMessageCodec other = new CompactPluginMessageCodec(CODEC_PROVIDER);
+        other.setDeferHandles(true);
+        assertNull(other.resolve(other.decode(second)));
+    }
+
+    @Test
+    public void encode_usesJsonUntilPeerAccepts() {
+        CompactPluginMessageCodec c = new CompactPluginMessageCodec(CODEC_PROVIDER);
+        PluginData.PluginMessage m = full();
+        assertArrayEquals(gson_.encode(m), c.encode(m));
+        // json is decoded by both
+        assertMessageEquals(m, receiver_.decode(c.encode(m)));
+        assertMessageEquals(m, gson_.decode(c.encode(m)));
+    }
+
+    @Test
+    public void decode_rejectsTruncated() {
+        byte[] d = sender_.encode(full());
+        for (int len = 1; len < d.length; len++)
+            assertNull("length " + len, new CompactPluginMessageCodec(CODEC_PROVIDER).decode(Arrays.copyOf(d, len)));
+    }
+
+    @Test
+    public void decode_rejectsMalformed() {
+        byte[] d = sender_.encode(PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setTxId("tx")
+                .build());
+
+        // trailing bytes
+        assertNull(receiver_.decode(Arrays.copyOf(d, d.length + 1)));
+
+        // unknown format version
+        byte[] v = d.clone();
+        v[1] = 2;
+        assertNull(receiver_.decode(v));
+
+        // type tag past the table
+        byte[] t = d.clone();
+        t[4] = (byte)200;
+        assertNull(receiver_.decode(t));
+
+        // negative and oversized string length
+        byte[] n = d.clone();
+        ByteBuffer.wrap(n).putInt(5, -1);
+        assertNull(receiver_.decode(n));
+        ByteBuffer.wrap(n).putInt(5, 1 << 30);
+        assertNull(receiver_.decode(n));
+
+        // garbage after the magic byte
+        assertNull(receiver_.decode(new byte[]{(byte)0xc1, 1, (byte)0xff, (byte)0xff, 0}));
+    }
+
+    @Test
+    public void decode_rejectsBadDataLength() {
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .build();
+        m.assignIpcData(new byte[]{1, 2, 3});
+        byte[] d = sender_.encode(m);
+
+        // magic, version, flags, type tag, then data length
+        ByteBuffer.wrap(d).putInt(5, 4);
+        assertNull(receiver_.decode(d));
+        ByteBuffer.wrap(d).putInt(5, -3);
+        assertNull(receiver_.decode(d));
+    }
+
+    @Test
+    public void interop_gsonSenderAndReceiver() {
+        PluginData.PluginMessage m = full();
+
+        // plain client to compact-aware server
+        Bundle b = PluginUtils.encodePluginMessageIpc(m, CODEC_PROVIDER, gson_);
+        assertFalse(PluginUtils.isCompactEnvelopeAccepted(b));
+        assertMessageEquals(m, PluginUtils.decodePluginMessageIpc(b, receiver_));
+
+        // compact-aware server to plain client, before it announced support
+        CompactPluginMessageCodec server = new CompactPluginMessageCodec(CODEC_PROVIDER);
+        server.setPeerAccepts(PluginUtils.isCompactEnvelopeAccepted(b));
+        b = PluginUtils.encodePluginMessageIpc(m, CODEC_PROVIDER, server);
+        assertTrue(PluginUtils.isCompactEnvelopeAccepted(b));
+        assertMessageEquals(m, PluginUtils.decodePluginMessageIpc(b, gson_));
+    }
+
+    @Test
+    public void interop_compactThroughBundle() throws IOException {
+        CompactPluginMessageCodec client = new CompactPluginMessageCodec(CODEC_PROVIDER);
+
+        // client's first message is json, announcing support
+        Bundle b = PluginUtils.encodePluginMessageIpc(full(), CODEC_PROVIDER, client);
+        assertNotEquals(0xc1, b.getByteArray(PluginData.IPC_MESSAGE)[0] & 0xff);
+        receiver_.setPeerAccepts(PluginUtils.isCompactEnvelopeAccepted(b));
+        assertMessageEquals(full(), PluginUtils.decodePluginMessageIpc(b, receiver_));
+
+        // then both sides go compact
+        PluginData.PluginMessage reply = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setPluginId(DefaultPlugins.LIST_INVOICES)
+                .setTxId("tx1")
+                .setUserIdentity(IDENTITY)
+                .build();
+        reply.assignData(WalletData.ListInvoicesResult.builder().setCount(5).build(),
+                WalletData.ListInvoicesResult.class);
+        b = PluginUtils.encodePluginMessageIpc(reply, CODEC_PROVIDER, receiver_);
+        assertEquals(0xc1, b.getByteArray(PluginData.IPC_MESSAGE)[0] & 0xff);
+        client.setPeerAccepts(PluginUtils.isCompactEnvelopeAccepted(b));
+        assertTrue(client.peerAccepts());
+
+        PluginData.PluginMessage r = PluginUtils.decodePluginMessageIpc(b, client);
+        assertMessageEquals(reply, r);
+        r.assignCodecProvider(CODEC_PROVIDER);
+        r.assignDataType(WalletData.ListInvoicesResult.class);
+        assertEquals(5, r.<WalletData.ListInvoicesResult>getData().count());
+
+        b = PluginUtils.encodePluginMessageIpc(full(), CODEC_PROVIDER, client);
+        assertEquals(0xc1, b.getByteArray(PluginData.IPC_MESSAGE)[0] & 0xff);
+        assertMessageEquals(full(), PluginUtils.decodePluginMessageIpc(b, receiver_));
+    }
+}
@@ -0,0 +1,267 @@
+package org.lndroid.framework.common;
+
+import android.os.Bundle;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+
+import static org.junit.Assert.*;
+
+// Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class IpcCompressionTest {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int BENCHMARK_ROUNDS = 2000;
+    private static final ICodecProvider CODEC_PROVIDER = new DefaultIpcCodecProvider();
+
+    private static String hex(Random r, int bytes) {
+        byte[] b = new byte[bytes];
+        r.nextBytes(b);
+        return HEX.fromBytes(b);
+    }
+
+    private static WalletData.ListInvoicesResult listInvoicesResult() {
+        Random r = new Random(1);
+        ImmutableList.Builder<WalletData.Invoice> items = ImmutableList.builder();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            items.add(WalletData.Invoice.builder()
+                    .setId(i + 1)
+                    .setTxId(hex(r, 8))
+                    .setUserId(1)
+                    .setAuthUserId(0)
+                    .setDescription("invoice " + i)
+                    .setPreimageHashHex(hex(r, 32))
+                    .setValueSat(1000 + r.nextInt(100000))
+                    .setCreateTime(1600000000000L + i * 1000)
+                    .setSettleTime(0)
+                    .setPaymentRequest("lnbc" + hex(r, 150))
+                    .setExpiry(3600)
+                    .setCltvExpiry(40)
+                    .setIsPrivate(false)
+                    .setAddIndex(i + 1)
+                    .setSettleIndex(0)
+                    .setAmountPaidMsat(0)
+                    .setState(WalletData.INVOICE_STATE_OPEN)
+                    .setHtlcsCount(0)
+                    .setIsKeysend(false)
+                    .build());
+        }
+
+        return WalletData.ListInvoicesResult.builder()
+                .setItems(items.build())
+                .setCount(1000)
+                .setPosition(0)
+                .build();
+    }
+
+    // message data, as it's deflated
+    private static byte[] encodeData(WalletData.ListInvoicesResult res) {
+        return CODEC_PROVIDER.<WalletData.ListInvoicesResult>get(WalletData.ListInvoicesResult.class).encode(res);
+    }
+
+    private static byte[] deflateNoDictionary(byte[] data) {
+        Deflater d = new Deflater(Deflater.BEST_SPEED);
+        d.setInput(data);
+        d.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!d.finished())
+            out.write(buf, 0, d.deflate(buf));
+        d.end();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void compress_roundTrips() {
+        byte[] data = encodeData(listInvoicesResult());
+        byte[] compressed = IpcCompression.compress(data);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, IpcCompression.decompress(compressed, data.length));
+    }
+
+    @Test
+    public void compress_dictionaryHelps() {
+        byte[] data = encodeData(listInvoicesResult());
+        assertTrue(IpcCompression.compress(data).length < deflateNoDictionary(data).length);
+    }
+
+    @Test
+    public void compress_skipsIncompressible() {
+        byte[] data = new byte[4096];
+        new Random(1).nextBytes(data);
+        assertNull(IpcCompression.compress(data));
+    }
+
+    @Test
+    public void decompress_rejectsBadInput() {
+        byte[] data = encodeData(listInvoicesResult());
+        byte[] compressed = IpcCompression.compress(data);
+
+        // inflates beyond the limit
+        assertNull(IpcCompression.decompress(compressed, data.length - 1));
+        // truncated
+        assertNull(IpcCompression.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length));
+        // garbage
+        assertNull(IpcCompression.decompress(new byte[]{1, 2, 3, 4}, data.length));
+        // unknown dictionary
+        Deflater d = new Deflater();
+        d.setDictionary(new byte[]{1, 2, 3});
+        d.setInput(data);
+        d.finish();
+        byte[] buf = new byte[data.length];
+        final int n = d.deflate(buf);
+        d.end();
+        assertNull(IpcCompression.decompress(Arrays.copyOf(buf, n), data.length));
+    }
+
+    private static PluginData.PluginMessage reply(WalletData.ListInvoicesResult res) {
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setPluginId(DefaultPlugins.LIST_INVOICES)
+                .setTxId("tx")
+                .build();
+        m.assignData(res, WalletData.ListInvoicesResult.class);
+        return m;
+    }
+
+    private static List<ICodec<PluginData.PluginMessage>> envelopeCodecs() {
+        CompactPluginMessageCodec compact = new CompactPluginMessageCodec(CODEC_PROVIDER);
+        compact.setPeerAccepts(true);
+        List<ICodec<PluginData.PluginMessage>> codecs = new ArrayList<>();
+        codecs.add(CODEC_PROVIDER.<PluginData.PluginMessage>get(PluginData.PluginMessage.class));
+        codecs.add(compact);
+        return codecs;
+    }
+
+    private static Bundle encode(PluginData.PluginMessage m, ICodec<PluginData.PluginMessage> codec,
+                                 int threshold, boolean peerCompression) {
+        return PluginUtils.encodePluginMessageIpc(m, CODEC_PROVIDER, codec,
+                0, 0, threshold, peerCompression, null);
+    }
+
+    private static WalletData.ListInvoicesResult decodeData(Bundle b, ICodec<PluginData.PluginMessage> codec)
+            throws IOException {
+        PluginData.PluginMessage m = PluginUtils.decodePluginMessageIpc(b, codec);
+        assertNotNull(m);
+        m.assignCodecProvider(CODEC_PROVIDER);
+        m.assignDataType(WalletData.ListInvoicesResult.class);
+        return m.getData();
+    }
+
+    @Test
+    public void envelope_roundTripsDeflatedData() throws IOException {
+        WalletData.ListInvoicesResult res = listInvoicesResult();
+        for (ICodec<PluginData.PluginMessage> codec: envelopeCodecs()) {
+            PluginData.PluginMessage m = reply(res);
+            Bundle b = encode(m, codec, 1024, true);
+            assertTrue(b.getBoolean(PluginData.IPC_DEFLATED));
+            assertEquals(IpcCompression.dictionaryId(), b.getInt(PluginData.IPC_DEFLATE_DICT));
+            assertEquals(res, decodeData(b, codec));
+
+            // message keeps it's plain data
+            assertArrayEquals(encodeData(res), m.ipcData());
+        }
+    }
+
+    @Test
+    public void envelope_dictionaryHelps() {
+        WalletData.ListInvoicesResult res = listInvoicesResult();
+        for (ICodec<PluginData.PluginMessage> codec: envelopeCodecs()) {
+            byte[] deflated = encode(reply(res), codec, 1024, true).getByteArray(PluginData.IPC_MESSAGE);
+
+            // same envelope w/ data deflated w/o dictionary
+            PluginData.PluginMessage m = reply(res);
+            m.assignCodecProvider(CODEC_PROVIDER);
+            m.encodeData();
+            m.assignIpcData(deflateNoDictionary(m.ipcData()));
+            byte[] noDictionary = codec.encode(m);
+
+            assertTrue(deflated.length < noDictionary.length);
+        }
+    }
+
+    @Test
+    public void envelope_compressedVsRaw() {
+        WalletData.ListInvoicesResult res = listInvoicesResult();
+        for (ICodec<PluginData.PluginMessage> codec: envelopeCodecs()) {
+            byte[] raw = encode(reply(res), codec, 0, false).getByteArray(PluginData.IPC_MESSAGE);
+            byte[] deflated = encode(reply(res), codec, 1024, true).getByteArray(PluginData.IPC_MESSAGE);
+            assertTrue(deflated.length < raw.length / 2);
+        }
+    }
+
+    @Test
+    public void envelope_compressionNotUsed() throws IOException {
+        WalletData.ListInvoicesResult res = listInvoicesResult();
+        ICodec<PluginData.PluginMessage> codec = envelopeCodecs().get(0);
+
+        // disabled
+        Bundle b = encode(reply(res), codec, 0, true);
+        assertFalse(b.containsKey(PluginData.IPC_DEFLATED));
+        assertFalse(b.containsKey(PluginData.IPC_DEFLATE_DICT));
+
+        // peer didn't accept, still announced
+        b = encode(reply(res), codec, 1024, false);
+        assertFalse(b.containsKey(PluginData.IPC_DEFLATED));
+        assertTrue(PluginUtils.isCompressionAccepted(b));
+        assertEquals(res, decodeData(b, codec));
+
+        // data below threshold
+        b = encode(reply(res), codec, encodeData(res).length + 1, true);
+        assertFalse(b.containsKey(PluginData.IPC_DEFLATED));
+    }
+
+    @Test
+    public void envelope_rejectsBadDeflatedData() {
+        ICodec<PluginData.PluginMessage> codec = envelopeCodecs().get(0);
+        Bundle b = encode(reply(listInvoicesResult()), codec, 0, false);
+        b.putBoolean(PluginData.IPC_DEFLATED, true);
+        assertNull(PluginUtils.decodePluginMessageIpc(b, codec));
+    }
+
+    // encodes and decodes a page through the envelope
+    private static long roundTripNs(WalletData.ListInvoicesResult res, ICodec<PluginData.PluginMessage> codec,
+                                    int threshold, int rounds) throws IOException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            assertEquals(PAGE_SIZE, decodeData(encode(reply(res), codec, threshold, true), codec).items().size());
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    // prints cost of the compressed vs raw paths, not run
+    // by default as timing depends on the machine
+    @Ignore("benchmark")
+    @Test
+    public void envelope_benchmark() throws IOException {
+        WalletData.ListInvoicesResult res = listInvoicesResult();
+        for (ICodec<PluginData.PluginMessage> codec: envelopeCodecs()) {
+            roundTripNs(res, codec, 0, BENCHMARK_ROUNDS);
+            roundTripNs(res, codec, 1024, BENCHMARK_ROUNDS);
+
+            final int raw = encode(reply(res), codec, 0, false).getByteArray(PluginData.IPC_MESSAGE).length;
+            final int deflated = encode(reply(res), codec, 1024, true).getByteArray(PluginData.IPC_MESSAGE).length;
+            final String name = codec.getClass().getSimpleName();
+            System.out.println(name + " raw: " + raw + " bytes "
+                    + roundTripNs(res, codec, 0, BENCHMARK_ROUNDS) + " ns/op");
+            System.out.println(name + " deflated: " + deflated + " bytes "
+                    + roundTripNs(res, codec, 1024, BENCHMARK_ROUNDS) + " ns/op");
+        }
+    }
+}
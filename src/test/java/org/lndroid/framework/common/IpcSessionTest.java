@@ -0,0 +1,225 @@
+package org.lndroid.framework.common;
+
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+import static org.junit.Assert.*;
+
+// Bundles need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class IpcSessionTest {
+
+    private static final byte[] PAYLOAD = "payload".getBytes(Charset.forName("UTF-8"));
+
+    private KeyPair identity_;
+    private String identityPubkey_;
+    private KeyPair clientKey_;
+
+    @Before
+    public void setUp() {
+        identity_ = IpcSession.generateKeyPair();
+        identityPubkey_ = HEX.fromBytes(identity_.getPublic().getEncoded());
+        clientKey_ = IpcSession.generateKeyPair();
+    }
+
+    private Bundle hello() {
+        return IpcSession.createHello(clientKey_);
+    }
+
+    // server's reply to a valid hello
+    private Bundle reply(IpcSession[] server) {
+        Bundle reply = new Bundle();
+        server[0] = IpcSession.acceptHello(hello(), identity_.getPrivate(), identityPubkey_, reply);
+        assertNotNull(server[0]);
+        return reply;
+    }
+
+    private Bundle signed(IpcSession s) {
+        Bundle b = new Bundle();
+        s.sign(b, PAYLOAD);
+        return b;
+    }
+
+    private static String otherKeyHex(String algorithm, String curve) throws GeneralSecurityException {
+        KeyPairGenerator g = KeyPairGenerator.getInstance(algorithm);
+        if (curve != null)
+            g.initialize(new ECGenParameterSpec(curve));
+        else
+            g.initialize(1024);
+        return HEX.fromBytes(g.generateKeyPair().getPublic().getEncoded());
+    }
+
+    @Test
+    public void handshake_bothWays() {
+        IpcSession[] server = new IpcSession[1];
+        IpcSession client = IpcSession.acceptHelloReply(reply(server), clientKey_, identityPubkey_);
+        assertNotNull(client);
+
+        assertTrue(server[0].verify(signed(client), PAYLOAD));
+        assertTrue(client.verify(signed(server[0]), PAYLOAD));
+        assertEquals(0, client.rejected());
+        assertEquals(0, server[0].rejected());
+    }
+
+    @Test
+    public void handshake_pubkeyCaseInsensitive() {
+        IpcSession[] server = new IpcSession[1];
+        assertNotNull(IpcSession.acceptHelloReply(reply(server), clientKey_, identityPubkey_.toUpperCase()));
+    }
+
+    @Test
+    public void handshake_rejectsTamperedSignature() {
+        IpcSession[] server = new IpcSession[1];
+        Bundle reply = reply(server);
+        byte[] signature = reply.getByteArray(PluginData.IPC_SIGNATURE);
+        signature[signature.length / 2] ^= 1;
+        reply.putByteArray(PluginData.IPC_SIGNATURE, signature);
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+    }
+
+    @Test
+    public void handshake_rejectsSubstitutedSessionKey() {
+        IpcSession[] server = new IpcSession[1];
+        Bundle reply = reply(server);
+        reply.putByteArray(PluginData.IPC_SESSION_KEY, IpcSession.generateKeyPair().getPublic().getEncoded());
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+    }
+
+    @Test
+    public void handshake_rejectsOtherIdentity() {
+        KeyPair other = IpcSession.generateKeyPair();
+        String otherPubkey = HEX.fromBytes(other.getPublic().getEncoded());
+
+        // signed by other key, announcing it
+        Bundle reply = new Bundle();
+        assertNotNull(IpcSession.acceptHello(hello(), other.getPrivate(), otherPubkey, reply));
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+
+        // signed by other key, announcing the expected one
+        reply = new Bundle();
+        assertNotNull(IpcSession.acceptHello(hello(), other.getPrivate(), identityPubkey_, reply));
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+    }
+
+    @Test
+    public void handshake_rejectsVersionMismatch() {
+        Bundle hello = hello();
+        hello.putString(PluginData.IPC_VERSION, PluginData.IPC_CURRENT_VERSION + ".old");
+        Bundle reply = new Bundle();
+        assertNull(IpcSession.acceptHello(hello, identity_.getPrivate(), identityPubkey_, reply));
+        assertTrue(reply.isEmpty());
+
+        IpcSession[] server = new IpcSession[1];
+        reply = reply(server);
+        reply.putString(PluginData.IPC_VERSION, PluginData.IPC_CURRENT_VERSION + ".old");
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+    }
+
+    @Test
+    public void handshake_rejectsMalformed() {
+        Bundle hello = hello();
+        hello.remove(PluginData.IPC_SESSION_KEY);
+        assertNull(IpcSession.acceptHello(hello, identity_.getPrivate(), identityPubkey_, new Bundle()));
+
+        hello = hello();
+        hello.putByteArray(PluginData.IPC_SESSION_KEY, new byte[]{1, 2, 3});
+        assertNull(IpcSession.acceptHello(hello, identity_.getPrivate(), identityPubkey_, new Bundle()));
+
+        IpcSession[] server = new IpcSession[1];
+        Bundle reply = reply(server);
+        reply.remove(PluginData.IPC_SIGNATURE);
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, identityPubkey_));
+    }
+
+    @Test
+    public void identityPubkey_mustBeP256() throws GeneralSecurityException {
+        assertTrue(IpcSession.isValidIdentityPubkey(identityPubkey_));
+
+        assertFalse(IpcSession.isValidIdentityPubkey(null));
+        assertFalse(IpcSession.isValidIdentityPubkey(""));
+        assertFalse(IpcSession.isValidIdentityPubkey("0"));
+        assertFalse(IpcSession.isValidIdentityPubkey("0102030405"));
+        assertFalse(IpcSession.isValidIdentityPubkey(otherKeyHex("EC", "secp384r1")));
+        assertFalse(IpcSession.isValidIdentityPubkey(otherKeyHex("RSA", null)));
+    }
+
+    @Test
+    public void handshake_rejectsNonP256ServicePubkey() throws GeneralSecurityException {
+        IpcSession[] server = new IpcSession[1];
+        Bundle reply = reply(server);
+        String rsa = otherKeyHex("RSA", null);
+        reply.putString(PluginData.IPC_PUBKEY, rsa);
+        assertNull(IpcSession.acceptHelloReply(reply, clientKey_, rsa));
+    }
+
+    @Test
+    public void verify_rejectsBadMac() {
+        IpcSession[] server = new IpcSession[1];
+        IpcSession client = IpcSession.acceptHelloReply(reply(server), clientKey_, identityPubkey_);
+
+        // other payload
+        assertFalse(server[0].verify(signed(client), new byte[]{1}));
+
+        // tampered MAC
+        Bundle b = signed(client);
+        byte[] mac = b.getByteArray(PluginData.IPC_MAC);
+        mac[0] ^= 1;
+        b.putByteArray(PluginData.IPC_MAC, mac);
+        assertFalse(server[0].verify(b, PAYLOAD));
+
+        // tampered sequence number
+        b = signed(client);
+        b.putLong(PluginData.IPC_SEQ, b.getLong(PluginData.IPC_SEQ) + 1);
+        assertFalse(server[0].verify(b, PAYLOAD));
+
+        // no MAC
+        b = new Bundle();
+        b.putLong(PluginData.IPC_SEQ, 100);
+        assertFalse(server[0].verify(b, PAYLOAD));
+
+        // reflected back to the sender
+        assertFalse(client.verify(signed(client), PAYLOAD));
+
+        // of another session
+        IpcSession other = IpcSession.acceptHelloReply(reply(new IpcSession[1]), clientKey_, identityPubkey_);
+        assertFalse(server[0].verify(signed(other), PAYLOAD));
+
+        assertEquals(5, server[0].rejected());
+        assertEquals(0, server[0].replayed());
+
+        // forged messages don't burn sequence numbers
+        assertTrue(server[0].verify(signed(client), PAYLOAD));
+    }
+
+    @Test
+    public void verify_rejectsReplay() {
+        IpcSession[] server = new IpcSession[1];
+        IpcSession client = IpcSession.acceptHelloReply(reply(server), clientKey_, identityPubkey_);
+
+        Bundle first = signed(client);
+        Bundle second = signed(client);
+        Bundle third = signed(client);
+
+        assertTrue(server[0].verify(first, PAYLOAD));
+        assertFalse(server[0].verify(first, PAYLOAD));
+
+        // reordered ones are accepted once
+        assertTrue(server[0].verify(third, PAYLOAD));
+        assertTrue(server[0].verify(second, PAYLOAD));
+        assertFalse(server[0].verify(second, PAYLOAD));
+        assertFalse(server[0].verify(third, PAYLOAD));
+
+        assertEquals(3, server[0].replayed());
+        assertEquals(0, server[0].rejected());
+    }
+}
@@ -0,0 +1,88 @@
+package org.lndroid.framework.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ListCursorTest {
+
+    @Test
+    public void roundTrip_longSortValue() {
+        for (long v: new long[]{0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            ListCursor c = ListCursor.decode(ListCursor.encode(v, 42));
+            assertNotNull(c);
+            assertEquals(v, c.sortValue());
+            assertEquals(42, c.id());
+        }
+    }
+
+    @Test
+    public void roundTrip_intSortValueDecodedAsLong() {
+        ListCursor c = ListCursor.decode(ListCursor.encode(7, 1));
+        assertEquals(7L, c.sortValue());
+    }
+
+    @Test
+    public void roundTrip_stringSortValue() {
+        for (String v: new String[]{"", "alice", "é中\u0000x"}) {
+            ListCursor c = ListCursor.decode(ListCursor.encode(v, Long.MAX_VALUE));
+            assertNotNull(c);
+            assertEquals(v, c.sortValue());
+            assertEquals(Long.MAX_VALUE, c.id());
+        }
+    }
+
+    @Test
+    public void roundTrip_noSortValue() {
+        ListCursor c = ListCursor.decode(ListCursor.encode(null, -5));
+        assertNotNull(c);
+        assertNull(c.sortValue());
+        assertEquals(-5, c.id());
+    }
+
+    @Test
+    public void decode_acceptsUpperCaseHex() {
+        String s = ListCursor.encode("bob", 3);
+        assertEquals(3, ListCursor.decode(s.toUpperCase()).id());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void encode_rejectsUnsupportedSortValue() {
+        ListCursor.encode(1.5, 1);
+    }
+
+    @Test
+    public void decode_rejectsWrongVersion() {
+        String s = ListCursor.encode(1L, 2);
+        assertNull(ListCursor.decode("02" + s.substring(2)));
+        assertNull(ListCursor.decode("00" + s.substring(2)));
+    }
+
+    @Test
+    public void decode_rejectsUnknownType() {
+        String s = ListCursor.encode(null, 2);
+        assertNull(ListCursor.decode(s.substring(0, 2) + "03" + s.substring(4)));
+    }
+
+    @Test
+    public void decode_rejectsTrailingBytes() {
+        assertNull(ListCursor.decode(ListCursor.encode(1L, 2) + "00"));
+        assertNull(ListCursor.decode(ListCursor.encode("a", 2) + "ff"));
+    }
+
+    @Test
+    public void decode_rejectsTruncated() {
+        String s = ListCursor.encode("abc", 2);
+        for (int len = 0; len < s.length(); len += 2)
+            assertNull(ListCursor.decode(s.substring(0, len)));
+    }
+
+    @Test
+    public void decode_rejectsBadHex() {
+        String s = ListCursor.encode(1L, 2);
+        assertNull(ListCursor.decode(s + "0"));
+        assertNull(ListCursor.decode("zz" + s.substring(2)));
+        assertNull(ListCursor.decode(s.substring(0, s.length() - 2) + "-1"));
+        assertNull(ListCursor.decode(null));
+    }
+}
@@ -0,0 +1,221 @@
+package org.lndroid.framework.common;
+
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.WalletData;
+
+import static org.junit.Assert.*;
+
+// Bundles and SharedMemory need Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class PluginUtilsTest {
+
+    private static final ICodecProvider CODEC_PROVIDER = new DefaultIpcCodecProvider();
+    private static final ICodec<PluginData.PluginMessage> CODEC =
+            CODEC_PROVIDER.get(PluginData.PluginMessage.class);
+
+    private static final int SHM_THRESHOLD = 1024;
+
+    private static WalletData.Invoice invoice(int descriptionLength) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < descriptionLength; i++)
+            s.append((char)('a' + i % 26));
+        return WalletData.Invoice.builder()
+                .setId(1)
+                .setDescription(s.toString())
+                .setState(WalletData.INVOICE_STATE_OPEN)
+                .build();
+    }
+
+    private static PluginData.PluginMessage reply(String txId, WalletData.Invoice invoice) {
+        PluginData.PluginMessage m = PluginData.PluginMessage.builder()
+                .setType(PluginData.MESSAGE_TYPE_REPLY)
+                .setPluginId(DefaultPlugins.GET_INVOICE)
+                .setTxId(txId)
+                .build();
+        m.assignData(invoice, WalletData.Invoice.class);
+        return m;
+    }
+
+    private static Bundle encode(WalletData.Invoice invoice, int shmThreshold, int peerShmMaxSize) {
+        return PluginUtils.encodePluginMessageIpc(reply("tx", invoice), CODEC_PROVIDER, CODEC,
+                shmThreshold, peerShmMaxSize);
+    }
+
+    private static Bundle encode(String txId, WalletData.Invoice invoice) {
+        return PluginUtils.encodePluginMessageIpc(reply(txId, invoice), CODEC_PROVIDER, CODEC,
+                SHM_THRESHOLD, PluginUtils.MAX_SHM_SIZE, 0, false, null);
+    }
+
+    private static List<String> txIds(List<Bundle> messages) {
+        List<String> ids = new ArrayList<>();
+        for (Bundle b: messages)
+            ids.add(PluginUtils.decodePluginMessageIpc(b, CODEC).txId());
+        return ids;
+    }
+
+    private static WalletData.Invoice decode(Bundle b) throws IOException {
+        PluginData.PluginMessage m = PluginUtils.decodePluginMessageIpc(b, CODEC);
+        assertNotNull(m);
+        m.assignCodecProvider(CODEC_PROVIDER);
+        m.assignDataType(WalletData.Invoice.class);
+        return m.getData();
+    }
+
+    private static int payloadSize(WalletData.Invoice invoice) {
+        return encode(invoice, 0, 0).getByteArray(PluginData.IPC_MESSAGE).length;
+    }
+
+    @Test
+    public void shm_roundTrips() throws IOException {
+        WalletData.Invoice invoice = invoice(4 * SHM_THRESHOLD);
+        Bundle b = encode(invoice, SHM_THRESHOLD, PluginUtils.MAX_SHM_SIZE);
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE));
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        assertEquals(PluginUtils.MAX_SHM_SIZE, PluginUtils.getSharedMemoryMaxSize(b));
+
+        assertEquals(invoice, decode(b));
+        // closed by the reader
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+    }
+
+    @Test
+    public void shm_thresholdIsInclusive() throws IOException {
+        WalletData.Invoice invoice = invoice(4 * SHM_THRESHOLD);
+        final int size = payloadSize(invoice);
+
+        Bundle b = encode(invoice, size, size);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        assertEquals(invoice, decode(b));
+    }
+
+    @Test
+    public void shm_inlineBelowThreshold() throws IOException {
+        WalletData.Invoice invoice = invoice(10);
+        Bundle b = encode(invoice, payloadSize(invoice) + 1, PluginUtils.MAX_SHM_SIZE);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE));
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        // we still accept shm
+        assertEquals(PluginUtils.MAX_SHM_SIZE, PluginUtils.getSharedMemoryMaxSize(b));
+        assertEquals(invoice, decode(b));
+    }
+
+    @Test
+    public void shm_inlineAbovePeerMax() throws IOException {
+        WalletData.Invoice invoice = invoice(4 * SHM_THRESHOLD);
+        Bundle b = encode(invoice, SHM_THRESHOLD, payloadSize(invoice) - 1);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE));
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        assertEquals(invoice, decode(b));
+    }
+
+    @Test
+    public void shm_inlineIfPeerDoesntAccept() throws IOException {
+        // peer bundles w/o IPC_SHM_MAX_SIZE
+        final int peerMax = PluginUtils.getSharedMemoryMaxSize(encode(invoice(10), 0, 0));
+        assertEquals(0, peerMax);
+
+        WalletData.Invoice invoice = invoice(4 * SHM_THRESHOLD);
+        Bundle b = encode(invoice, SHM_THRESHOLD, peerMax);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE));
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        assertEquals(invoice, decode(b));
+    }
+
+    @Test
+    public void shm_disabled() throws IOException {
+        WalletData.Invoice invoice = invoice(4 * SHM_THRESHOLD);
+        Bundle b = encode(invoice, 0, PluginUtils.MAX_SHM_SIZE);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE));
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        // not announced either
+        assertFalse(b.containsKey(PluginData.IPC_SHM_MAX_SIZE));
+        assertEquals(0, PluginUtils.getSharedMemoryMaxSize(b));
+        assertEquals(0, PluginUtils.getSharedMemoryMaxSize(null));
+        assertEquals(invoice, decode(b));
+    }
+
+    @Test
+    public void release_closesShm() {
+        Bundle b = encode(invoice(4 * SHM_THRESHOLD), SHM_THRESHOLD, PluginUtils.MAX_SHM_SIZE);
+        assertTrue(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+
+        PluginUtils.releasePluginMessageIpc(b);
+        assertFalse(b.containsKey(PluginData.IPC_MESSAGE_SHM));
+        assertNull(PluginUtils.decodePluginMessageIpc(b, CODEC));
+    }
+
+    @Test
+    public void batch_hoistsHeaders() throws IOException {
+        WalletData.Invoice big = invoice(4 * SHM_THRESHOLD);
+        Bundle batch = PluginUtils.encodePluginMessageBatchIpc(Arrays.asList(
+                encode("tx0", invoice(10)), encode("tx1", big)));
+        assertEquals(PluginData.IPC_CURRENT_VERSION, batch.getString(PluginData.IPC_VERSION));
+        assertTrue(batch.containsKey(PluginData.IPC_TIMESTAMP));
+        assertEquals(PluginUtils.MAX_SHM_SIZE, PluginUtils.getSharedMemoryMaxSize(batch));
+
+        List<Bundle> messages = PluginUtils.decodePluginMessageBatchIpc(batch);
+        assertEquals(2, messages.size());
+        for (Bundle m: messages) {
+            assertFalse(m.containsKey(PluginData.IPC_VERSION));
+            assertFalse(m.containsKey(PluginData.IPC_TIMESTAMP));
+            assertFalse(m.containsKey(PluginData.IPC_SHM_MAX_SIZE));
+        }
+        assertTrue(messages.get(0).containsKey(PluginData.IPC_MESSAGE));
+        assertTrue(messages.get(1).containsKey(PluginData.IPC_MESSAGE_SHM));
+
+        assertEquals(invoice(10), decode(messages.get(0)));
+        assertEquals(big, decode(messages.get(1)));
+    }
+
+    @Test
+    public void batch_mergesNestedBatches() {
+        Bundle inner = PluginUtils.encodePluginMessageBatchIpc(Arrays.asList(
+                encode("tx0", invoice(10)), encode("tx1", invoice(10))));
+        Bundle batch = PluginUtils.encodePluginMessageBatchIpc(Arrays.asList(
+                inner, encode("tx2", invoice(10))));
+
+        List<Bundle> messages = PluginUtils.decodePluginMessageBatchIpc(batch);
+        assertEquals(Arrays.asList("tx0", "tx1", "tx2"), txIds(messages));
+        // inner batch headers are kept once
+        assertEquals(PluginUtils.MAX_SHM_SIZE, PluginUtils.getSharedMemoryMaxSize(batch));
+        for (Bundle m: messages)
+            assertFalse(m.containsKey(PluginData.IPC_BATCH));
+    }
+
+    @Test
+    public void batch_releaseClosesInnerShm() {
+        Bundle batch = PluginUtils.encodePluginMessageBatchIpc(Arrays.asList(
+                encode("tx0", invoice(4 * SHM_THRESHOLD))));
+
+        PluginUtils.releasePluginMessageIpc(batch);
+        Bundle m = PluginUtils.decodePluginMessageBatchIpc(batch).get(0);
+        assertFalse(m.containsKey(PluginData.IPC_MESSAGE_SHM));
+    }
+
+    @Test
+    public void batch_decodeSkipsMalformed() {
+        assertTrue(PluginUtils.decodePluginMessageBatchIpc(null).isEmpty());
+        // not a batch
+        assertTrue(PluginUtils.decodePluginMessageBatchIpc(encode("tx0", invoice(10))).isEmpty());
+
+        ArrayList<Parcelable> items = new ArrayList<>();
+        items.add(new Rect());
+        items.add(encode("tx0", invoice(10)));
+        Bundle batch = new Bundle();
+        batch.putParcelableArrayList(PluginData.IPC_BATCH, items);
+        assertEquals(Arrays.asList("tx0"), txIds(PluginUtils.decodePluginMessageBatchIpc(batch)));
+    }
+}
@@ -0,0 +1,114 @@
+package org.lndroid.framework.common;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class ReplayWindowTest {
+
+    private static final int ROUNDS = 10000000;
+    private static final int WARMUP_ROUNDS = 1000000;
+
+    @Test
+    public void accept_rejectsDuplicates() {
+        ReplayWindow w = new ReplayWindow();
+        assertTrue(w.accept(1));
+        assertTrue(w.accept(2));
+        assertFalse(w.accept(1));
+        assertFalse(w.accept(2));
+        assertFalse(w.accept(0));
+        assertFalse(w.accept(-1));
+    }
+
+    @Test
+    public void accept_outOfOrderWithinWindow() {
+        ReplayWindow w = new ReplayWindow();
+        assertTrue(w.accept(100));
+        assertTrue(w.accept(5));
+        assertTrue(w.accept(99));
+        assertTrue(w.accept(101));
+        assertFalse(w.accept(5));
+        assertFalse(w.accept(99));
+        assertEquals(101, w.highest());
+    }
+
+    @Test
+    public void accept_rejectsTooOld() {
+        ReplayWindow w = new ReplayWindow();
+        final long top = 10 * ReplayWindow.WINDOW_SIZE;
+        assertTrue(w.accept(top));
+        assertFalse(w.accept(top - ReplayWindow.WINDOW_SIZE));
+        assertTrue(w.accept(top - ReplayWindow.WINDOW_SIZE + 1));
+    }
+
+    @Test
+    public void accept_clearsBitsWhenSliding() {
+        ReplayWindow w = new ReplayWindow();
+        for (long seq = 1; seq <= 5 * ReplayWindow.WINDOW_SIZE; seq++)
+            assertTrue(w.accept(seq));
+
+        // a jump past the whole ring must not leave stale bits
+        final long jump = 100 * ReplayWindow.WINDOW_SIZE + 7;
+        assertTrue(w.accept(jump));
+        for (long seq = jump - ReplayWindow.WINDOW_SIZE + 1; seq < jump; seq++)
+            assertTrue("seq " + seq, w.accept(seq));
+        for (long seq = jump - ReplayWindow.WINDOW_SIZE + 1; seq <= jump; seq++)
+            assertFalse("seq " + seq, w.accept(seq));
+    }
+
+    // sequence w/ some reordering, like messages decoded by several threads
+    private static long run(ReplayWindow w, long from, int rounds) {
+        long accepted = 0;
+        for (long seq = from; seq < from + rounds; seq += 2) {
+            if (w.accept(seq + 1))
+                accepted++;
+            if (w.accept(seq))
+                accepted++;
+        }
+        return accepted;
+    }
+
+    // accept is on the path of every session message,
+    // it must not allocate
+    @Test
+    public void accept_doesNotAllocate() {
+        ReplayWindow w = new ReplayWindow();
+        assertEquals(WARMUP_ROUNDS, run(w, 1, WARMUP_ROUNDS));
+
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        final boolean measureAlloc = mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)mx).isThreadAllocatedMemorySupported();
+        final long tid = Thread.currentThread().getId();
+        final long allocStart = measureAlloc
+                ? ((com.sun.management.ThreadMXBean)mx).getThreadAllocatedBytes(tid) : 0;
+
+        final long accepted = run(w, WARMUP_ROUNDS + 1, ROUNDS);
+
+        final long allocated = measureAlloc
+                ? ((com.sun.management.ThreadMXBean)mx).getThreadAllocatedBytes(tid) - allocStart : 0;
+
+        assertEquals(ROUNDS, accepted);
+        // allow for the bean's own bookkeeping
+        assertTrue(allocated < 1024);
+    }
+
+    // prints cost of accept, not run by default as
+    // timing depends on the machine
+    @Ignore("benchmark")
+    @Test
+    public void accept_benchmark() {
+        ReplayWindow w = new ReplayWindow();
+        run(w, 1, WARMUP_ROUNDS);
+
+        final long start = System.nanoTime();
+        final long accepted = run(w, WARMUP_ROUNDS + 1, ROUNDS);
+        final long ns = System.nanoTime() - start;
+
+        assertEquals(ROUNDS, accepted);
+        System.out.println("ReplayWindow.accept: " + ((double)ns / ROUNDS) + " ns/op");
+    }
+}
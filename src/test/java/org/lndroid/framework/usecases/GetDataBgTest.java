@@ -0,0 +1,193 @@
+package org.lndroid.framework.usecases;
+
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lndroid.framework.IResponseCallback;
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.client.EntityCache;
+import org.lndroid.framework.client.IPluginClient;
+import org.lndroid.framework.client.IPluginTransaction;
+import org.lndroid.framework.client.IPluginTransactionCallback;
+import org.lndroid.framework.client.PluginClientStats;
+import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IListResultView;
+import org.lndroid.framework.common.IPluginData;
+
+import static org.junit.Assert.*;
+
+public class GetDataBgTest {
+
+    @Rule
+    public InstantTaskExecutorRule instantExecutor = new InstantTaskExecutorRule();
+
+    private static class FakeTransaction implements IPluginTransaction {
+        IPluginTransactionCallback cb;
+        boolean active;
+
+        @Override
+        public String pluginId() {
+            return "";
+        }
+
+        @Override
+        public String id() {
+            return "";
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void start(Object r, Type type) {
+            start(r, type, 0);
+        }
+
+        @Override
+        public void start(Object r, Type type, long timeout) {
+            active = true;
+        }
+
+        @Override
+        public void send(Object r, Type type) {
+        }
+
+        @Override
+        public void stop() {
+            active = false;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        void reply(final Object data) {
+            cb.onResponse(new IPluginData() {
+                @Override
+                public void assignCodecProvider(ICodecProvider cp) {
+                }
+
+                @Override
+                public void assignDataType(Type type) {
+                }
+
+                @Override
+                public <T> T getData() {
+                    return (T)data;
+                }
+
+                @Override
+                public <T> IListResultView<T> getListResultView() throws IOException {
+                    throw new IOException("Not supported");
+                }
+
+                @Override
+                public int dataSize() {
+                    return 100;
+                }
+            });
+        }
+    }
+
+    private static class FakeClient implements IPluginClient {
+        List<FakeTransaction> txs = new ArrayList<>();
+        EntityCache cache = new EntityCache(10000);
+
+        @Override
+        public IPluginTransaction createTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
+            FakeTransaction tx = new FakeTransaction();
+            tx.cb = cb;
+            txs.add(tx);
+            return tx;
+        }
+
+        @Override
+        public void connect(Context ctx) {
+        }
+
+        @Override
+        public PluginClientStats getStats() {
+            return new PluginClientStats();
+        }
+
+        @Override
+        public EntityCache getEntityCache() {
+            return cache;
+        }
+    }
+
+    private FakeClient client_;
+    private List<WalletData.Invoice> responses_;
+
+    @Before
+    public void setUp() {
+        client_ = new FakeClient();
+        responses_ = new ArrayList<>();
+    }
+
+    private static WalletData.Invoice invoice(int state) {
+        return WalletData.Invoice.builder().setId(1).setState(state).build();
+    }
+
+    private GetInvoice get() {
+        GetInvoice g = new GetInvoice(client_);
+        g.setRequest(WalletData.GetRequestLong.builder().setId(1L).setNoAuth(true).build());
+        g.setCallback(new IResponseCallback<WalletData.Invoice>() {
+            @Override
+            public void onResponse(WalletData.Invoice r) {
+                responses_.add(r);
+            }
+
+            @Override
+            public void onError(String code, String e) {
+            }
+        });
+        g.start();
+        return g;
+    }
+
+    @Test
+    public void openInvoice_isFetchedAgain() {
+        get();
+        client_.txs.get(0).reply(invoice(WalletData.INVOICE_STATE_OPEN));
+
+        // might be settled by now
+        get();
+        assertEquals(2, client_.txs.size());
+        client_.txs.get(1).reply(invoice(WalletData.INVOICE_STATE_SETTLED));
+        assertEquals(WalletData.INVOICE_STATE_SETTLED, responses_.get(1).state());
+    }
+
+    @Test
+    public void settledInvoice_isServedFromCache() {
+        get();
+        client_.txs.get(0).reply(invoice(WalletData.INVOICE_STATE_SETTLED));
+
+        get();
+        assertEquals(1, client_.txs.size());
+        assertEquals(2, responses_.size());
+        assertSame(responses_.get(0), responses_.get(1));
+    }
+
+    @Test
+    public void mutableEntry_isNotServed() {
+        // put by the app through getEntityCache
+        client_.cache.put(WalletData.Invoice.class, invoice(WalletData.INVOICE_STATE_OPEN), 100);
+
+        get();
+        assertEquals(1, client_.txs.size());
+        assertTrue(responses_.isEmpty());
+    }
+}
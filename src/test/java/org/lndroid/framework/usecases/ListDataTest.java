@@ -0,0 +1,444 @@
+package org.lndroid.framework.usecases;
+
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.Observer;
+import androidx.paging.PagedList;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.client.EntityCache;
+import org.lndroid.framework.client.IPluginClient;
+import org.lndroid.framework.client.IPluginTransaction;
+import org.lndroid.framework.client.IPluginTransactionCallback;
+import org.lndroid.framework.client.PluginClientStats;
+import org.lndroid.framework.common.Errors;
+import org.lndroid.framework.common.ICodecProvider;
+import org.lndroid.framework.common.IListResultView;
+import org.lndroid.framework.common.IPluginData;
+
+import static org.junit.Assert.*;
+
+public class ListDataTest {
+
+    // a data source re-applying the update it's attached
+    // with rebuilds the list forever
+    private static final long LOOP_TIMEOUT_MS = 10000;
+
+    @Rule
+    public InstantTaskExecutorRule instantExecutor = new InstantTaskExecutorRule();
+
+    private static class FakeTransaction implements IPluginTransaction {
+        IPluginTransactionCallback cb;
+        Object request;
+        List<WalletData.ListPage> pages = new ArrayList<>();
+        boolean active;
+
+        @Override
+        public String pluginId() {
+            return "";
+        }
+
+        @Override
+        public String id() {
+            return "";
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void start(Object r, Type type) {
+            start(r, type, 0);
+        }
+
+        @Override
+        public void start(Object r, Type type, long timeout) {
+            request = r;
+            active = true;
+        }
+
+        @Override
+        public void send(Object r, Type type) {
+            pages.add((WalletData.ListPage)r);
+        }
+
+        // pages asked for by loadAfter, PagedList might load before too
+        List<WalletData.ListPage> afterPages() {
+            List<WalletData.ListPage> after = new ArrayList<>();
+            for (WalletData.ListPage p: pages) {
+                if (p.afterId() != 0)
+                    after.add(p);
+            }
+            return after;
+        }
+
+        List<WalletData.ListPage> beforePages() {
+            List<WalletData.ListPage> before = new ArrayList<>();
+            for (WalletData.ListPage p: pages) {
+                if (p.beforeId() != 0)
+                    before.add(p);
+            }
+            return before;
+        }
+
+        @Override
+        public void stop() {
+            active = false;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        void reply(Object data) {
+            reply(data, null);
+        }
+
+        void reply(final Object data, final IListResultView<?> view) {
+            cb.onResponse(new IPluginData() {
+                @Override
+                public void assignCodecProvider(ICodecProvider cp) {
+                }
+
+                @Override
+                public void assignDataType(Type type) {
+                }
+
+                @Override
+                public <T> T getData() {
+                    return (T)data;
+                }
+
+                @Override
+                public <T> IListResultView<T> getListResultView() throws IOException {
+                    if (view == null)
+                        throw new IOException("Not supported");
+                    return (IListResultView<T>)view;
+                }
+
+                @Override
+                public int dataSize() {
+                    return 0;
+                }
+            });
+        }
+    }
+
+    private static class FakeClient implements IPluginClient {
+        List<FakeTransaction> txs = new ArrayList<>();
+
+        @Override
+        public IPluginTransaction createTransaction(String pluginId, String txId, IPluginTransactionCallback cb) {
+            FakeTransaction tx = new FakeTransaction();
+            tx.cb = cb;
+            txs.add(tx);
+            return tx;
+        }
+
+        @Override
+        public void connect(Context ctx) {
+        }
+
+        @Override
+        public PluginClientStats getStats() {
+            return new PluginClientStats();
+        }
+
+        @Override
+        public EntityCache getEntityCache() {
+            return null;
+        }
+
+        FakeTransaction last() {
+            return txs.get(txs.size() - 1);
+        }
+    }
+
+    // lazy result, records the items it has decoded
+    private static class FakeView extends AbstractList<WalletData.Invoice>
+            implements IListResultView<WalletData.Invoice> {
+        WalletData.ListInvoicesResult result;
+        Set<Long> decoded = new HashSet<>();
+
+        FakeView(WalletData.ListInvoicesResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public ImmutableList<WalletData.Invoice> items() {
+            for (WalletData.Invoice i: result.items())
+                decoded.add(i.id());
+            return result.items();
+        }
+
+        @Override
+        public int count() {
+            return result.count();
+        }
+
+        @Override
+        public int position() {
+            return result.position();
+        }
+
+        @Override
+        public long requestId() {
+            return result.requestId();
+        }
+
+        @Override
+        public boolean isUpdate() {
+            return result.isUpdate();
+        }
+
+        @Override
+        public ImmutableList<Integer> itemPositions() {
+            return result.itemPositions();
+        }
+
+        @Override
+        public ImmutableList<Long> removedIds() {
+            return result.removedIds();
+        }
+
+        @Override
+        public String firstCursor() {
+            return null;
+        }
+
+        @Override
+        public String lastCursor() {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return result.items().size();
+        }
+
+        @Override
+        public long itemId(int index) {
+            return result.items().get(index).id();
+        }
+
+        @Override
+        public WalletData.Invoice item(int index) {
+            WalletData.Invoice i = result.items().get(index);
+            decoded.add(i.id());
+            return i;
+        }
+
+        @Override
+        public WalletData.Invoice get(int index) {
+            return item(index);
+        }
+
+        @Override
+        public List<WalletData.Invoice> itemList() {
+            return this;
+        }
+    }
+
+    private FakeClient client_;
+    private ListInvoices data_;
+    private ListInvoices.Pager pager_;
+    private List<PagedList<WalletData.Invoice>> lists_;
+
+    @Before
+    public void setUp() {
+        client_ = new FakeClient();
+        data_ = new ListInvoices(client_);
+        pager_ = data_.createPager(new PagedList.Config.Builder()
+                .setPageSize(10)
+                .setEnablePlaceholders(true)
+                .build());
+
+        lists_ = new ArrayList<>();
+        pager_.pagedList().observeForever(new Observer<PagedList<WalletData.Invoice>>() {
+            @Override
+            public void onChanged(PagedList<WalletData.Invoice> list) {
+                lists_.add(list);
+            }
+        });
+
+        pager_.setRequest(WalletData.ListInvoicesRequest.builder()
+                .setNoAuth(true)
+                .setEnablePaging(true)
+                .build());
+    }
+
+    private static WalletData.Invoice invoice(long id) {
+        return WalletData.Invoice.builder().setId(id).build();
+    }
+
+    private static WalletData.ListInvoicesResult page(long... ids) {
+        ImmutableList.Builder<WalletData.Invoice> items = ImmutableList.builder();
+        for (long id: ids)
+            items.add(invoice(id));
+        return WalletData.ListInvoicesResult.create(items.build(), ids.length, 0);
+    }
+
+    // page of 'ids' at 'position' replying to request 'requestId'
+    private static WalletData.ListInvoicesResult pageReply(long requestId, int position, int count, long... ids) {
+        return page(ids).toBuilder()
+                .setRequestId(requestId)
+                .setPosition(position)
+                .setCount(count)
+                .build();
+    }
+
+    // item 'id' inserted at 'position'
+    private static WalletData.ListInvoicesResult insert(long id, int position, int count) {
+        return WalletData.ListInvoicesResult.builder()
+                .setIsUpdate(true)
+                .setItems(ImmutableList.of(invoice(id)))
+                .setItemPositions(ImmutableList.of(position))
+                .setCount(count)
+                .build();
+    }
+
+    @Test
+    public void initialPage_buildsOneList() {
+        assertEquals(1, client_.txs.size());
+        assertTrue(lists_.isEmpty());
+
+        client_.last().reply(page(1, 2, 3));
+        assertEquals(1, lists_.size());
+        assertEquals(3, lists_.get(0).size());
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void update_rebuildsListOnce() {
+        FakeTransaction tx = client_.last();
+        tx.reply(page(1, 2, 3));
+
+        tx.reply(insert(4, 3, 4));
+        assertEquals(2, lists_.size());
+        assertEquals(4, lists_.get(1).size());
+        assertEquals(4L, (long)lists_.get(1).get(3).id());
+
+        // only the current data source applies the next one
+        tx.reply(insert(5, 4, 5));
+        assertEquals(3, lists_.size());
+        assertEquals(5, lists_.get(2).size());
+
+        // updates don't reload pages
+        assertEquals(1, client_.txs.size());
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void invalidate_reloadsOnce() {
+        FakeTransaction tx = client_.last();
+        tx.reply(page(1, 2, 3));
+        tx.reply(insert(4, 3, 4));
+        assertEquals(2, lists_.size());
+
+        // last update isn't applied again by the new data source
+        tx.cb.onError(Errors.TX_INVALIDATE, Errors.errorMessage(Errors.TX_INVALIDATE));
+        assertEquals(2, client_.txs.size());
+        assertEquals(2, lists_.size());
+
+        client_.last().reply(page(1, 2));
+        assertEquals(3, lists_.size());
+        assertEquals(2, lists_.get(2).size());
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void update_keepsLazyItemsUndecoded() {
+        data_.setLazyDecoding(true);
+        FakeTransaction tx = client_.last();
+        FakeView first = new FakeView(page(1, 2, 3));
+        tx.reply(null, first);
+
+        tx.reply(null, new FakeView(insert(4, 3, 4)));
+        assertEquals(2, lists_.size());
+        assertEquals(4L, (long)lists_.get(1).get(3).id());
+
+        // ids are read w/o decoding the items
+        assertFalse(first.decoded.contains(2L));
+        assertEquals(2L, (long)lists_.get(1).get(1).id());
+        assertTrue(first.decoded.contains(2L));
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void update_lateReplyToOldDataSourceIsDropped() {
+        FakeTransaction tx = client_.last();
+        tx.reply(pageReply(0, 0, 100, 1, 2, 3));
+        lists_.get(0).loadAround(2);
+        assertEquals(1, tx.afterPages().size());
+        final long oldRequest = tx.afterPages().get(0).requestId();
+
+        // new data source asks for it's own page
+        tx.reply(insert(4, 3, 100));
+        assertEquals(2, lists_.size());
+        PagedList<WalletData.Invoice> list = lists_.get(1);
+        list.loadAround(3);
+        assertEquals(2, tx.afterPages().size());
+        final long newRequest = tx.afterPages().get(1).requestId();
+        assertNotEquals(oldRequest, newRequest);
+
+        tx.reply(pageReply(oldRequest, 3, 100, 4, 5));
+        assertNull(list.get(4));
+
+        tx.reply(pageReply(newRequest, 4, 100, 5, 6));
+        assertEquals(5L, (long)list.get(4).id());
+        assertEquals(6L, (long)list.get(5).id());
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void pages_routedByRequestId() {
+        FakeTransaction tx = client_.last();
+        tx.reply(pageReply(0, 20, 100, 21, 22, 23));
+        PagedList<WalletData.Invoice> list = lists_.get(0);
+
+        // both directions in flight
+        list.loadAround(20);
+        assertEquals(1, tx.beforePages().size());
+        assertEquals(1, tx.afterPages().size());
+        final long before = tx.beforePages().get(0).requestId();
+        final long after = tx.afterPages().get(0).requestId();
+        assertNotEquals(before, after);
+
+        // replied in reverse order, positions don't matter
+        tx.reply(pageReply(after, 0, 100, 24, 25));
+        tx.reply(pageReply(before, 0, 100, 19, 20));
+        assertEquals(19L, (long)list.get(18).id());
+        assertEquals(20L, (long)list.get(19).id());
+        assertEquals(23L, (long)list.get(22).id());
+        assertEquals(24L, (long)list.get(23).id());
+        assertEquals(25L, (long)list.get(24).id());
+    }
+
+    @Test(timeout = LOOP_TIMEOUT_MS)
+    public void pages_routedByPositionWithoutRequestId() {
+        FakeTransaction tx = client_.last();
+        tx.reply(pageReply(0, 20, 100, 21, 22, 23));
+        PagedList<WalletData.Invoice> list = lists_.get(0);
+        list.loadAround(20);
+
+        // server doesn't echo request ids
+        tx.reply(pageReply(0, 23, 100, 24, 25));
+        tx.reply(pageReply(0, 18, 100, 19, 20));
+        assertEquals(19L, (long)list.get(18).id());
+        assertEquals(20L, (long)list.get(19).id());
+        assertEquals(24L, (long)list.get(23).id());
+        assertEquals(25L, (long)list.get(24).id());
+    }
+}
@@ -0,0 +1,238 @@
+package org.lndroid.framework.usecases;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.lndroid.framework.DefaultIpcCodecProvider;
+import org.lndroid.framework.IResponseCallback;
+import org.lndroid.framework.WalletData;
+import org.lndroid.framework.WalletDataDecl;
+
+import static org.junit.Assert.*;
+
+public class ListSnapshotCacheTest {
+
+    private static final int MAX_BYTES = 4096;
+    // magic + format version + version string length
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private File file_;
+
+    @Before
+    public void setUp() throws IOException {
+        file_ = File.createTempFile("snapshots", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file_.delete();
+        new File(file_.getPath() + ".tmp").delete();
+    }
+
+    private ListSnapshotCache open() {
+        return new ListSnapshotCache(file_, MAX_BYTES, new DefaultIpcCodecProvider());
+    }
+
+    private static byte[] data(int size, int seed) {
+        byte[] d = new byte[size];
+        Arrays.fill(d, (byte)seed);
+        return d;
+    }
+
+    private void truncate(long size) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file_, "rw");
+        try {
+            f.setLength(size);
+        } finally {
+            f.close();
+        }
+    }
+
+    private void write(long pos, byte[] d) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file_, "rw");
+        try {
+            f.seek(pos);
+            f.write(d);
+        } finally {
+            f.close();
+        }
+    }
+
+    @Test
+    public void put_survivesReopen() {
+        ListSnapshotCache c = open();
+        c.put(1, data(100, 1));
+        c.put(2, data(200, 2));
+        // replaced
+        c.put(1, data(50, 3));
+
+        ListSnapshotCache r = open();
+        assertArrayEquals(data(50, 3), r.get(1));
+        assertArrayEquals(data(200, 2), r.get(2));
+        assertNull(r.get(3));
+    }
+
+    @Test
+    public void put_rejectsOversizedSnapshot() {
+        ListSnapshotCache c = open();
+        c.put(1, data(MAX_BYTES / 2 + 1, 1));
+        assertNull(c.get(1));
+    }
+
+    @Test
+    public void open_truncatesTornTail() throws IOException {
+        ListSnapshotCache c = open();
+        c.put(1, data(100, 1));
+        c.put(2, data(100, 2));
+        final long size = file_.length();
+
+        // second record written partially
+        truncate(size - 10);
+        ListSnapshotCache r = open();
+        assertArrayEquals(data(100, 1), r.get(1));
+        assertNull(r.get(2));
+        assertEquals(size - 100 - RECORD_HEADER_SIZE, file_.length());
+
+        // new records are appended after the valid ones
+        r.put(3, data(100, 3));
+        ListSnapshotCache r2 = open();
+        assertArrayEquals(data(100, 1), r2.get(1));
+        assertArrayEquals(data(100, 3), r2.get(3));
+    }
+
+    @Test
+    public void open_truncatesPartialRecordHeader() throws IOException {
+        ListSnapshotCache c = open();
+        c.put(1, data(100, 1));
+        final long size = file_.length();
+
+        write(size, new byte[]{0, 0, 0});
+        ListSnapshotCache r = open();
+        assertArrayEquals(data(100, 1), r.get(1));
+        assertEquals(size, file_.length());
+    }
+
+    @Test
+    public void open_dropsRecordsFromCrcMismatch() throws IOException {
+        ListSnapshotCache c = open();
+        c.put(1, data(100, 1));
+        final long second = file_.length();
+        c.put(2, data(100, 2));
+        c.put(3, data(100, 3));
+
+        // flip a payload byte of the second record
+        write(second + RECORD_HEADER_SIZE + 10, new byte[]{7});
+        ListSnapshotCache r = open();
+        assertArrayEquals(data(100, 1), r.get(1));
+        assertNull(r.get(2));
+        // records after the bad one can't be trusted
+        assertNull(r.get(3));
+        assertEquals(second, file_.length());
+    }
+
+    @Test
+    public void open_resetsOnVersionMismatch() throws IOException {
+        ListSnapshotCache c = open();
+        c.put(1, data(100, 1));
+
+        write(FORMAT_VERSION_OFFSET, new byte[]{0, 0, 0, 99});
+        ListSnapshotCache r = open();
+        assertNull(r.get(1));
+        assertTrue(file_.length() < 100);
+
+        // usable after reset
+        r.put(2, data(100, 2));
+        assertArrayEquals(data(100, 2), open().get(2));
+    }
+
+    @Test
+    public void put_compactsOverwrittenRecords() {
+        ListSnapshotCache c = open();
+        // same keys rewritten until the file exceeds the budget
+        for (int i = 0; i < 20; i++)
+            c.put(i % 2, data(300, i));
+        assertTrue(file_.length() <= MAX_BYTES);
+
+        ListSnapshotCache r = open();
+        assertArrayEquals(data(300, 18), r.get(0));
+        assertArrayEquals(data(300, 19), r.get(1));
+        assertFalse(new File(file_.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void put_compactionDropsOldestHalf() {
+        ListSnapshotCache c = open();
+        // all live, more than half of the budget
+        for (int i = 0; i < 14; i++)
+            c.put(i, data(300, i));
+        assertTrue(file_.length() <= MAX_BYTES);
+
+        ListSnapshotCache r = open();
+        List<Long> kept = new ArrayList<>();
+        for (long i = 0; i < 14; i++) {
+            if (r.get(i) != null)
+                kept.add(i);
+        }
+        // newest ones survive
+        assertFalse(kept.isEmpty());
+        assertTrue(kept.contains(13L));
+        assertFalse(kept.contains(0L));
+        for (int i = 1; i < kept.size(); i++)
+            assertEquals(kept.get(i - 1) + 1, (long)kept.get(i));
+    }
+
+    @Test
+    public void pages_roundTripOnWriterThread() throws InterruptedException {
+        ListSnapshotCache c = open();
+        List<WalletDataDecl.ListResultTmpl<WalletData.Invoice>> pages = new ArrayList<>();
+        pages.add(WalletData.ListInvoicesResult.create(ImmutableList.<WalletData.Invoice>of(), 10, 0));
+        pages.add(WalletData.ListInvoicesResult.create(ImmutableList.<WalletData.Invoice>of(), 10, 5));
+        c.putPages(1, pages, WalletData.ListInvoicesResult.class);
+
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<List<WalletDataDecl.ListResultTmpl<WalletData.Invoice>>> results = new ArrayList<>();
+        IResponseCallback<List<WalletDataDecl.ListResultTmpl<WalletData.Invoice>>> cb =
+                new IResponseCallback<List<WalletDataDecl.ListResultTmpl<WalletData.Invoice>>>() {
+            @Override
+            public void onResponse(List<WalletDataDecl.ListResultTmpl<WalletData.Invoice>> r) {
+                synchronized (results) {
+                    results.add(r);
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String code, String e) {
+                fail(code);
+            }
+        };
+        // reads are ordered after pending writes
+        c.getPages(1, WalletData.ListInvoicesResult.class, DIRECT, cb);
+        c.getPages(2, WalletData.ListInvoicesResult.class, DIRECT, cb);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(pages, results.get(0));
+        assertNull(results.get(1));
+    }
+}